@@ -40,16 +40,24 @@ import uk.ac.ebi.ena.webin.cli.manifest.processor.CVFieldProcessor;
 import uk.ac.ebi.ena.webin.cli.service.LoginService;
 import uk.ac.ebi.ena.webin.cli.service.SubmitService;
 import uk.ac.ebi.ena.webin.cli.service.VersionService;
+import uk.ac.ebi.ena.webin.cli.service.utils.ReferenceCache;
+import uk.ac.ebi.ena.webin.cli.service.utils.RestTemplateFactory;
 import uk.ac.ebi.ena.webin.cli.submit.SubmissionBundle;
 import uk.ac.ebi.ena.webin.cli.upload.ASCPService;
+import uk.ac.ebi.ena.webin.cli.upload.BandwidthLimiter;
 import uk.ac.ebi.ena.webin.cli.upload.FtpService;
+import uk.ac.ebi.ena.webin.cli.upload.UploadProgress;
 import uk.ac.ebi.ena.webin.cli.upload.UploadService;
+import uk.ac.ebi.ena.webin.cli.utils.ChecksumCache;
+import uk.ac.ebi.ena.webin.cli.utils.ChecksumEngine;
+import uk.ac.ebi.ena.webin.cli.utils.SidecarChecksums;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
@@ -59,7 +67,16 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
@@ -69,7 +86,7 @@ public class WebinCli {
     public final static int USER_ERROR = 2;
     public final static int VALIDATION_ERROR = 3;
 
-    private final static String LOG_FILE_NAME = "webin-cli.report";
+    final static String LOG_FILE_NAME = "webin-cli.report";
     private final static Logger log = LoggerFactory.getLogger(WebinCli.class);
 
     private final static String SIFTING_APPENDER_NAME = "DEFAULT_SIFTING_APPENDER";
@@ -82,6 +99,28 @@ public class WebinCli {
     private final WebinCliExecutor<?, ?> executor;
 
     private final String fileAppenderName = "FILE_APPENDER_" + UUID.randomUUID().toString();
+    private String logFile;
+
+    private boolean validated;
+
+    private WebinCliJournal.Entry journal;
+    private boolean resumed;
+
+    /** The upload started while the files are being validated. */
+    private Future<?> validationUpload;
+    /** Counted down when the upload started while the files are being validated has ended. */
+    private final CountDownLatch validationUploadEnded = new CountDownLatch(1);
+    /** Guarded by this. */
+    private boolean validationUploadStarted;
+    /** Guarded by this. */
+    private boolean validationUploadCancelled;
+    /** The service uploading the files. Guarded by this. */
+    private UploadService uploadService;
+
+    /** Executes the upload started while the files are being validated. Set by the pipeline. */
+    private Executor uploadExecutor;
+    /** The thread used to upload the files while they are being validated if there is no upload executor. */
+    private ExecutorService ownUploadExecutor;
 
     public static void
     main(String... args) {
@@ -101,28 +140,49 @@ public class WebinCli {
                 return SUCCESS;
             }
 
+            RestTemplateFactory.configure(cmd.httpConnectionsPerRoute, cmd.httpConnectTimeout, cmd.httpReadTimeout);
             checkVersion(cmd.test);
 
+            ChecksumCache.configure(ChecksumCache.getDefaultCacheFile(), cmd.forceChecksum);
+            ChecksumEngine.configure(cmd.checksumThreads);
+            SidecarChecksums.configure(getSidecarChecksumsMode(cmd), cmd.md5Files);
+            ReferenceCache.configure(
+                ReferenceCache.getDefaultCacheFile(), cmd.referenceCacheTtl, cmd.clearReferenceCache);
+            BandwidthLimiter.configure(cmd.uploadRate, cmd.connectionUploadRate, cmd.uploadRateSchedule);
+
+            if (cmd.server != null) {
+                return new WebinCliServer(cmd).execute();
+            }
+
+            if (cmd.manifests != null) {
+                return new WebinCliBatch(cmd).execute();
+            }
+
             WebinCli webinCli = new WebinCli(cmd);
             webinCli.execute();
 
             return SUCCESS;
         } catch (WebinCliException ex) {
             log.error(ex.getMessage(), ex);
-            switch (ex.getErrorType()) {
-                case USER_ERROR:
-                    return USER_ERROR;
-                case VALIDATION_ERROR:
-                    return VALIDATION_ERROR;
-                default:
-                    return SYSTEM_ERROR;
-            }
+            return getExitCode(ex);
         } catch (Throwable e) {
             log.error(e.getMessage(), e);
             return SYSTEM_ERROR;
         }
     }
 
+    public static int
+    getExitCode(WebinCliException ex) {
+        switch (ex.getErrorType()) {
+            case USER_ERROR:
+                return USER_ERROR;
+            case VALIDATION_ERROR:
+                return VALIDATION_ERROR;
+            default:
+                return SYSTEM_ERROR;
+        }
+    }
+
     public WebinCli(WebinCliCommand cmd) {
         this(initParameters(getSubmissionAccount(cmd), getAuthToken(cmd), cmd));
     }
@@ -156,6 +216,15 @@ public class WebinCli {
         parameters.setSubmit(cmd.submit);
         parameters.setTest(cmd.test);
         parameters.setAscp(cmd.ascp);
+        parameters.setChecksumDuringUpload(cmd.checksumDuringUpload);
+        parameters.setUploadDuringValidation(cmd.uploadDuringValidation);
+        parameters.setCompressFastq(cmd.compressFastq);
+        parameters.setUploadResume(cmd.uploadResume);
+        parameters.setUploadThreads(cmd.uploadThreads);
+        parameters.setIncrementalUpload(cmd.incrementalUpload);
+        parameters.setTunedUpload(cmd.tunedUpload);
+        parameters.setAscpSessions(cmd.ascpSessions);
+        parameters.setAscpRate(cmd.ascpRate);
         return parameters;
     }
 
@@ -189,7 +258,7 @@ public class WebinCli {
             }
         }
 
-        String logFile = new File(createOutputDir(parameters.getOutputDir(), "."), LOG_FILE_NAME).getAbsolutePath();
+        logFile = new File(createOutputDir(parameters.getOutputDir(), "."), LOG_FILE_NAME).getAbsolutePath();
 
         MDC.put(SIFTING_APPENDER_DISCRIMINATOR_KEY, fileAppenderName);
         MDC.put(MDC_LOG_FILE_KEY, logFile);
@@ -245,22 +314,72 @@ public class WebinCli {
         }
     }
 
+    /**
+     * Executes all stages of the submission in the current thread.
+     */
     public void
     execute() {
         try {
-            executor.readManifest();
-
-            if (parameters.isValidate() || executor.getSubmissionBundle() == null) {
-                validate(executor);
+            for (WebinCliPipeline.Stage stage : getStages()) {
+                executeStage(stage);
             }
+        } finally {
+            close();
+        }
+    }
 
-            if (parameters.isSubmit()) {
-                submit(executor);
-            }
+    /**
+     * Returns the stages required to complete the submission.
+     */
+    public List<WebinCliPipeline.Stage>
+    getStages() {
+        if (!parameters.isSubmit()) {
+            return Arrays.asList(WebinCliPipeline.Stage.VALIDATE, WebinCliPipeline.Stage.PREPARE);
+        }
+        if (parameters.isChecksumDuringUpload()) {
+            // The checksums calculated during the upload are used when the submission xmls are prepared.
+            return Arrays.asList(
+                WebinCliPipeline.Stage.VALIDATE,
+                WebinCliPipeline.Stage.UPLOAD,
+                WebinCliPipeline.Stage.PREPARE,
+                WebinCliPipeline.Stage.SUBMIT);
+        }
+        return Arrays.asList(WebinCliPipeline.Stage.values());
+    }
+
+    /**
+     * Executes one stage of the submission. Stages may be executed by different threads but must be executed
+     * in the order returned by {@link #getStages()}. The log messages are written into the report file of this
+     * submission regardless of the thread executing the stage.
+     */
+    public void
+    executeStage(WebinCliPipeline.Stage stage) {
+        switch (stage) {
+            case VALIDATE:
+                runWithReport(this::validate);
+                break;
+            case PREPARE:
+                runWithReport(this::prepare);
+                break;
+            case UPLOAD:
+                runWithReport(this::upload);
+                break;
+            case SUBMIT:
+                runWithReport(this::submit);
+                break;
+        }
+    }
+
+    private void
+    runWithReport(Runnable runnable) {
+        MDC.put(SIFTING_APPENDER_DISCRIMINATOR_KEY, fileAppenderName);
+        MDC.put(MDC_LOG_FILE_KEY, logFile);
+        try {
+            runnable.run();
 
         //It is important that following catch blocks log errors so they get written to the report file.
         //It is becuase the underlying appender that writes to the report file will be removed when the cleanup happens
-        //in the finally block. Any logging done after the cleanup will not be sent to the report file.
+        //after the last stage. Any logging done after the cleanup will not be sent to the report file.
         } catch (WebinCliException ex) {
             log.error(ex.getMessage(), ex);
             throw ex;
@@ -271,18 +390,216 @@ public class WebinCli {
             log.error(ex.getMessage(), ex);
             throw ex;
         } finally {
+            MDC.remove(SIFTING_APPENDER_DISCRIMINATOR_KEY);
+            MDC.remove(MDC_LOG_FILE_KEY);
+        }
+    }
+
+    /**
+     * Closes the report file. Must be called once after the last executed stage.
+     */
+    public void
+    close() {
+        try {
+            cancelValidationUpload();
+        } finally {
+            if (ownUploadExecutor != null) {
+                ownUploadExecutor.shutdownNow();
+            }
             cleanupFileAppender();
         }
     }
 
+    /**
+     * Sets the executor used to upload the files while they are being validated. The pipeline uses the executor of
+     * its upload stage so that these uploads count towards the upload threads. Without an executor, the files are
+     * uploaded by a thread owned by this submission.
+     */
+    public void
+    setUploadExecutor(Executor uploadExecutor) {
+        this.uploadExecutor = uploadExecutor;
+    }
+
+    /**
+     * Records the completed stages in the batch journal and skips the stages completed by an earlier run.
+     */
+    public void
+    setJournal(WebinCliJournal.Entry journal) {
+        this.journal = journal;
+    }
+
+    private void
+    journal(WebinCliJournal.Event event, String detail) {
+        if (journal != null) {
+            journal.append(event, detail);
+        }
+    }
+
     private void
-    validate(WebinCliExecutor<?, ?> executor) {
+    validate() {
+        // The submission bundle is checked before the manifest is read so that a resumed submission does not repeat
+        // the reference lookups and file checks done when the manifest is read. The files are always validated
+        // when validation has been requested.
+        if (!parameters.isValidate() && journal != null && journal.contains(WebinCliJournal.Event.BUNDLE_WRITTEN)) {
+            File submitDir = new File(journal.getDetail(WebinCliJournal.Event.BUNDLE_WRITTEN));
+            if (executor.readSubmissionBundle(submitDir) != null) {
+                log.info("Resuming the submission using the submission bundle written by an earlier run.");
+                resumed = true;
+                return;
+            }
+            log.info("Unable to resume the submission. The submission bundle written by an earlier run has changed.");
+        }
+
+        executor.readManifest();
+        journal(WebinCliJournal.Event.MANIFEST_READ, "");
+
+        validated = parameters.isValidate() || executor.getSubmissionBundle() == null;
+        if (validated) {
+            try {
+                handleValidationErrors(() -> executor.validateSubmission(this::startValidationUpload));
+            } catch (RuntimeException ex) {
+                if (cancelValidationUpload()) {
+                    log.info("Cancelled the upload of the files because the validation failed.");
+                }
+                throw ex;
+            }
+            journal(WebinCliJournal.Event.VALIDATED, "");
+        }
+    }
+
+    /**
+     * Starts uploading the files in the background while they are being validated. The validators do not report
+     * when individual files have been validated, so all files are uploaded speculatively. The submit stage is
+     * executed only after the validation has succeeded.
+     */
+    private void
+    startValidationUpload() {
+        if (!parameters.isSubmit() || !parameters.isUploadDuringValidation()) {
+            return;
+        }
+        log.info("Uploading the files while they are being validated.");
+
+        Executor taskExecutor = uploadExecutor;
+        if (taskExecutor == null) {
+            ownUploadExecutor = Executors.newSingleThreadExecutor(
+                WebinCliBatch.createThreadFactory("webin-cli-validation-upload"));
+            taskExecutor = ownUploadExecutor;
+        }
+
+        Map<String, String> contextMap = MDC.getCopyOfContextMap();
+        FutureTask<Void> upload = new FutureTask<>(() -> {
+            if (!startUpload()) {
+                return;
+            }
+            if (contextMap != null) {
+                MDC.setContextMap(contextMap);
+            }
+            try {
+                uploadFiles();
+            } finally {
+                MDC.clear();
+                validationUploadEnded.countDown();
+            }
+        }, null);
         try {
-            executor.validateSubmission();
+            // Blocks if the queue of the upload executor of the pipeline is full.
+            taskExecutor.execute(upload);
+        } catch (RejectedExecutionException ex) {
+            log.info("Unable to upload the files while they are being validated: {}", ex.getMessage());
+            return;
+        }
+        validationUpload = upload;
+    }
+
+    private synchronized boolean
+    startUpload() {
+        if (validationUploadCancelled) {
+            return false;
+        }
+        validationUploadStarted = true;
+        return true;
+    }
+
+    private synchronized boolean
+    setUploadService(UploadService uploadService) {
+        if (validationUploadCancelled) {
+            return false;
+        }
+        this.uploadService = uploadService;
+        return true;
+    }
+
+    /**
+     * Cancels the upload started during the validation if it has not yet completed. The socket writes of the
+     * upload can't be interrupted and the upload service is therefore disconnected. Waits until the upload has
+     * ended so that no files are uploaded after the submission has failed.
+     *
+     * @return true if the upload was cancelled
+     */
+    private boolean
+    cancelValidationUpload() {
+        Future<?> upload = validationUpload;
+        validationUpload = null;
+        if (upload == null) {
+            return false;
+        }
+
+        boolean started;
+        UploadService service;
+        synchronized (this) {
+            validationUploadCancelled = true;
+            started = validationUploadStarted;
+            service = uploadService;
+        }
+        boolean cancelled = upload.cancel(true);
+        if (service != null) {
+            service.disconnect();
+        }
+        if (started) {
+            try {
+                validationUploadEnded.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return cancelled;
+    }
 
-            executor.prepareSubmissionBundle();
+    private void
+    awaitValidationUpload() {
+        try {
+            validationUpload.get();
+        } catch (InterruptedException ex) {
+            cancelValidationUpload();
+            Thread.currentThread().interrupt();
+            throw WebinCliException.systemError(ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof WebinCliException) {
+                throw (WebinCliException) ex.getCause();
+            }
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw WebinCliException.systemError((Exception) ex.getCause());
+        }
+    }
 
-            log.info(WebinCliMessage.CLI_VALIDATE_SUCCESS.text());
+    private void
+    prepare() {
+        if (validated) {
+            handleValidationErrors(() -> {
+                executor.prepareSubmissionBundle();
+
+                log.info(WebinCliMessage.CLI_VALIDATE_SUCCESS.text());
+            });
+            journal(WebinCliJournal.Event.BUNDLE_WRITTEN, executor.getSubmitDir().getPath());
+        }
+    }
+
+    private void
+    handleValidationErrors(Runnable runnable) {
+        try {
+            runnable.run();
 
         } catch (WebinCliException ex) {
             switch (ex.getErrorType()) {
@@ -307,24 +624,154 @@ public class WebinCli {
     }
 
     private void
-    submit(WebinCliExecutor<?, ?> executor) {
-        SubmissionBundle bundle = executor.getSubmissionBundle();
+    upload() {
+        if (resumed && journal.contains(WebinCliJournal.Event.UPLOADED)) {
+            log.info("Skipping the upload of files uploaded by an earlier run.");
+            return;
+        }
 
-        UploadService fileUploadService = parameters.isAscp() && new ASCPService().isAvailable()
-            ? new ASCPService() : new FtpService();
+        if (validationUpload != null) {
+            awaitValidationUpload();
+            return;
+        }
+
+        uploadFiles();
+    }
+
+    private void
+    uploadFiles() {
+        // The upload files and directory are read from the manifest so that the files can be uploaded before
+        // the submission bundle has been prepared. A resumed submission has not read the manifest and uses the
+        // submission bundle.
+        List<File> uploadFileList;
+        String uploadDir;
+        if (resumed) {
+            uploadFileList = executor.getSubmissionBundle().getUploadFileList();
+            uploadDir = executor.getSubmissionBundle().getUploadDir();
+        } else {
+            uploadFileList = executor.getUploadFileList();
+            uploadDir = executor.getUploadDir().toString();
+        }
+
+        // The files uploaded by an earlier run of a resumed submission are not uploaded again.
+        List<File> uploadedFileList = new ArrayList<>();
+        if (resumed) {
+            List<String> uploadedFiles = journal.getDetails(WebinCliJournal.Event.FILE_UPLOADED);
+            uploadedFileList = uploadFileList.stream()
+                .filter(file -> uploadedFiles.contains(file.getPath()))
+                .collect(Collectors.toList());
+            if (!uploadedFileList.isEmpty()) {
+                log.info("Skipping the upload of {} files uploaded by an earlier run.", uploadedFileList.size());
+                uploadFileList = new ArrayList<>(uploadFileList);
+                uploadFileList.removeAll(uploadedFileList);
+            }
+            if (uploadFileList.isEmpty()) {
+                journal(WebinCliJournal.Event.UPLOADED, String.valueOf(uploadedFileList.size()));
+                return;
+            }
+        }
+
+        ASCPService ascpService = parameters.isAscp() ? new ASCPService.Builder()
+            .setSessions(parameters.getAscpSessions())
+            .setRate(parameters.getAscpRate())
+            .build() : null;
+
+        UploadService fileUploadService = null != ascpService && ascpService.isAvailable()
+            ? ascpService : new FtpService.Builder()
+                .setUploadResume(parameters.isUploadResume())
+                .setUploadThreads(parameters.getUploadThreads())
+                .setIncrementalUpload(parameters.isIncrementalUpload())
+                .setTunedTransfer(parameters.isTunedUpload())
+                .setUploadedFiles(uploadedFileList)
+                .build();
+
+        // The upload has been cancelled because the validation failed.
+        if (!setUploadService(fileUploadService)) {
+            return;
+        }
+
+        // The upload progress is logged periodically and written to a JSON file in the process directory. The
+        // process directory has not been created if the submission was not validated by this run.
+        UploadProgress uploadProgress = new UploadProgress(
+            uploadFileList, new File(executor.getOrCreateProcessDir(), WebinCliConfig.UPLOAD_PROGRESS_FILE));
 
         try {
+            fileUploadService.setUploadedFileListener(file ->
+                journal(WebinCliJournal.Event.FILE_UPLOADED, file.getPath()));
+            fileUploadService.setUploadProgress(uploadProgress);
+            uploadProgress.start();
             fileUploadService.connect(parameters.getFileUploadServiceUserName(), parameters.getPassword());
-            fileUploadService.upload(bundle.getUploadFileList(), bundle.getUploadDir(), executor.getParameters().getInputDir().toPath());
+            fileUploadService.upload(uploadFileList, uploadDir, executor.getParameters().getInputDir().toPath());
             log.info(WebinCliMessage.CLI_UPLOAD_SUCCESS.text());
+            journal(WebinCliJournal.Event.UPLOADED, String.valueOf(uploadFileList.size() + uploadedFileList.size()));
 
         } catch (WebinCliException e) {
             throw WebinCliException.error(e, WebinCliMessage.CLI_UPLOAD_ERROR.format(e.getErrorType().text));
         } finally {
+            uploadProgress.close();
             fileUploadService.disconnect();
         }
+    }
+
+    /**
+     * Executes the submit stage of many submissions using one combined submission request. The accessions are
+     * written into the report file of each submission. If the combined submission fails then none of the
+     * submissions have been submitted.
+     */
+    public static void
+    executeCombinedSubmit(List<WebinCli> webinClis) {
+        WebinCliParameters parameters = webinClis.get(0).getParameters();
+
+        SubmitService submitService = new SubmitService.Builder()
+            .setSaveSubmissionXmlFiles(parameters.isSaveSubmissionXmlFiles())
+            .setUserName(parameters.getWebinServiceUserName())
+            .setPassword(parameters.getPassword())
+            .setTest(parameters.isTest())
+            .build();
+
+        List<SubmissionBundle> bundles =
+            webinClis.stream().map(webinCli -> webinCli.executor.getSubmissionBundle()).collect(Collectors.toList());
+        try {
+            bundles.forEach(bundle -> SidecarChecksums.getInstance().verify(bundle.getUploadFileList()));
+        } catch (RuntimeException ex) {
+            throw new SubmitService.NotSubmittedException(ex.getMessage(), ex);
+        }
+
+        List<Map<SubmissionBundle.SubmissionXMLFileType, String>> accessions = submitService.doCombinedSubmission(bundles);
+
+        for (int i = 0; i < webinClis.size(); ++i) {
+            Map<SubmissionBundle.SubmissionXMLFileType, String> submissionAccessions = accessions.get(i);
+            webinClis.get(i).runWithReport(() -> submitService.logAccessions(submissionAccessions));
+            webinClis.get(i).journal(WebinCliJournal.Event.SUBMITTED, formatAccessions(submissionAccessions));
+        }
+    }
+
+    private static String
+    formatAccessions(Map<SubmissionBundle.SubmissionXMLFileType, String> accessions) {
+        return accessions.entrySet().stream()
+            .map(entry -> entry.getKey().name().toLowerCase() + "=" + entry.getValue())
+            .collect(Collectors.joining(","));
+    }
+
+    /**
+     * Returns the total size of the submission xmls in UTF-8 bytes.
+     */
+    public long
+    getSubmissionXmlSize() {
+        return executor.getSubmissionBundle().getXMLFileList().stream()
+            .mapToLong(xmlFile -> xmlFile.getXmlContent() == null
+                ? 0 : xmlFile.getXmlContent().getBytes(StandardCharsets.UTF_8).length)
+            .sum();
+    }
+
+    private void
+    submit() {
+        SubmissionBundle bundle = executor.getSubmissionBundle();
 
         try {
+            // The checksums read from checksum files are verified in the background while the files are uploaded.
+            SidecarChecksums.getInstance().verify(bundle.getUploadFileList());
+
             SubmitService submitService = new SubmitService.Builder()
                 .setSubmitDir(bundle.getSubmitDir().getPath())
                 .setSaveSubmissionXmlFiles(getParameters().isSaveSubmissionXmlFiles())
@@ -333,13 +780,26 @@ public class WebinCli {
                 .setTest(parameters.isTest())
                 .build();
 
-            submitService.doSubmission(bundle.getXMLFileList());
+            Map<SubmissionBundle.SubmissionXMLFileType, String> accessions =
+                submitService.doSubmission(bundle.getXMLFileList());
+            journal(WebinCliJournal.Event.SUBMITTED, formatAccessions(accessions));
 
         } catch (WebinCliException e) {
             throw WebinCliException.error(e, WebinCliMessage.CLI_SUBMIT_ERROR.format(e.getErrorType().text));
         }
     }
 
+    private static SidecarChecksums.Mode
+    getSidecarChecksumsMode(WebinCliCommand cmd) {
+        if (cmd.forceChecksum) {
+            return null;
+        }
+        if (cmd.sidecarChecksums == null && cmd.md5Files != null && !cmd.md5Files.isEmpty()) {
+            return SidecarChecksums.Mode.VERIFY;
+        }
+        return cmd.sidecarChecksums;
+    }
+
     private static WebinCliCommand parseCmd(String... args) {
         AnsiConsole.systemInstall();
         WebinCliCommand params = new WebinCliCommand();
@@ -372,79 +832,96 @@ public class WebinCli {
                 return params;
             }
 
-            if (params.password != null && !params.password.trim().isEmpty()) {
-                // Password from command line
-            } else if (params.passwordEnv != null) {
-                params.password = System.getenv(params.passwordEnv);
-                if (params.password == null || params.password.trim().isEmpty()) {
-                    log.error("Could not read password from the environment variable: " + params.passwordEnv);
-                    printHelp();
-                    return null;
-                }
-            } else if (params.passwordFile != null) {
-                try {
-                    params.password = new String(Files.readAllBytes(params.passwordFile.toPath()));
-                    if (params.password.trim().isEmpty()) {
-                        log.error("Could not read password from the file: " + params.passwordFile.getPath());
-                        printHelp();
-                        return null;
-                    }
-                } catch (IOException ex) {
-                    log.error("Could not read password from the file: " + params.passwordFile.getPath());
-                    printHelp();
-                    return null;
-                }
-            } else {
-                log.error("Password must be provided using one of the following options: " +
-                    String.join(", "
-                        , WebinCliCommand.Options.password
-                        , WebinCliCommand.Options.passwordEnv
-                        , WebinCliCommand.Options.passwordFile));
-                printHelp();
-                return null;
-            }
+            initCmd(params);
 
-            if (!params.manifest.isFile() || !Files.isReadable(params.manifest.toPath())) {
-                log.error("Unable to read the manifest file.");
-                printHelp();
-                return null;
-            }
-            params.manifest = params.manifest.getAbsoluteFile();
+            return params;
 
-            if (params.inputDir == null) {
-                params.inputDir = Paths.get(".").toFile().getAbsoluteFile();
-            }
-            params.inputDir = params.inputDir.getAbsoluteFile();
+        } catch (WebinCliException e) {
+            log.error(e.getMessage());
+            printHelp();
+            return null;
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            printHelp();
+            return null;
+        }
+    }
 
-            if (params.outputDir == null) {
-                params.outputDir = params.manifest.getParentFile();
-            }
-            params.outputDir = params.outputDir.getAbsoluteFile();
+    /**
+     * Checks the command options and sets their default values. Used both for the command line and for the jobs
+     * received in server mode.
+     */
+    public static void initCmd(WebinCliCommand params) {
+        if (params.server != null) {
+            return;
+        }
 
-            if (!params.inputDir.canRead()) {
-                log.error("Unable to read from the input directory: " + params.inputDir.getAbsolutePath());
-                printHelp();
-                return null;
-            }
+        if (params.context == null) {
+            throw WebinCliException.userError("Missing required option: " + WebinCliCommand.Options.context);
+        }
+
+        if (params.userName == null) {
+            throw WebinCliException.userError("Missing required option: " + WebinCliCommand.Options.userName);
+        }
 
-            if (!params.outputDir.canWrite()) {
-                log.error("Unable to write to the output directory: " + params.outputDir.getAbsolutePath());
-                printHelp();
-                return null;
+        if (params.password != null && !params.password.trim().isEmpty()) {
+            // Password from command line
+        } else if (params.passwordEnv != null) {
+            params.password = System.getenv(params.passwordEnv);
+            if (params.password == null || params.password.trim().isEmpty()) {
+                throw WebinCliException.userError("Could not read password from the environment variable: " + params.passwordEnv);
             }
+        } else if (params.passwordFile != null) {
+            try {
+                params.password = new String(Files.readAllBytes(params.passwordFile.toPath()));
+            } catch (IOException ex) {
+                throw WebinCliException.userError("Could not read password from the file: " + params.passwordFile.getPath());
+            }
+            if (params.password.trim().isEmpty()) {
+                throw WebinCliException.userError("Could not read password from the file: " + params.passwordFile.getPath());
+            }
+        } else {
+            throw WebinCliException.userError("Password must be provided using one of the following options: " +
+                String.join(", "
+                    , WebinCliCommand.Options.password
+                    , WebinCliCommand.Options.passwordEnv
+                    , WebinCliCommand.Options.passwordFile));
+        }
+
+        if ((params.manifest == null) == (params.manifests == null)) {
+            throw WebinCliException.userError("Either " + WebinCliCommand.Options.manifest + " or "
+                + WebinCliCommand.Options.manifests + " option must be provided.");
+        }
 
-            if (!params.validate && !params.submit) {
-                log.error("Either -validate or -submit option must be provided.");
-                printHelp();
-                return null;
+        if (params.manifest != null) {
+            if (!params.manifest.isFile() || !Files.isReadable(params.manifest.toPath())) {
+                throw WebinCliException.userError("Unable to read the manifest file.");
             }
+            params.manifest = params.manifest.getAbsoluteFile();
+        }
 
-            return params;
+        if (params.inputDir == null) {
+            params.inputDir = Paths.get(".").toFile().getAbsoluteFile();
+        }
+        params.inputDir = params.inputDir.getAbsoluteFile();
 
-        } catch (Exception e) {
-            log.error(e.getMessage(), e);
-            printHelp();
-            return null;
+        if (params.outputDir == null) {
+            params.outputDir = params.manifest != null
+                ? params.manifest.getParentFile()
+                : WebinCliBatch.getDefaultOutputDir(params.manifests);
+        }
+        params.outputDir = params.outputDir.getAbsoluteFile();
+
+        if (!params.inputDir.canRead()) {
+            throw WebinCliException.userError("Unable to read from the input directory: " + params.inputDir.getAbsolutePath());
+        }
+
+        if (!params.outputDir.canWrite()) {
+            throw WebinCliException.userError("Unable to write to the output directory: " + params.outputDir.getAbsolutePath());
+        }
+
+        if (!params.validate && !params.submit) {
+            throw WebinCliException.userError("Either -validate or -submit option must be provided.");
         }
     }
 
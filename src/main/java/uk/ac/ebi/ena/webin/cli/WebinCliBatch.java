@@ -0,0 +1,416 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.vandermeer.asciitable.AT_Renderer;
+import de.vandermeer.asciitable.AsciiTable;
+import de.vandermeer.asciitable.CWC_FixedWidth;
+import de.vandermeer.skb.interfaces.transformers.textformat.TextAlignment;
+
+import uk.ac.ebi.ena.webin.cli.service.utils.ReferenceCache;
+import uk.ac.ebi.ena.webin.cli.utils.FileUtils;
+
+/**
+ * Validates and submits many manifest files in one JVM. The login, authentication token and version check are
+ * shared by all manifest files which are processed concurrently by a {@link WebinCliPipeline}: one manifest file
+ * can be validated while another one is uploaded or submitted. Each manifest file is processed by its own
+ * {@link WebinCli} instance writing its results into a separate output directory. The completed stages are recorded
+ * in a {@link WebinCliJournal} so that a restarted batch resumes each manifest file from its first incomplete stage.
+ */
+public class WebinCliBatch {
+    private static final Logger log = LoggerFactory.getLogger(WebinCliBatch.class);
+
+    static final String SUMMARY_FILE_NAME = "webin-cli-batch.summary";
+    static final String JOURNAL_FILE_NAME = "webin-cli-batch.journal";
+    static final String TEST_JOURNAL_FILE_NAME = "webin-cli-batch-test.journal";
+    private static final String MANIFEST_GLOB = "*.{txt,json,manifest}";
+    private static final int DEFAULT_MAX_THREADS = 4;
+
+    private final WebinCliCommand cmd;
+    private final List<File> manifestFiles;
+    private final Map<File, String[]> outputDirs;
+    private final int threads;
+    private final WebinCliJournal journal;
+
+    public static class Result {
+        private final File manifestFile;
+        private final int exitCode;
+        private final String message;
+        private final long elapsedMillis;
+
+        public Result(File manifestFile, int exitCode, String message, long elapsedMillis) {
+            this.manifestFile = manifestFile;
+            this.exitCode = exitCode;
+            this.message = message;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public File getManifestFile() {
+            return manifestFile;
+        }
+
+        public int getExitCode() {
+            return exitCode;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public boolean isSuccess() {
+            return exitCode == WebinCli.SUCCESS;
+        }
+    }
+
+    public WebinCliBatch(WebinCliCommand cmd) {
+        this.cmd = cmd;
+        this.manifestFiles = resolveManifestFiles(cmd.manifests);
+        this.outputDirs = getOutputDirs(manifestFiles);
+        this.threads = cmd.batchThreads > 0
+            ? cmd.batchThreads
+            : Math.max(1, Math.min(DEFAULT_MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+        // Test submissions use a separate journal so that they are not mistaken for completed submissions.
+        this.journal = new WebinCliJournal(
+            new File(cmd.outputDir, cmd.test ? TEST_JOURNAL_FILE_NAME : JOURNAL_FILE_NAME));
+    }
+
+    public int execute() {
+        log.info("Processing {} manifest files using {} validation threads.", manifestFiles.size(), threads);
+
+        String submissionAccount = WebinCli.getSubmissionAccount(cmd);
+        String authToken = WebinCli.getAuthToken(cmd);
+
+        long start = System.currentTimeMillis();
+
+        List<Result> results = new ArrayList<>();
+        try (WebinCliPipeline pipeline = new WebinCliPipeline(
+            getStageThreads(), cmd.batchQueueSize, cmd.batchSubmitSize, cmd.batchSubmitBytes)) {
+            List<CompletableFuture<Result>> futures = new ArrayList<>();
+            for (File manifestFile : manifestFiles) {
+                futures.add(execute(pipeline, manifestFile, submissionAccount, authToken));
+            }
+            for (CompletableFuture<Result> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw WebinCliException.systemError(ex);
+        } catch (ExecutionException ex) {
+            throw WebinCliException.systemError(ex);
+        }
+
+        printSummary(results, System.currentTimeMillis() - start);
+
+        return getExitCode(results);
+    }
+
+    private Map<WebinCliPipeline.Stage, Integer> getStageThreads() {
+        Map<WebinCliPipeline.Stage, Integer> stageThreads = new EnumMap<>(WebinCliPipeline.Stage.class);
+        stageThreads.put(WebinCliPipeline.Stage.VALIDATE, threads);
+        stageThreads.put(WebinCliPipeline.Stage.PREPARE, cmd.batchPrepareThreads);
+        stageThreads.put(WebinCliPipeline.Stage.UPLOAD, cmd.batchUploadThreads);
+        stageThreads.put(WebinCliPipeline.Stage.SUBMIT, cmd.batchSubmitThreads);
+        return stageThreads;
+    }
+
+    private CompletableFuture<Result> execute(
+        WebinCliPipeline pipeline, File manifestFile, String submissionAccount, String authToken) {
+        WebinCliJournal.Entry journalEntry =
+            journal.getEntry(manifestFile, FileUtils.calculateDigest("MD5", manifestFile));
+
+        if (cmd.submit && journalEntry.contains(WebinCliJournal.Event.SUBMITTED)) {
+            log.info("Skipping manifest file submitted by an earlier run: {}", manifestFile);
+            return CompletableFuture.completedFuture(new Result(manifestFile, WebinCli.SUCCESS,
+                "Submitted by an earlier run: " + journalEntry.getDetail(WebinCliJournal.Event.SUBMITTED), 0));
+        }
+
+        AtomicLong start = new AtomicLong();
+        return pipeline.execute(() -> {
+            start.set(System.currentTimeMillis());
+
+            WebinCliParameters parameters = WebinCli.initParameters(submissionAccount, authToken, cmd);
+            parameters.setManifestFile(manifestFile);
+            parameters.setOutputDir(getOutputDir(manifestFile));
+
+            WebinCli webinCli = new WebinCli(parameters);
+            webinCli.setJournal(journalEntry);
+            return webinCli;
+        }).handle((ignored, ex) -> {
+            long elapsedMillis = System.currentTimeMillis() - start.get();
+            if (ex == null) {
+                return new Result(manifestFile, WebinCli.SUCCESS, "", elapsedMillis);
+            }
+            if (ex instanceof WebinCliException) {
+                return new Result(manifestFile, WebinCli.getExitCode((WebinCliException) ex), ex.getMessage(), elapsedMillis);
+            }
+            log.error(ex.getMessage(), ex);
+            return new Result(manifestFile, WebinCli.SYSTEM_ERROR, String.valueOf(ex.getMessage()), elapsedMillis);
+        });
+    }
+
+    /**
+     * Each manifest file gets its own output directory to avoid report files being overwritten by other manifest
+     * files in the batch.
+     */
+    File getOutputDir(File manifestFile) {
+        return WebinCli.createOutputDir(cmd.outputDir, outputDirs.get(manifestFile));
+    }
+
+    /**
+     * Returns the output directory of each manifest file relative to the output directory. The output directory is
+     * named after the manifest file. If manifest files in different directories have the same name then the output
+     * directories are named after the manifest file paths relative to the common parent directory.
+     *
+     * @throws WebinCliException if two manifest files would have the same output directory
+     */
+    static Map<File, String[]> getOutputDirs(List<File> manifestFiles) {
+        Set<String> names = new HashSet<>();
+        boolean uniqueNames = manifestFiles.stream().allMatch(manifestFile -> names.add(manifestFile.getName()));
+        Path commonParent = uniqueNames ? null : getCommonParent(manifestFiles);
+
+        Map<File, String[]> outputDirs = new HashMap<>();
+        Map<String, File> outputDirFiles = new HashMap<>();
+        for (File manifestFile : manifestFiles) {
+            String[] dirs;
+            if (commonParent != null) {
+                Path relativePath = commonParent.relativize(manifestFile.getAbsoluteFile().toPath());
+                dirs = new String[relativePath.getNameCount()];
+                for (int i = 0; i < dirs.length; ++i) {
+                    dirs[i] = relativePath.getName(i).toString();
+                }
+            } else {
+                dirs = new String[] {manifestFile.getName()};
+            }
+
+            File otherManifestFile = outputDirFiles.put(String.join("/", WebinCli.getSafeOutputDirs(dirs)), manifestFile);
+            if (otherManifestFile != null) {
+                throw WebinCliException.userError("The manifest files " + otherManifestFile.getPath() + " and "
+                    + manifestFile.getPath() + " would write into the same output directory. Please rename one of them.");
+            }
+            outputDirs.put(manifestFile, dirs);
+        }
+        return outputDirs;
+    }
+
+    private static Path getCommonParent(List<File> manifestFiles) {
+        Path commonParent = manifestFiles.get(0).getAbsoluteFile().toPath().getParent();
+        for (File manifestFile : manifestFiles) {
+            while (commonParent != null && !manifestFile.getAbsoluteFile().toPath().startsWith(commonParent)) {
+                commonParent = commonParent.getParent();
+            }
+        }
+        return commonParent;
+    }
+
+    public List<File> getManifestFiles() {
+        return manifestFiles;
+    }
+
+    private void printSummary(List<Result> results, long elapsedMillis) {
+        AsciiTable table = new AsciiTable();
+        AT_Renderer renderer = AT_Renderer.create();
+        CWC_FixedWidth cwc = new CWC_FixedWidth();
+        cwc.add(40);
+        cwc.add(10);
+        cwc.add(10);
+        cwc.add(40);
+        renderer.setCWC(cwc);
+        table.setRenderer(renderer);
+        table.addRule();
+        table.addRow("Manifest", "Status", "Seconds", "Message");
+        results.forEach(result -> {
+            table.addRule();
+            table.addRow(
+                result.getManifestFile().getName(),
+                getStatus(result.getExitCode()),
+                String.format("%.1f", result.getElapsedMillis() / 1000.0),
+                result.getMessage() == null ? "" : result.getMessage());
+        });
+        table.addRule();
+        table.setPadding(0);
+        table.setTextAlignment(TextAlignment.LEFT);
+
+        long succeeded = results.stream().filter(Result::isSuccess).count();
+        double minutes = Math.max(elapsedMillis, 1) / 60_000.0;
+
+        log.info(System.lineSeparator() + table.render());
+        log.info("Processed {} manifest files in {} seconds ({} per minute): {} succeeded, {} failed.",
+            results.size(),
+            String.format("%.1f", elapsedMillis / 1000.0),
+            String.format("%.1f", results.size() / minutes),
+            succeeded,
+            results.size() - succeeded);
+        log.info("Reference lookups: {}.", ReferenceCache.getInstance());
+
+        writeSummary(results);
+    }
+
+    private void writeSummary(List<Result> results) {
+        Path summaryFile = cmd.outputDir.toPath().resolve(SUMMARY_FILE_NAME);
+        List<String> lines = new ArrayList<>();
+        lines.add("MANIFEST\tSTATUS\tEXIT_CODE\tSECONDS\tMESSAGE");
+        results.forEach(result -> lines.add(String.join("\t",
+            result.getManifestFile().getPath(),
+            getStatus(result.getExitCode()),
+            String.valueOf(result.getExitCode()),
+            String.format("%.1f", result.getElapsedMillis() / 1000.0),
+            result.getMessage() == null ? "" : result.getMessage().replaceAll("\\s+", " "))));
+        try {
+            Files.write(summaryFile, lines, StandardCharsets.UTF_8);
+            log.info("Batch summary written to: {}", summaryFile);
+        } catch (IOException ex) {
+            log.warn("Unable to write batch summary file: {}", summaryFile);
+        }
+    }
+
+    private static String getStatus(int exitCode) {
+        switch (exitCode) {
+            case WebinCli.SUCCESS:
+                return "SUCCESS";
+            case WebinCli.USER_ERROR:
+                return "USER ERROR";
+            case WebinCli.VALIDATION_ERROR:
+                return "VALIDATION ERROR";
+            default:
+                return "SYSTEM ERROR";
+        }
+    }
+
+    /**
+     * Returns success if all manifest files succeeded. Otherwise, returns the most severe error: system errors
+     * before user errors before validation errors.
+     */
+    static int getExitCode(List<Result> results) {
+        List<Integer> exitCodes = results.stream().map(Result::getExitCode).collect(Collectors.toList());
+        if (exitCodes.contains(WebinCli.SYSTEM_ERROR)) {
+            return WebinCli.SYSTEM_ERROR;
+        }
+        if (exitCodes.contains(WebinCli.USER_ERROR)) {
+            return WebinCli.USER_ERROR;
+        }
+        if (exitCodes.contains(WebinCli.VALIDATION_ERROR)) {
+            return WebinCli.VALIDATION_ERROR;
+        }
+        return WebinCli.SUCCESS;
+    }
+
+    /**
+     * Returns the default output directory for the given -manifests option value: the directory itself, or the
+     * directory containing the glob pattern or the list file.
+     */
+    public static File getDefaultOutputDir(String manifests) {
+        File file = new File(manifests);
+        if (file.isDirectory()) {
+            return file;
+        }
+        File parent = file.getAbsoluteFile().getParentFile();
+        return parent != null ? parent : new File(".");
+    }
+
+    /**
+     * Resolves the -manifests option value into a sorted list of manifest files. The value can be a directory,
+     * a glob pattern or a text file listing one manifest file per line. Empty lines and lines starting with '#'
+     * are ignored in the list file. Relative paths in the list file are resolved against the list file directory.
+     */
+    public static List<File> resolveManifestFiles(String manifests) {
+        Path path = Paths.get(manifests).toAbsolutePath().normalize();
+        List<File> manifestFiles;
+
+        try {
+            if (Files.isDirectory(path)) {
+                manifestFiles = listFiles(path, MANIFEST_GLOB);
+            } else if (Files.isRegularFile(path)) {
+                Path listDir = path.getParent();
+                try (Stream<String> lines = Files.lines(path, StandardCharsets.UTF_8)) {
+                    manifestFiles = lines
+                        .map(String::trim)
+                        .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                        .map(line -> listDir.resolve(line).normalize().toFile())
+                        .collect(Collectors.toList());
+                }
+            } else {
+                Path dir = path.getParent();
+                manifestFiles = dir != null && Files.isDirectory(dir)
+                    ? listFiles(dir, path.getFileName().toString())
+                    : Collections.emptyList();
+            }
+        } catch (IOException ex) {
+            throw WebinCliException.userError(ex, "Unable to read manifest files: " + manifests);
+        }
+
+        for (File manifestFile : manifestFiles) {
+            if (!manifestFile.isFile() || !Files.isReadable(manifestFile.toPath())) {
+                throw WebinCliException.userError("Unable to read the manifest file: " + manifestFile.getPath());
+            }
+        }
+
+        if (manifestFiles.isEmpty()) {
+            throw WebinCliException.userError("No manifest files found: " + manifests);
+        }
+
+        return manifestFiles;
+    }
+
+    private static List<File> listFiles(Path dir, String glob) throws IOException {
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        List<File> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path file : stream) {
+                if (Files.isRegularFile(file) && matcher.matches(file.getFileName())) {
+                    files.add(file.toFile());
+                }
+            }
+        }
+        files.sort(null);
+        return files;
+    }
+
+    static ThreadFactory createThreadFactory(String name) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -14,6 +14,9 @@ import picocli.CommandLine;
 import picocli.CommandLine.Option;
 
 import java.io.File;
+import java.util.List;
+
+import uk.ac.ebi.ena.webin.cli.utils.SidecarChecksums;
 
 @CommandLine.Command(
         headerHeading = "%n",
@@ -35,13 +38,16 @@ WebinCliCommand
         }
     }
 
-    @Option(names = Options.context, description = Descriptions.context, paramLabel= "TYPE", required = true, order = 0)
+    @Option(names = Options.context, description = Descriptions.context, paramLabel= "TYPE", order = 0)
     public WebinCliContext context;
 
-    @Option(names = Options.manifest, description = Descriptions.manifest, paramLabel= "FILE", required = true, order = 1)
+    @Option(names = Options.manifest, description = Descriptions.manifest, paramLabel= "FILE", order = 1)
     public File manifest;
 
-    @Option(names = { Options.userName, Options.userNameSynonym }, paramLabel= "USER", description = Descriptions.userName, required = true, order = 2)
+    @Option(names = Options.manifests, description = Descriptions.manifests, paramLabel= "DIR|GLOB|FILE", order = 1)
+    public String manifests;
+
+    @Option(names = { Options.userName, Options.userNameSynonym }, paramLabel= "USER", description = Descriptions.userName, order = 2)
     public String userName;
 
     @Option(names = Options.password, description = Descriptions.password, paramLabel= "PASSWORD", order = 3)
@@ -80,6 +86,99 @@ WebinCliCommand
     @Option(names = Options.ascp, description = Descriptions.ascp, order = 11)
     public boolean ascp;
 
+    @Option(names = Options.ascpSessions, description = Descriptions.ascpSessions, paramLabel= "N", defaultValue = "1", order = 11)
+    public int ascpSessions;
+
+    @Option(names = Options.ascpRate, description = Descriptions.ascpRate, paramLabel= "RATE", defaultValue = "300M", order = 11)
+    public String ascpRate;
+
+    @Option(names = Options.uploadRate, description = Descriptions.uploadRate, paramLabel= "RATE", order = 11)
+    public String uploadRate;
+
+    @Option(names = Options.connectionUploadRate, description = Descriptions.connectionUploadRate, paramLabel= "RATE", order = 11)
+    public String connectionUploadRate;
+
+    @Option(names = Options.uploadRateSchedule, description = Descriptions.uploadRateSchedule, paramLabel= "SCHEDULE", order = 11)
+    public String uploadRateSchedule;
+
+    @Option(names = Options.noUploadResume, description = Descriptions.uploadResume, order = 11, negatable = true)
+    public boolean uploadResume = true;
+
+    @Option(names = Options.uploadThreads, description = Descriptions.uploadThreads, paramLabel= "N", defaultValue = "1", order = 11)
+    public int uploadThreads;
+
+    @Option(names = Options.incrementalUpload, description = Descriptions.incrementalUpload, order = 11)
+    public boolean incrementalUpload;
+
+    @Option(names = Options.tunedUpload, description = Descriptions.tunedUpload, order = 11)
+    public boolean tunedUpload;
+
+    @Option(names = Options.forceChecksum, description = Descriptions.forceChecksum, order = 12)
+    public boolean forceChecksum;
+
+    @Option(names = Options.checksumDuringUpload, description = Descriptions.checksumDuringUpload, order = 12)
+    public boolean checksumDuringUpload;
+
+    @Option(names = Options.compressFastq, description = Descriptions.compressFastq, order = 12)
+    public boolean compressFastq;
+
+    @Option(names = Options.uploadDuringValidation, description = Descriptions.uploadDuringValidation, order = 12)
+    public boolean uploadDuringValidation;
+
+    @Option(names = Options.sidecarChecksums, description = Descriptions.sidecarChecksums, paramLabel= "MODE", order = 12)
+    public SidecarChecksums.Mode sidecarChecksums;
+
+    @Option(names = Options.md5File, description = Descriptions.md5File, paramLabel= "FILE", order = 12)
+    public List<File> md5Files;
+
+    @Option(names = Options.referenceCacheTtl, description = Descriptions.referenceCacheTtl, paramLabel= "SECONDS", defaultValue = "3600", order = 12)
+    public long referenceCacheTtl;
+
+    @Option(names = Options.clearReferenceCache, description = Descriptions.clearReferenceCache, order = 12)
+    public boolean clearReferenceCache;
+
+    @Option(names = Options.httpConnectionsPerRoute, description = Descriptions.httpConnectionsPerRoute, paramLabel= "N", defaultValue = "0", order = 12)
+    public int httpConnectionsPerRoute;
+
+    @Option(names = Options.httpConnectTimeout, description = Descriptions.httpConnectTimeout, paramLabel= "SECONDS", defaultValue = "0", order = 12)
+    public int httpConnectTimeout;
+
+    @Option(names = Options.httpReadTimeout, description = Descriptions.httpReadTimeout, paramLabel= "SECONDS", defaultValue = "0", order = 12)
+    public int httpReadTimeout;
+
+    @Option(names = Options.checksumThreads, description = Descriptions.checksumThreads, paramLabel= "N", defaultValue = "0", order = 12)
+    public int checksumThreads;
+
+    @Option(names = Options.batchThreads, description = Descriptions.batchThreads, paramLabel= "N", defaultValue = "0", order = 12)
+    public int batchThreads;
+
+    @Option(names = Options.batchPrepareThreads, description = Descriptions.batchPrepareThreads, paramLabel= "N", defaultValue = "2", order = 13)
+    public int batchPrepareThreads;
+
+    @Option(names = Options.batchUploadThreads, description = Descriptions.batchUploadThreads, paramLabel= "N", defaultValue = "2", order = 14)
+    public int batchUploadThreads;
+
+    @Option(names = Options.batchSubmitThreads, description = Descriptions.batchSubmitThreads, paramLabel= "N", defaultValue = "2", order = 15)
+    public int batchSubmitThreads;
+
+    @Option(names = Options.batchQueueSize, description = Descriptions.batchQueueSize, paramLabel= "N", defaultValue = "4", order = 16)
+    public int batchQueueSize;
+
+    @Option(names = Options.batchSubmitSize, description = Descriptions.batchSubmitSize, paramLabel= "N", defaultValue = "1", order = 17)
+    public int batchSubmitSize;
+
+    @Option(names = Options.batchSubmitBytes, description = Descriptions.batchSubmitBytes, paramLabel= "BYTES", defaultValue = "10000000", order = 18)
+    public long batchSubmitBytes;
+
+    @Option(names = Options.server, description = Descriptions.server, paramLabel= "PORT", order = 19)
+    public Integer server;
+
+    @Option(names = Options.serverThreads, description = Descriptions.serverThreads, paramLabel= "N", defaultValue = "0", order = 20)
+    public int serverThreads;
+
+    @Option(names = Options.serverTokenFile, description = Descriptions.serverTokenFile, paramLabel= "FILE", order = 21)
+    public File serverTokenFile;
+
     @Option(names = Options.help, description = Descriptions.help, usageHelp = true, order = 100)
     public boolean help;
 
@@ -92,6 +191,7 @@ WebinCliCommand
     public interface Options {
         String context    = "-context";
         String manifest   = "-manifest";
+        String manifests  = "-manifests";
         String userName   = "-userName";
         String password   = "-password";
         String passwordFile = "-passwordFile";
@@ -104,6 +204,37 @@ WebinCliCommand
         String noQuick    = "--no-quick";
         String test       = "-test";
         String ascp       = "-ascp";
+        String ascpSessions = "-ascpSessions";
+        String ascpRate = "-ascpRate";
+        String uploadRate = "-uploadRate";
+        String connectionUploadRate = "-connectionUploadRate";
+        String uploadRateSchedule = "-uploadRateSchedule";
+        String noUploadResume = "--no-upload-resume";
+        String uploadThreads = "-uploadThreads";
+        String incrementalUpload = "-incrementalUpload";
+        String tunedUpload = "-tunedUpload";
+        String forceChecksum = "-forceChecksum";
+        String checksumDuringUpload = "-checksumDuringUpload";
+        String compressFastq = "-compressFastq";
+        String uploadDuringValidation = "-uploadDuringValidation";
+        String sidecarChecksums = "-sidecarChecksums";
+        String md5File = "-md5File";
+        String referenceCacheTtl = "-referenceCacheTtl";
+        String clearReferenceCache = "-clearReferenceCache";
+        String httpConnectionsPerRoute = "-httpConnectionsPerRoute";
+        String httpConnectTimeout = "-httpConnectTimeout";
+        String httpReadTimeout = "-httpReadTimeout";
+        String checksumThreads = "-checksumThreads";
+        String batchThreads = "-batchThreads";
+        String batchPrepareThreads = "-batchPrepareThreads";
+        String batchUploadThreads = "-batchUploadThreads";
+        String batchSubmitThreads = "-batchSubmitThreads";
+        String batchQueueSize = "-batchQueueSize";
+        String batchSubmitSize = "-batchSubmitSize";
+        String batchSubmitBytes = "-batchSubmitBytes";
+        String server     = "-server";
+        String serverThreads = "-serverThreads";
+        String serverTokenFile = "-serverTokenFile";
         String help       = "-help";
         String fields     = "-fields";
         String version    = "-version";
@@ -117,6 +248,13 @@ WebinCliCommand
         String context = "Submission type: ${COMPLETION-CANDIDATES}";
         String manifest =
                 "Manifest text file containing file and metadata fields.";
+        String manifests =
+                "Validate or submit many manifest files in one run. Accepts a directory " +
+                "(all *.txt, *.json and *.manifest files in it), a glob pattern or a text file " +
+                "listing one manifest file per line. The results of each manifest are written " +
+                "in <outputDir>/<manifest file name> and summarised at the end of the run. " +
+                "The completed stages are recorded in the webin-cli-batch.journal file in the output directory. " +
+                "A restarted run skips the completed stages. Delete the journal file to start from the beginning.";
         String userName = "Webin submission account name or e-mail address.";
         String password = "Webin submission account password.";
         String passwordEnv = "Environment variable containing the Webin submission account password.";
@@ -140,6 +278,107 @@ WebinCliCommand
         String ascp =
                 "Use Aspera (if Aspera Cli is available) instead of FTP when uploading files. " +
                 "The path to the installed \"ascp\" program must be in the PATH variable.";
+        String ascpSessions =
+                "Number of concurrent Aspera sessions between which the files are divided. " +
+                "By default, all files are uploaded using one session.";
+        String ascpRate =
+                "Total Aspera target transfer rate in bits per second with an optional K, M or G suffix, " +
+                "divided between the sessions. Use 'auto' to use the server target rate adapting to the " +
+                "available bandwidth. Default: 300M.";
+        String uploadRate =
+                "Total upload rate of all concurrent file transfers in bits per second with an optional K, M or G " +
+                "suffix. By default, the upload rate is not limited. The rate of an Aspera session can't be " +
+                "changed once it has started, so each session is given an equal share of the rate divided " +
+                "between all Aspera sessions of this process and waits until its share is available.";
+        String connectionUploadRate =
+                "Upload rate of each FTP connection or Aspera session in bits per second with an optional K, M " +
+                "or G suffix. By default, the upload rate is not limited.";
+        String uploadRateSchedule =
+                "Total upload rate by time of day as a comma separated list of HH:mm=RATE entries, for example " +
+                "07:00=100M,19:00=0. Each rate applies until the next entry. A rate of 0 is not limited.";
+        String uploadResume =
+                "Do not resume failed FTP file uploads from the partially uploaded file. By default, failed " +
+                "uploads are resumed if the FTP server supports it.";
+        String uploadThreads =
+                "Number of files uploaded at the same time using separate FTP connections. " +
+                "The largest files are uploaded first. By default, one file is uploaded at a time.";
+        String incrementalUpload =
+                "Skip the files that have already been uploaded using FTP if the FTP server confirms that they " +
+                "have the same MD5 checksum. Partially uploaded files are resumed if the FTP server confirms the " +
+                "MD5 checksum of the uploaded part. Only the other files in the upload directory are deleted.";
+        String tunedUpload =
+                "Tune FTP uploads for long transfers over fast, high-latency networks: use large " +
+                "transfer and socket buffers and keep the control connection alive during transfers. " +
+                "The settings are written to the report file.";
+        String forceChecksum =
+                "Calculate the checksums of all submitted files again. By default the checksums of unchanged " +
+                "files are reused from earlier runs.";
+        String checksumDuringUpload =
+                "Upload the files before preparing the submission XMLs and calculate the file checksums " +
+                "while the files are uploaded using FTP. This avoids reading the files twice.";
+        String compressFastq =
+                "Compress uncompressed .fastq and .fq files using multiple threads before they are validated " +
+                "and uploaded. The compressed files are written into the compress directory of the submission.";
+        String uploadDuringValidation =
+                "Upload the files while they are being validated. The submission is made only after " +
+                "all files have passed the validation. In batch mode, these uploads use the upload threads " +
+                "set by -batchUploadThreads.";
+        String sidecarChecksums =
+                "Read the MD5 checksums of the submitted files from <file>.md5 files or md5sum files " +
+                "(md5sum.txt, md5sums.txt or MD5SUMS) in the same directory instead of reading the files: " +
+                "${COMPLETION-CANDIDATES}. TRUST uses the checksums as they are. VERIFY also calculates " +
+                "the checksums in the background and fails the submission if they do not match.";
+        String md5File =
+                "An md5sum file containing the MD5 checksums of the submitted files. Can be used more than once. " +
+                "The checksums are verified unless -sidecarChecksums=TRUST is given.";
+        String referenceCacheTtl =
+                "Time in seconds for which the studies, samples, runs and analyses retrieved from the Webin " +
+                "REST services are cached and reused. Use 0 to disable the cache. Default: 3600.";
+        String clearReferenceCache =
+                "Remove all cached studies, samples, runs and analyses before validating the submission.";
+        String httpConnectionsPerRoute =
+                "Maximum number of pooled connections to each Webin REST service shared by all concurrent " +
+                "service calls. Default: 20.";
+        String httpConnectTimeout =
+                "Timeout in seconds for connecting to the Webin REST services and for waiting for a pooled " +
+                "connection. Default: 30.";
+        String httpReadTimeout =
+                "Timeout in seconds for reading the responses of the Webin REST services. Default: 600.";
+        String checksumThreads =
+                "Number of files for which checksums are calculated concurrently. " +
+                "By default the checksums of up to four files are calculated concurrently.";
+        String batchThreads =
+                "Number of manifest files validated concurrently when using the -manifests option. " +
+                "By default up to four manifest files are validated concurrently.";
+        String batchPrepareThreads =
+                "Number of submissions for which file checksums and submission XMLs are prepared concurrently " +
+                "when using the -manifests option.";
+        String batchUploadThreads =
+                "Number of submissions uploaded concurrently when using the -manifests option.";
+        String batchSubmitThreads =
+                "Number of submissions submitted concurrently when using the -manifests option.";
+        String batchQueueSize =
+                "Maximum number of manifest files waiting for each of the validate, prepare, upload and submit " +
+                "stages when using the -manifests option.";
+        String batchSubmitSize =
+                "Maximum number of manifest files submitted together in one submission request " +
+                "when using the -manifests option. By default each manifest file is submitted separately.";
+        String batchSubmitBytes =
+                "Maximum total size in bytes of the submission XMLs submitted together in one submission " +
+                "request when using the -manifests and -batchSubmitSize options.";
+        String server =
+                "Run as a resident server accepting submission jobs on the given loopback port. " +
+                "A job is a JSON object POSTed to /jobs with the same fields as the command line options " +
+                "(context, manifest, userName, password, inputDir, outputDir, centerName, validate, submit, test, ascp). " +
+                "The response contains the exit code and the report of the job. Every request must have an " +
+                "\"Authorization: Bearer <token>\" header with the token written into the -serverTokenFile.";
+        String serverThreads =
+                "Number of jobs executed concurrently in server mode. " +
+                "By default up to four jobs are executed concurrently.";
+        String serverTokenFile =
+                "File into which the server writes the access token required by every request. The file " +
+                "can be read only by its owner. By default the token is written into " +
+                "~/.webin-cli/server-token.";
         String help =
                 "Show this help message and exit.";
         String fields =
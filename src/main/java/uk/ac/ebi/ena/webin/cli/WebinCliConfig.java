@@ -14,6 +14,8 @@ public interface WebinCliConfig {
     String VALIDATE_DIR = "validate";
     String PROCESS_DIR = "process";
     String SUBMIT_DIR = "submit";
+    String COMPRESS_DIR = "compress";
     String REPORT_FILE_SUFFIX = ".report";
     String SUBMISSION_BUNDLE_FILE_SUFFIX = ".data";
+    String UPLOAD_PROGRESS_FILE = "upload-progress.json";
 }
@@ -32,6 +32,7 @@ import uk.ac.ebi.ena.webin.cli.service.RatelimitService;
 import uk.ac.ebi.ena.webin.cli.service.models.RateLimitResult;
 import uk.ac.ebi.ena.webin.cli.submit.SubmissionBundle;
 import uk.ac.ebi.ena.webin.cli.submit.SubmissionBundleHelper;
+import uk.ac.ebi.ena.webin.cli.utils.ChecksumEngine;
 import uk.ac.ebi.ena.webin.cli.utils.FileUtils;
 import uk.ac.ebi.ena.webin.cli.validator.api.ValidationResponse;
 import uk.ac.ebi.ena.webin.cli.validator.api.Validator;
@@ -91,6 +92,16 @@ WebinCliExecutor<M extends Manifest, R extends ValidationResponse>
     }
 
     public final void validateSubmission() {
+        validateSubmission(() -> {});
+    }
+
+    /**
+     * Validates the submission.
+     *
+     * @param validationStarted called after the output directories have been created and before the submitted
+     * files are validated
+     */
+    public final void validateSubmission(Runnable validationStarted) {
         this.validationDir = createSubmissionDir(WebinCliConfig.VALIDATE_DIR );
         this.processDir = createSubmissionDir(WebinCliConfig.PROCESS_DIR );
 
@@ -109,6 +120,8 @@ WebinCliExecutor<M extends Manifest, R extends ValidationResponse>
         manifest.setWebinAuthToken(getAuthTokenFromParam());
         manifest.setWebinCliTestMode(getTestModeFromParam());
 
+        validationStarted.run();
+
         try {
             validationResponse = getValidator().validate(manifest);
         } catch (RuntimeException ex) {
@@ -171,12 +184,13 @@ WebinCliExecutor<M extends Manifest, R extends ValidationResponse>
     public final void prepareSubmissionBundle() {
         this.submitDir = createSubmissionDir(WebinCliConfig.SUBMIT_DIR );
 
-        Path uploadDir = Paths.get( this.parameters.isTest() ? "webin-cli-test" : "webin-cli" )
-            .resolve( String.valueOf( this.context ) )
-            .resolve( WebinCli.getSafeOutputDir( getSubmissionName() ) );
+        Path uploadDir = getUploadDir();
 
         String manifestMd5 = calculateManifestMd5();
 
+        // Calculate the checksums of all submitted files concurrently before they are needed by the xml writers.
+        ChecksumEngine.getInstance().calculateDigests("MD5", getManifestReader().getManifest().files().files());
+
         Map<SubmissionBundle.SubmissionXMLFileType, String> xmls = new HashMap<>();
 
         xmls.putAll(new SubmissionXmlWriter().createXml(
@@ -202,8 +216,7 @@ WebinCliExecutor<M extends Manifest, R extends ValidationResponse>
                 return new SubmissionBundle.SubmissionXMLFile(entry.getKey(), xmlFilePath.toFile(), entry.getValue());
             }).collect(Collectors.toList());
 
-        List<File> uploadFileList = new ArrayList<>();
-        uploadFileList.addAll(getManifestReader().getManifest().files().files());
+        List<File> uploadFileList = getUploadFileList();
 
         this.submissionBundle = new SubmissionBundle(
             getSubmitDir(), uploadDir.toString(), uploadFileList, xmlFileList, manifestMd5);
@@ -212,14 +225,45 @@ WebinCliExecutor<M extends Manifest, R extends ValidationResponse>
         }
     }
 
+    /**
+     * Returns the directory where the files are uploaded.
+     */
+    public Path getUploadDir() {
+        return Paths.get( this.parameters.isTest() ? "webin-cli-test" : "webin-cli" )
+            .resolve( String.valueOf( this.context ) )
+            .resolve( WebinCli.getSafeOutputDir( getSubmissionName() ) );
+    }
+
+    /**
+     * Returns the files to be uploaded.
+     */
+    public List<File> getUploadFileList() {
+        return new ArrayList<>(getManifestReader().getManifest().files().files());
+    }
+
     public SubmissionBundle getSubmissionBundle() {
         if (submissionBundle == null && getParameters().isSaveSubmissionBundleFile()) {
-            return SubmissionBundleHelper.read(calculateManifestMd5(), getSubmitDir());
+            File bundleDir = submitDir != null ? submitDir : WebinCli.createOutputDir(
+                parameters.getOutputDir(), String.valueOf( context ), getSubmissionName(), WebinCliConfig.SUBMIT_DIR);
+            return SubmissionBundleHelper.read(calculateManifestMd5(), bundleDir);
         }
 
         return submissionBundle;
     }
 
+    /**
+     * Reads the submission bundle written by an earlier run into the submit directory without reading the manifest.
+     * Returns null if the submission bundle can't be read or the manifest file has changed.
+     */
+    public SubmissionBundle readSubmissionBundle(File submitDir) {
+        SubmissionBundle bundle = SubmissionBundleHelper.read(calculateManifestMd5(), submitDir);
+        if (bundle != null) {
+            this.submitDir = submitDir;
+            this.submissionBundle = bundle;
+        }
+        return bundle;
+    }
+
     // TODO: remove
     public WebinCliContext getContext() {
         return context;
@@ -245,6 +289,20 @@ WebinCliExecutor<M extends Manifest, R extends ValidationResponse>
         return processDir;
     }
 
+    /**
+     * Returns the process directory, creating it if the submission has not been validated by this run. The existing
+     * files in the directory are kept.
+     */
+    public synchronized File getOrCreateProcessDir() {
+        if (processDir == null) {
+            processDir = submitDir != null
+                ? WebinCli.createOutputDir(submitDir.getParentFile(), WebinCliConfig.PROCESS_DIR)
+                : WebinCli.createOutputDir(
+                    parameters.getOutputDir(), String.valueOf( context ), getSubmissionName(), WebinCliConfig.PROCESS_DIR);
+        }
+        return processDir;
+    }
+
     public File getSubmitDir() {
         return submitDir;
     }
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal recording the completed stages of each manifest file in a batch. A restarted batch uses
+ * the journal to resume each manifest file from its first incomplete stage. The journal entries are keyed by the
+ * manifest file path and the manifest file MD5 checksum: entries written for a manifest file that has since been
+ * changed are ignored.
+ * <p>
+ * Each line is written and synced separately so that at most the last line is lost if the process is killed.
+ * Incomplete lines are ignored when the journal is read.
+ */
+public class WebinCliJournal {
+    private static final Logger log = LoggerFactory.getLogger(WebinCliJournal.class);
+
+    private static final String SEPARATOR = "\t";
+    private static final int COLUMNS = 5;
+
+    public enum Event {
+        /** The manifest file has been read. */
+        MANIFEST_READ,
+        /** The manifest and the submitted files have been validated. */
+        VALIDATED,
+        /** The submission bundle has been written. The detail is the submit directory. */
+        BUNDLE_WRITTEN,
+        /** A submitted file has been uploaded. The detail is the file path. */
+        FILE_UPLOADED,
+        /** All submitted files have been uploaded. */
+        UPLOADED,
+        /** The submission has been submitted. The detail contains the accessions. */
+        SUBMITTED
+    }
+
+    private final File journalFile;
+
+    /** Completed events and their details in the order they were written for each manifest file path and MD5 checksum. */
+    private final Map<String, Map<Event, List<String>>> events = new HashMap<>();
+
+    /**
+     * Journal entries of one manifest file.
+     */
+    public class Entry {
+        private final File manifestFile;
+        private final String manifestMd5;
+
+        private Entry(File manifestFile, String manifestMd5) {
+            this.manifestFile = manifestFile;
+            this.manifestMd5 = manifestMd5;
+        }
+
+        public boolean contains(Event event) {
+            return !getDetails(event).isEmpty();
+        }
+
+        /**
+         * Returns the detail of the last written event, or null if the event has not been written.
+         */
+        public String getDetail(Event event) {
+            List<String> details = getDetails(event);
+            return details.isEmpty() ? null : details.get(details.size() - 1);
+        }
+
+        /**
+         * Returns the details of all written events, for example all files uploaded by earlier runs.
+         */
+        public List<String> getDetails(Event event) {
+            synchronized (WebinCliJournal.this) {
+                Map<Event, List<String>> manifestEvents = events.get(key(manifestFile, manifestMd5));
+                List<String> details = manifestEvents == null ? null : manifestEvents.get(event);
+                return details == null ? Collections.emptyList() : new ArrayList<>(details);
+            }
+        }
+
+        public void append(Event event) {
+            append(event, "");
+        }
+
+        public void append(Event event, String detail) {
+            WebinCliJournal.this.append(manifestFile, manifestMd5, event, detail);
+        }
+
+        public File getManifestFile() {
+            return manifestFile;
+        }
+    }
+
+    /**
+     * Opens the journal file, reading the existing entries if the file exists.
+     */
+    public WebinCliJournal(File journalFile) {
+        this.journalFile = journalFile;
+        if (journalFile.isFile()) {
+            read();
+        }
+    }
+
+    public File getJournalFile() {
+        return journalFile;
+    }
+
+    public Entry getEntry(File manifestFile, String manifestMd5) {
+        return new Entry(manifestFile.getAbsoluteFile(), manifestMd5);
+    }
+
+    private void read() {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(journalFile.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw WebinCliException.userError(ex, "Unable to read the batch journal file: " + journalFile.getPath());
+        }
+
+        for (String line : lines) {
+            String[] columns = line.split(SEPARATOR, -1);
+            if (columns.length != COLUMNS) {
+                continue;
+            }
+            Event event;
+            try {
+                event = Event.valueOf(columns[1]);
+            } catch (IllegalArgumentException ex) {
+                continue;
+            }
+            addEvent(key(new File(columns[3]), columns[2]), event, columns[4]);
+        }
+
+        log.info("Resuming batch using journal file: {}", journalFile.getPath());
+    }
+
+    private synchronized void append(File manifestFile, String manifestMd5, Event event, String detail) {
+        String safeDetail = detail == null ? "" : detail.replaceAll("[\\t\\r\\n]+", " ");
+        String line = String.join(SEPARATOR,
+            new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date()),
+            event.name(),
+            manifestMd5,
+            manifestFile.getPath(),
+            safeDetail) + System.lineSeparator();
+        try {
+            Files.write(journalFile.toPath(), line.getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+        } catch (IOException ex) {
+            throw WebinCliException.systemError(ex, "Unable to write the batch journal file: " + journalFile.getPath());
+        }
+        addEvent(key(manifestFile, manifestMd5), event, safeDetail);
+    }
+
+    private void addEvent(String key, Event event, String detail) {
+        events.computeIfAbsent(key, k -> new EnumMap<>(Event.class))
+            .computeIfAbsent(event, e -> new ArrayList<>())
+            .add(detail);
+    }
+
+    private static String key(File manifestFile, String manifestMd5) {
+        return manifestFile.getPath() + SEPARATOR + manifestMd5;
+    }
+}
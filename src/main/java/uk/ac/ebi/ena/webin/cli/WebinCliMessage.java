@@ -39,14 +39,22 @@ public enum WebinCliMessage implements MessageFormatSource {
     SUBMISSION_BUNDLE_FILE_ERROR("Unable to create submission bundle file: {0}"),
     SUBMISSION_BUNDLE_VALIDATE_SUBMISSION("Submission has not been validated previously."),
 
+    CHECKSUM_FILE_READ_ERROR("Unable to read checksum file: {0}"),
+    CHECKSUM_FILE_MISMATCH_ERROR("The MD5 checksum of the file \"{0}\" does not match the checksum file. Expected: {1} Calculated: {2}"),
+
     FTP_UPLOAD_DIR_ERROR("Missing upload directory. Failed to upload files to webin.ebi.ac.uk using FTP."),
     FTP_CONNECT_ERROR("Failed to connect to webin.ebi.ac.uk using FTP."),
     FTP_CREATE_DIR_ERROR("Failed to create directory \"{0}\" in webin.ebi.ac.uk using FTP."),
     FTP_CHANGE_DIR_ERROR("Failed to access directory \"{0}\" in webin.ebi.ac.uk using FTP."),
     FTP_UPLOAD_ERROR("Failed to upload \"{0}\" file to webin.ebi.ac.uk using FTP."),
+    FTP_UPLOAD_CHANGED_FILE_ERROR("The file \"{0}\" was changed during or after its checksum was calculated. Failed to upload the file to webin.ebi.ac.uk using FTP."),
     FTP_SERVER_ERROR("Failed to upload files to webin.ebi.ac.uk using FTP."),
+    FTP_UPLOAD_CANCELLED_ERROR("The upload of the files to webin.ebi.ac.uk using FTP has been cancelled."),
 
     ASCP_UPLOAD_ERROR("Failed to upload files to webin.ebi.ac.uk using Aspera."),
+    ASCP_RATE_ERROR("Invalid Aspera target rate: {0}. Use a number of bits per second with an optional K, M or G suffix, or auto."),
+    UPLOAD_RATE_ERROR("Invalid upload rate: {0}. Use a number of bits per second with an optional K, M or G suffix."),
+    UPLOAD_RATE_SCHEDULE_ERROR("Invalid upload rate schedule: {0}. Use a comma separated list of HH:mm=RATE entries."),
 
     SUBMIT_SERVICE_SUCCESS("The submission has been completed successfully. The following {0} accession was assigned to the submission: {1}"),
     SUBMIT_SERVICE_SUCCESS_NOACC("The submission has been completed successfully. No accession was assigned to the {0} submission. Please contact the helpdesk."),
@@ -89,6 +97,7 @@ public enum WebinCliMessage implements MessageFormatSource {
     READS_MANIFEST_READER_INVALID_PLATFORM_FOR_INSTRUMENT_ERROR("Platform {0} for instrument {1}. Valid platforms are: {2}."),
     READS_MANIFEST_READER_MISSING_PLATFORM_FOR_INSTRUMENT_ERROR("Missing platform for instrument: {0}."),
     READS_MANIFEST_READER_INVALID_QUALITY_SCORE_ERROR("Invalid quality score: {0}"),
+    READS_MANIFEST_READER_COMPRESS_FASTQ_ERROR("Failed to compress the fastq file \"{0}\": {1}"),
     CUSTOM_FIELD_PROCESSOR_INCORRECT_FIELD_VALUE("Field \"{0}\" value \"{1}\" format is incorrect \"{2}\". Expected format: \"CUSTOM_FIELD name:value\" "),
     SERVICE_AUTHENTICATION_ERROR("{0} service authentication error. Invalid submission account user name or password. Please try enclosing your password in single quotes."),
     SERVICE_SYSTEM_ERROR("A server error was returned by {0} service.");
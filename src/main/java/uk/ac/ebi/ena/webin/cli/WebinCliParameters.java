@@ -37,6 +37,33 @@ public class WebinCliParameters implements MetadataProcessorParameters {
   private boolean ascp;
   private boolean ignoreErrors;
 
+  /** Number of concurrent Aspera sessions. */
+  private int ascpSessions = 1;
+
+  /** Total Aspera target transfer rate. */
+  private String ascpRate = "300M";
+
+  /** Resume failed FTP file uploads from the size of the partially uploaded remote file. */
+  private boolean uploadResume = true;
+
+  /** Number of files uploaded at the same time using separate FTP connections. */
+  private int uploadThreads = 1;
+
+  /** Skip the files that have already been uploaded. */
+  private boolean incrementalUpload;
+
+  /** Tune FTP uploads for long transfers over high bandwidth-delay product networks. */
+  private boolean tunedUpload;
+
+  /** Upload the files before preparing the submission xmls and calculate the file checksums during the upload. */
+  private boolean checksumDuringUpload;
+
+  /** Compress uncompressed fastq files before they are validated and uploaded. */
+  private boolean compressFastq;
+
+  /** Upload the files while they are being validated. */
+  private boolean uploadDuringValidation;
+
   /** Save submission bundle file to avoid unnecessary revalidation. */
   private boolean saveSubmissionBundleFile = true;
 
@@ -171,6 +198,78 @@ public class WebinCliParameters implements MetadataProcessorParameters {
     this.ignoreErrors = ignoreErrors;
   }
 
+  public int getAscpSessions() {
+    return ascpSessions;
+  }
+
+  public void setAscpSessions(int ascpSessions) {
+    this.ascpSessions = ascpSessions;
+  }
+
+  public String getAscpRate() {
+    return ascpRate;
+  }
+
+  public void setAscpRate(String ascpRate) {
+    this.ascpRate = ascpRate;
+  }
+
+  public boolean isUploadResume() {
+    return uploadResume;
+  }
+
+  public void setUploadResume(boolean uploadResume) {
+    this.uploadResume = uploadResume;
+  }
+
+  public int getUploadThreads() {
+    return uploadThreads;
+  }
+
+  public void setUploadThreads(int uploadThreads) {
+    this.uploadThreads = uploadThreads;
+  }
+
+  public boolean isIncrementalUpload() {
+    return incrementalUpload;
+  }
+
+  public void setIncrementalUpload(boolean incrementalUpload) {
+    this.incrementalUpload = incrementalUpload;
+  }
+
+  public boolean isTunedUpload() {
+    return tunedUpload;
+  }
+
+  public void setTunedUpload(boolean tunedUpload) {
+    this.tunedUpload = tunedUpload;
+  }
+
+  public boolean isChecksumDuringUpload() {
+    return checksumDuringUpload;
+  }
+
+  public void setChecksumDuringUpload(boolean checksumDuringUpload) {
+    this.checksumDuringUpload = checksumDuringUpload;
+  }
+
+  public boolean isCompressFastq() {
+    return compressFastq;
+  }
+
+  public void setCompressFastq(boolean compressFastq) {
+    this.compressFastq = compressFastq;
+  }
+
+  public boolean isUploadDuringValidation() {
+    return uploadDuringValidation;
+  }
+
+  public void setUploadDuringValidation(boolean uploadDuringValidation) {
+    this.uploadDuringValidation = uploadDuringValidation;
+  }
+
   public boolean isSaveSubmissionBundleFile() {
     return saveSubmissionBundleFile;
   }
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.ebi.ena.webin.cli.service.SubmitService;
+
+/**
+ * Executes the stages of many submissions concurrently. Each stage has its own executor so that, for example,
+ * one submission can be validated while another one is being uploaded. The executor queues are bounded: when the
+ * queue of a stage is full the thread handing over the submission waits. This limits the number of submissions
+ * held in memory.
+ * <p>
+ * Optionally, the submit stage of many submissions can be combined into one submission request. Submissions are
+ * held back until the maximum number of submissions or xml bytes is reached, or until there are no more
+ * submissions in the earlier stages. If the combined submission has certainly not been made, for example because the
+ * receipt reports errors, then the submissions are submitted one by one to report the errors for the right
+ * submissions. Any other error fails all the combined submissions because they may already have been made.
+ */
+public class WebinCliPipeline implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(WebinCliPipeline.class);
+
+    public enum Stage {
+        /** Reads and validates the manifest and the submitted files. CPU bound. */
+        VALIDATE,
+        /** Calculates the file checksums and writes the submission xmls. I/O bound. */
+        PREPARE,
+        /** Uploads the submitted files. Network bound. */
+        UPLOAD,
+        /** Submits the submission xmls. Network bound. */
+        SUBMIT
+    }
+
+    private final Map<Stage, ThreadPoolExecutor> executors = new EnumMap<>(Stage.class);
+    private final int maxCombinedSubmissions;
+    private final long maxCombinedSubmissionSize;
+
+    /** Submissions that have not yet reached the submit stage. Guarded by combinedSubmissions. */
+    private int earlierStageJobs;
+    private final List<Job> combinedSubmissions = new ArrayList<>();
+    private long combinedSubmissionSize;
+
+    private static class Job {
+        private final Supplier<WebinCli> supplier;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private WebinCli webinCli;
+        private List<Stage> stages;
+        private int stageIndex;
+        private boolean earlierStage = true;
+
+        private Job(Supplier<WebinCli> supplier) {
+            this.supplier = supplier;
+        }
+    }
+
+    /**
+     * @param threads the number of threads for each stage
+     * @param queueSize the maximum number of submissions waiting for each stage
+     */
+    public WebinCliPipeline(Map<Stage, Integer> threads, int queueSize) {
+        this(threads, queueSize, 1, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param threads the number of threads for each stage
+     * @param queueSize the maximum number of submissions waiting for each stage
+     * @param maxCombinedSubmissions the maximum number of submissions combined into one submission request
+     * @param maxCombinedSubmissionSize the maximum total size of the submission xmls combined into one submission
+     * request in UTF-8 bytes
+     */
+    public WebinCliPipeline(
+        Map<Stage, Integer> threads, int queueSize, int maxCombinedSubmissions, long maxCombinedSubmissionSize) {
+        this.maxCombinedSubmissions = maxCombinedSubmissions;
+        this.maxCombinedSubmissionSize = maxCombinedSubmissionSize;
+        for (Stage stage : Stage.values()) {
+            int stageThreads = Math.max(1, threads.getOrDefault(stage, 1));
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                stageThreads, stageThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, queueSize)),
+                WebinCliBatch.createThreadFactory("webin-cli-" + stage.name().toLowerCase()),
+                WebinCliPipeline::waitForQueue);
+            executors.put(stage, executor);
+        }
+    }
+
+    /**
+     * Schedules the submission for execution. The submission is created by the first stage. Blocks if the queue of
+     * the first stage is full.
+     *
+     * @return a future completed after the last stage of the submission has been executed
+     */
+    public CompletableFuture<Void> execute(Supplier<WebinCli> supplier) {
+        Job job = new Job(supplier);
+        synchronized (combinedSubmissions) {
+            ++earlierStageJobs;
+        }
+        schedule(job, Stage.VALIDATE);
+        return job.future;
+    }
+
+    private void schedule(Job job, Stage stage) {
+        try {
+            executors.get(stage).execute(() -> execute(job, stage));
+        } catch (RejectedExecutionException ex) {
+            complete(job, WebinCliException.systemError(ex));
+        }
+    }
+
+    private void execute(Job job, Stage stage) {
+        try {
+            if (job.webinCli == null) {
+                job.webinCli = job.supplier.get();
+                job.webinCli.setUploadExecutor(executors.get(Stage.UPLOAD));
+                job.stages = job.webinCli.getStages();
+            }
+            job.webinCli.executeStage(stage);
+        } catch (Throwable ex) {
+            complete(job, ex);
+            return;
+        }
+
+        next(job);
+    }
+
+    private void next(Job job) {
+        if (++job.stageIndex >= job.stages.size()) {
+            complete(job, null);
+            return;
+        }
+
+        Stage stage = job.stages.get(job.stageIndex);
+        if (stage == Stage.SUBMIT && maxCombinedSubmissions > 1) {
+            combineSubmission(job);
+        } else {
+            schedule(job, stage);
+        }
+    }
+
+    private void combineSubmission(Job job) {
+        long size;
+        try {
+            size = job.webinCli.getSubmissionXmlSize();
+        } catch (Throwable ex) {
+            complete(job, ex);
+            return;
+        }
+
+        List<List<Job>> groups = new ArrayList<>();
+        synchronized (combinedSubmissions) {
+            leaveEarlierStages(job);
+            if (!combinedSubmissions.isEmpty() && combinedSubmissionSize + size > maxCombinedSubmissionSize) {
+                groups.add(takeCombinedSubmissions());
+            }
+            combinedSubmissions.add(job);
+            combinedSubmissionSize += size;
+            if (combinedSubmissions.size() >= maxCombinedSubmissions
+                || combinedSubmissionSize >= maxCombinedSubmissionSize
+                || earlierStageJobs == 0) {
+                groups.add(takeCombinedSubmissions());
+            }
+        }
+        groups.forEach(this::scheduleCombinedSubmission);
+    }
+
+    private void leaveEarlierStages(Job job) {
+        if (job.earlierStage) {
+            job.earlierStage = false;
+            --earlierStageJobs;
+        }
+    }
+
+    private List<Job> takeCombinedSubmissions() {
+        List<Job> group = new ArrayList<>(combinedSubmissions);
+        combinedSubmissions.clear();
+        combinedSubmissionSize = 0;
+        return group;
+    }
+
+    private void scheduleCombinedSubmission(List<Job> group) {
+        if (group.size() == 1) {
+            schedule(group.get(0), Stage.SUBMIT);
+            return;
+        }
+        try {
+            executors.get(Stage.SUBMIT).execute(() -> executeCombinedSubmission(group));
+        } catch (RejectedExecutionException ex) {
+            group.forEach(job -> complete(job, WebinCliException.systemError(ex)));
+        }
+    }
+
+    private void executeCombinedSubmission(List<Job> group) {
+        try {
+            WebinCli.executeCombinedSubmit(group.stream().map(job -> job.webinCli).collect(Collectors.toList()));
+        } catch (SubmitService.NotSubmittedException ex) {
+            log.warn("Combined submission of {} manifest files failed. Submitting them separately: {}",
+                group.size(), ex.getMessage());
+            group.forEach(job -> execute(job, Stage.SUBMIT));
+            return;
+        } catch (Throwable ex) {
+            // Submitting the manifest files separately could submit them twice.
+            log.error("Combined submission of {} manifest files may or may not have been made: {}",
+                group.size(), ex.getMessage());
+            group.forEach(job -> complete(job, ex));
+            return;
+        }
+        group.forEach(this::next);
+    }
+
+    private void complete(Job job, Throwable ex) {
+        List<Job> group = null;
+        synchronized (combinedSubmissions) {
+            if (job.earlierStage) {
+                leaveEarlierStages(job);
+                if (earlierStageJobs == 0 && !combinedSubmissions.isEmpty()) {
+                    group = takeCombinedSubmissions();
+                }
+            }
+        }
+
+        try {
+            if (job.webinCli != null) {
+                job.webinCli.close();
+            }
+        } finally {
+            if (ex != null) {
+                job.future.completeExceptionally(ex);
+            } else {
+                job.future.complete(null);
+            }
+        }
+
+        if (group != null) {
+            scheduleCombinedSubmission(group);
+        }
+    }
+
+    /**
+     * Blocks the thread handing over the submission until there is space in the queue of the next stage.
+     */
+    private static void waitForQueue(Runnable runnable, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Pipeline has been closed.");
+        }
+        try {
+            executor.getQueue().put(runnable);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        executors.values().forEach(ThreadPoolExecutor::shutdownNow);
+    }
+}
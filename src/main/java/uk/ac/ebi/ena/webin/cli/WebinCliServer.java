@@ -0,0 +1,574 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import picocli.CommandLine;
+
+import uk.ac.ebi.ena.webin.cli.service.utils.ReferenceCache;
+import uk.ac.ebi.ena.webin.cli.upload.BandwidthLimiter;
+import uk.ac.ebi.ena.webin.cli.utils.FileUtils;
+
+/**
+ * Resident server keeping a warm JVM for executing submission jobs. Jobs are POSTed as JSON objects to the
+ * /jobs endpoint on the loopback interface.
+ * <p>
+ * Binding to the loopback interface does not protect the server from the other users of the same host. A random
+ * access token is therefore written into a token file readable only by the user running the server when the server
+ * is started, and every request must have an "Authorization: Bearer &lt;token&gt;" header. A job has the same fields as {@link WebinCliCommand} and is executed
+ * exactly like a command line invocation: fields that are not given have the command line default values. Options
+ * that configure the whole process, such as the HTTP connection pool or the checksum threads, are given when the
+ * server is started and are rejected in jobs. Jobs can't share an output directory with a running job.
+ * <p>
+ * The response is streamed as newline delimited JSON objects. While the job is running, each new line of its report
+ * file is sent as a "report" field. The last object contains the exit code and the error message of the job.
+ * <p>
+ * The upload bandwidth limits shared by all jobs can be read and changed using the /bandwidth endpoint. A POST
+ * request changes the rates given as "rate", "connectionRate" and "schedule" fields using the same format as the
+ * corresponding command line options.
+ * <p>
+ * The /status endpoint also reports how many study, sample, run and analysis references were retrieved from the
+ * Webin REST services, found in the reference cache or shared with an identical concurrent retrieval.
+ */
+public class WebinCliServer {
+    private static final Logger log = LoggerFactory.getLogger(WebinCliServer.class);
+
+    private static final String JOBS_PATH = "/jobs";
+    private static final String STATUS_PATH = "/status";
+    private static final String BANDWIDTH_PATH = "/bandwidth";
+    private static final int DEFAULT_MAX_THREADS = 4;
+    private static final long REPORT_POLL_MILLIS = 200;
+    private static final int TOKEN_BYTES = 32;
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    /**
+     * Options that configure the whole server process and can't be changed by a job. The keys are the job fields.
+     */
+    private static final Map<String, String> PROCESS_OPTIONS = new LinkedHashMap<>();
+
+    static {
+        PROCESS_OPTIONS.put("forceChecksum", WebinCliCommand.Options.forceChecksum);
+        PROCESS_OPTIONS.put("sidecarChecksums", WebinCliCommand.Options.sidecarChecksums);
+        PROCESS_OPTIONS.put("md5Files", WebinCliCommand.Options.md5File);
+        PROCESS_OPTIONS.put("referenceCacheTtl", WebinCliCommand.Options.referenceCacheTtl);
+        PROCESS_OPTIONS.put("clearReferenceCache", WebinCliCommand.Options.clearReferenceCache);
+        PROCESS_OPTIONS.put("httpConnectionsPerRoute", WebinCliCommand.Options.httpConnectionsPerRoute);
+        PROCESS_OPTIONS.put("httpConnectTimeout", WebinCliCommand.Options.httpConnectTimeout);
+        PROCESS_OPTIONS.put("httpReadTimeout", WebinCliCommand.Options.httpReadTimeout);
+        PROCESS_OPTIONS.put("checksumThreads", WebinCliCommand.Options.checksumThreads);
+        PROCESS_OPTIONS.put("uploadRate", WebinCliCommand.Options.uploadRate);
+        PROCESS_OPTIONS.put("connectionUploadRate", WebinCliCommand.Options.connectionUploadRate);
+        PROCESS_OPTIONS.put("uploadRateSchedule", WebinCliCommand.Options.uploadRateSchedule);
+        PROCESS_OPTIONS.put("server", WebinCliCommand.Options.server);
+        PROCESS_OPTIONS.put("serverThreads", WebinCliCommand.Options.serverThreads);
+        PROCESS_OPTIONS.put("serverTokenFile", WebinCliCommand.Options.serverTokenFile);
+    }
+
+    private final int port;
+    private final int threads;
+    private final File tokenFile;
+    private final String token = createToken();
+    private final ObjectMapper objectMapper = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final AtomicLong runningJobs = new AtomicLong();
+    private final AtomicLong completedJobs = new AtomicLong();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final Set<File> runningOutputDirs = ConcurrentHashMap.newKeySet();
+    private final ExecutorService jobExecutorService =
+        Executors.newCachedThreadPool(WebinCliBatch.createThreadFactory("webin-cli-server-job"));
+
+    private HttpServer httpServer;
+
+    public static class JobResult {
+        public int exitCode;
+        public String message;
+        public String reportFile;
+        public long elapsedMillis;
+    }
+
+    public static class BandwidthSettings {
+        public String rate;
+        public String connectionRate;
+        public String schedule;
+    }
+
+    public WebinCliServer(WebinCliCommand cmd) {
+        this.port = cmd.server;
+        this.threads = cmd.serverThreads > 0
+            ? cmd.serverThreads
+            : Math.max(1, Math.min(DEFAULT_MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+        this.tokenFile = cmd.serverTokenFile != null ? cmd.serverTokenFile : getDefaultTokenFile();
+    }
+
+    /**
+     * Returns the default access token file in the user home directory.
+     */
+    public static File getDefaultTokenFile() {
+        return new File(new File(System.getProperty("user.home"), ".webin-cli"), "server-token");
+    }
+
+    /**
+     * Starts the server and blocks until it is stopped.
+     */
+    public int execute() {
+        start();
+        try {
+            stopped.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return WebinCli.SUCCESS;
+    }
+
+    public void start() {
+        writeTokenFile();
+        warmUp();
+
+        ExecutorService executorService = Executors.newFixedThreadPool(
+            threads, WebinCliBatch.createThreadFactory("webin-cli-server"));
+        try {
+            httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException ex) {
+            throw WebinCliException.systemError(ex, "Unable to start server on port: " + port);
+        }
+        httpServer.createContext(JOBS_PATH, authenticated(this::handleJob));
+        httpServer.createContext(STATUS_PATH, authenticated(this::handleStatus));
+        httpServer.createContext(BANDWIDTH_PATH, authenticated(this::handleBandwidth));
+        httpServer.setExecutor(executorService);
+        httpServer.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            httpServer.stop(0);
+            executorService.shutdownNow();
+            jobExecutorService.shutdownNow();
+        }));
+
+        log.info("Webin-CLI server is listening on {} using {} threads. The access token is in: {}",
+            httpServer.getAddress(), threads, tokenFile.getPath());
+    }
+
+    String getToken() {
+        return token;
+    }
+
+    private static String createToken() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(bytes);
+        return FileUtils.toHex(bytes);
+    }
+
+    /**
+     * Writes the access token into the token file. The file is created readable and writable only by its owner
+     * before the token is written into it.
+     */
+    private void writeTokenFile() {
+        Path path = tokenFile.getAbsoluteFile().toPath();
+        try {
+            Files.createDirectories(path.getParent());
+            Files.deleteIfExists(path);
+            if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+                Files.createFile(path, PosixFilePermissions.asFileAttribute(
+                    EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE)));
+            } else {
+                File file = Files.createFile(path).toFile();
+                if (!file.setReadable(false, false) || !file.setReadable(true, true)
+                    || !file.setWritable(false, false) || !file.setWritable(true, true)) {
+                    throw new IOException("Unable to restrict the access to the file.");
+                }
+            }
+            Files.write(path, token.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            throw WebinCliException.systemError(ex, "Unable to write the server token file: " + tokenFile.getPath());
+        }
+    }
+
+    /**
+     * Rejects the requests without the access token.
+     */
+    private HttpHandler authenticated(HttpHandler handler) {
+        return exchange -> {
+            if (!isAuthenticated(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+                sendJson(exchange, 401, error("The request must have the access token written into the token file."));
+                return;
+            }
+            handler.handle(exchange);
+        };
+    }
+
+    boolean isAuthenticated(String authorization) {
+        if (authorization == null || !authorization.startsWith(BEARER_PREFIX)) {
+            return false;
+        }
+        return MessageDigest.isEqual(
+            authorization.substring(BEARER_PREFIX.length()).trim().getBytes(StandardCharsets.UTF_8),
+            token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public InetSocketAddress getAddress() {
+        return httpServer.getAddress();
+    }
+
+    public void stop() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+        }
+        jobExecutorService.shutdown();
+        stopped.countDown();
+    }
+
+    /**
+     * Loads the manifest readers, validators and xml writers of all contexts so that the first jobs do not
+     * pay the class loading cost.
+     */
+    private void warmUp() {
+        long start = System.currentTimeMillis();
+        for (WebinCliContext context : WebinCliContext.values()) {
+            try {
+                context.createExecutor(new WebinCliParameters());
+            } catch (RuntimeException ex) {
+                log.warn("Unable to initialise {} context: {}", context, ex.getMessage());
+            }
+        }
+        log.info("Initialised all contexts in {} ms.", System.currentTimeMillis() - start);
+    }
+
+    private void handleStatus(HttpExchange exchange) throws IOException {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("version", WebinCli.getVersionForUsage());
+        status.put("threads", threads);
+        status.put("runningJobs", runningJobs.get());
+        status.put("completedJobs", completedJobs.get());
+        ReferenceCache referenceCache = ReferenceCache.getInstance();
+        Map<String, Object> references = new LinkedHashMap<>();
+        references.put("remoteCalls", referenceCache.getRemoteCalls());
+        references.put("cachedCalls", referenceCache.getCachedCalls());
+        references.put("coalescedCalls", referenceCache.getCoalescedCalls());
+        status.put("references", references);
+        sendJson(exchange, 200, status);
+    }
+
+    private void handleBandwidth(HttpExchange exchange) throws IOException {
+        if ("POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+            BandwidthSettings settings;
+            try {
+                settings = objectMapper.readValue(exchange.getRequestBody(), BandwidthSettings.class);
+                setBandwidth(settings);
+            } catch (JsonProcessingException ex) {
+                sendJson(exchange, 400, error("Invalid bandwidth settings: " + ex.getOriginalMessage()));
+                return;
+            } catch (WebinCliException ex) {
+                sendJson(exchange, 400, error(ex.getMessage()));
+                return;
+            }
+            log.info("Changed the upload bandwidth limits: {}", BandwidthLimiter.getInstance());
+        }
+        sendJson(exchange, 200, getBandwidth());
+    }
+
+    /**
+     * Changes the upload bandwidth limits given in the settings. The settings are validated before any limit
+     * is changed.
+     */
+    static void setBandwidth(BandwidthSettings settings) {
+        Long rate = settings.rate == null ? null : BandwidthLimiter.parseRate(settings.rate);
+        Long connectionRate = settings.connectionRate == null ? null : BandwidthLimiter.parseRate(settings.connectionRate);
+        List<BandwidthLimiter.ScheduleEntry> schedule =
+            settings.schedule == null ? null : BandwidthLimiter.parseSchedule(settings.schedule);
+
+        BandwidthLimiter limiter = BandwidthLimiter.getInstance();
+        if (rate != null) {
+            limiter.setRate(rate);
+        }
+        if (connectionRate != null) {
+            limiter.setConnectionRate(connectionRate);
+        }
+        if (schedule != null) {
+            limiter.setSchedule(schedule);
+        }
+    }
+
+    static Map<String, Object> getBandwidth() {
+        BandwidthLimiter limiter = BandwidthLimiter.getInstance();
+        Map<String, Object> bandwidth = new LinkedHashMap<>();
+        bandwidth.put("rate", limiter.getDefaultRate());
+        bandwidth.put("currentRate", limiter.getRate());
+        bandwidth.put("connectionRate", limiter.getConnectionRate());
+        bandwidth.put("schedule", limiter.getSchedule().stream()
+            .map(BandwidthLimiter.ScheduleEntry::toString)
+            .collect(Collectors.joining(",")));
+        return bandwidth;
+    }
+
+    private void handleJob(HttpExchange exchange) throws IOException {
+        if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+            sendJson(exchange, 405, error("Jobs must be submitted using POST."));
+            return;
+        }
+
+        WebinCliCommand cmd;
+        try {
+            cmd = createJob(objectMapper.readTree(exchange.getRequestBody()));
+        } catch (JsonProcessingException ex) {
+            sendJson(exchange, 400, error("Invalid job: " + ex.getOriginalMessage()));
+            return;
+        } catch (WebinCliException ex) {
+            sendJson(exchange, 400, error("Invalid job: " + ex.getMessage()));
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream os = exchange.getResponseBody()) {
+            JobResult result = execute(cmd, line -> sendJsonLine(os, Collections.singletonMap("report", line)));
+            sendJsonLine(os, result);
+        }
+    }
+
+    /**
+     * Creates the job command from the JSON object. The command line default values are used for the fields that
+     * are not given.
+     */
+    WebinCliCommand createJob(JsonNode json) throws JsonProcessingException {
+        if (json == null || !json.isObject()) {
+            throw WebinCliException.userError("The job must be a JSON object.");
+        }
+        for (Iterator<String> it = json.fieldNames(); it.hasNext(); ) {
+            String option = PROCESS_OPTIONS.get(it.next());
+            if (option != null) {
+                throw WebinCliException.userError(
+                    "The " + option + " option applies to all jobs and must be given when the server is started.");
+            }
+        }
+
+        WebinCliCommand cmd = new WebinCliCommand();
+        new CommandLine(cmd).parseArgs();
+        try {
+            return objectMapper.readerForUpdating(cmd).readValue(json);
+        } catch (JsonProcessingException ex) {
+            throw ex;
+        } catch (IOException ex) {
+            throw WebinCliException.userError(ex.getMessage());
+        }
+    }
+
+    JobResult execute(WebinCliCommand cmd) {
+        return execute(cmd, line -> {});
+    }
+
+    /**
+     * Executes the job and passes the new lines of its report file to the listener while the job is running.
+     */
+    JobResult execute(WebinCliCommand cmd, ReportListener reportListener) {
+        long start = System.currentTimeMillis();
+        runningJobs.incrementAndGet();
+
+        JobResult result = new JobResult();
+        File outputDir = null;
+        try {
+            cmd.server = null;
+            WebinCli.initCmd(cmd);
+
+            if (!runningOutputDirs.add(cmd.outputDir)) {
+                throw WebinCliException.userError(
+                    "The output directory is used by another running job: " + cmd.outputDir.getPath());
+            }
+            outputDir = cmd.outputDir;
+
+            File reportFile = new File(outputDir,
+                cmd.manifests != null ? WebinCliBatch.SUMMARY_FILE_NAME : WebinCli.LOG_FILE_NAME);
+            result.reportFile = reportFile.getPath();
+            // The report of an earlier job must not be streamed.
+            reportFile.delete();
+
+            Future<Integer> job = jobExecutorService.submit(() -> {
+                if (cmd.manifests != null) {
+                    return new WebinCliBatch(cmd).execute();
+                }
+                new WebinCli(cmd).execute();
+                return WebinCli.SUCCESS;
+            });
+
+            ReportTail reportTail = new ReportTail(reportFile, reportListener);
+            while (true) {
+                try {
+                    result.exitCode = job.get(REPORT_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException ex) {
+                    reportTail.read(false);
+                } catch (InterruptedException ex) {
+                    job.cancel(true);
+                    Thread.currentThread().interrupt();
+                    throw WebinCliException.systemError("The job was interrupted.");
+                } finally {
+                    if (job.isDone()) {
+                        reportTail.read(true);
+                    }
+                }
+            }
+        } catch (ExecutionException ex) {
+            setError(result, ex.getCause());
+        } catch (Throwable ex) {
+            setError(result, ex);
+        } finally {
+            if (outputDir != null) {
+                runningOutputDirs.remove(outputDir);
+            }
+            runningJobs.decrementAndGet();
+            completedJobs.incrementAndGet();
+        }
+
+        result.elapsedMillis = System.currentTimeMillis() - start;
+        return result;
+    }
+
+    private static void setError(JobResult result, Throwable ex) {
+        if (ex instanceof WebinCliException) {
+            result.exitCode = WebinCli.getExitCode((WebinCliException) ex);
+        } else {
+            log.error(ex.getMessage(), ex);
+            result.exitCode = WebinCli.SYSTEM_ERROR;
+        }
+        result.message = ex.getMessage();
+    }
+
+    interface ReportListener {
+        void onLine(String line) throws IOException;
+    }
+
+    /**
+     * Reads the lines appended to the report file since the previous read.
+     */
+    private static class ReportTail {
+        private final File file;
+        private final ReportListener listener;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private final byte[] buffer = new byte[8192];
+        private long position;
+        private boolean failed;
+
+        ReportTail(File file, ReportListener listener) {
+            this.file = file;
+            this.listener = listener;
+        }
+
+        /**
+         * @param last if true then the last line is passed to the listener even if it is not terminated
+         */
+        void read(boolean last) {
+            if (failed) {
+                return;
+            }
+            try {
+                if (file.isFile()) {
+                    if (file.length() < position) {
+                        // The report file was truncated when the job started writing it.
+                        position = 0;
+                        line.reset();
+                    }
+                    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                        raf.seek(position);
+                        int n;
+                        while ((n = raf.read(buffer)) > 0) {
+                            position += n;
+                            for (int i = 0; i < n; i++) {
+                                if (buffer[i] == '\n') {
+                                    sendLine();
+                                } else if (buffer[i] != '\r') {
+                                    line.write(buffer[i]);
+                                }
+                            }
+                        }
+                    }
+                }
+                if (last && line.size() > 0) {
+                    sendLine();
+                }
+            } catch (IOException ex) {
+                // The client has gone away. The job continues without streaming its report.
+                log.debug("Unable to stream the report file {}: {}", file, ex.toString());
+                failed = true;
+            }
+        }
+
+        private void sendLine() throws IOException {
+            String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+            line.reset();
+            listener.onLine(text);
+        }
+    }
+
+    private static Map<String, Object> error(String message) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("exitCode", WebinCli.USER_ERROR);
+        error.put("message", message);
+        return error;
+    }
+
+    private void sendJsonLine(OutputStream os, Object body) throws IOException {
+        os.write(objectMapper.writeValueAsBytes(body));
+        os.write('\n');
+        os.flush();
+    }
+
+    private void sendJson(HttpExchange exchange, int statusCode, Object body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
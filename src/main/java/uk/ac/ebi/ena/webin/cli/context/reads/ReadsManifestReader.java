@@ -11,6 +11,9 @@
 package uk.ac.ebi.ena.webin.cli.context.reads;
 
 import org.apache.commons.lang.StringUtils;
+import uk.ac.ebi.ena.webin.cli.WebinCli;
+import uk.ac.ebi.ena.webin.cli.WebinCliConfig;
+import uk.ac.ebi.ena.webin.cli.WebinCliContext;
 import uk.ac.ebi.ena.webin.cli.WebinCliMessage;
 import uk.ac.ebi.ena.webin.cli.WebinCliParameters;
 import uk.ac.ebi.ena.webin.cli.manifest.ManifestCVList;
@@ -24,12 +27,19 @@ import uk.ac.ebi.ena.webin.cli.manifest.processor.ASCIIFileNameProcessor;
 import uk.ac.ebi.ena.webin.cli.manifest.processor.CVFieldProcessor;
 import uk.ac.ebi.ena.webin.cli.manifest.processor.FileSuffixProcessor;
 import uk.ac.ebi.ena.webin.cli.manifest.processor.MetadataProcessorFactory;
+import uk.ac.ebi.ena.webin.cli.utils.ParallelGzipCompressor;
 import uk.ac.ebi.ena.webin.cli.validator.file.SubmissionFile;
 import uk.ac.ebi.ena.webin.cli.validator.file.SubmissionFiles;
 import uk.ac.ebi.ena.webin.cli.validator.manifest.ReadsManifest;
 import uk.ac.ebi.ena.webin.cli.validator.manifest.ReadsManifest.QualityScore;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Stream;
 
 public class
@@ -119,7 +129,7 @@ ReadsManifestReader extends ManifestReader<ReadsManifest> {
                        .meta().optional().name(Field.LIBRARY_NAME).desc(Description.LIBRARY_NAME).and()
                        .meta().optional().name(Field.INSERT_SIZE).desc(Description.INSERT_SIZE).and()
 
-                       .file().optional(10).name(Field.FASTQ).desc(Description.FASTQ).processor(getFastqProcessors())
+                       .file().optional(10).name(Field.FASTQ).desc(Description.FASTQ).processor(getFastqProcessors(parameters))
                          .attributes(new ManifestFieldDefinition.Builder().attribute().optional().name(Field.READ_TYPE)
                            .desc(Description.READ_TYPE).processor(new CVFieldProcessor(CV_READ_TYPE)).build())
                        .and()
@@ -157,10 +167,19 @@ ReadsManifestReader extends ManifestReader<ReadsManifest> {
         }
     }
 
-    private static ManifestFieldProcessor[] getFastqProcessors() {
+    private static ManifestFieldProcessor[] getFastqProcessors(WebinCliParameters parameters) {
+        List<String> suffixes = new ArrayList<>(ManifestFileSuffix.GZIP_OR_BZIP_FILE_SUFFIX);
+        if (isCompressFastq(parameters)) {
+            // Uncompressed fastq files are compressed when the manifest is processed.
+            suffixes.addAll(ManifestFileSuffix.FASTQ_FILE_SUFFIX);
+        }
         return new ManifestFieldProcessor[]{
                 new ASCIIFileNameProcessor(),
-                new FileSuffixProcessor(ManifestFileSuffix.GZIP_OR_BZIP_FILE_SUFFIX)};
+                new FileSuffixProcessor(suffixes)};
+    }
+
+    private static boolean isCompressFastq(WebinCliParameters parameters) {
+        return parameters != null && parameters.isCompressFastq();
     }
 
     private static ManifestFieldProcessor[] getBamProcessors() {
@@ -231,15 +250,73 @@ ReadsManifestReader extends ManifestReader<ReadsManifest> {
         getFiles( getInputDir(), getManifestReaderResult(), ReadsManifestReader.Field.BAM ).forEach(file -> submissionFiles.add( new SubmissionFile( ReadsManifest.FileType.BAM, file ) ) );
         getFiles( getInputDir(), getManifestReaderResult(), ReadsManifestReader.Field.CRAM ).forEach(file -> submissionFiles.add( new SubmissionFile( ReadsManifest.FileType.CRAM, file ) ) );
 
+        Map<File, File> compressedFiles = new HashMap<>();
         getManifestReaderResult().getFields().stream()
             .filter(field -> field.getDefinition().getType() == ManifestFieldType.FILE && field.getName().equals(ReadsManifestReader.Field.FASTQ))
             .forEach(field -> {
                 File file = getFile(getInputDir(), field).toPath().normalize().toFile();
+                if (isCompressFastq(getWebinCliParameters()) && isUncompressedFastq(file)) {
+                    file = compressFastq(file, compressedFiles);
+                }
 
                 submissionFiles.add( new SubmissionFile( ReadsManifest.FileType.FASTQ, file, getAttributes(field) ) );
             });
     }
 
+    private static boolean
+    isUncompressedFastq(File file)
+    {
+        return ManifestFileSuffix.FASTQ_FILE_SUFFIX.stream().anyMatch(suffix -> file.getName().endsWith(suffix));
+    }
+
+    /**
+     * Compresses the fastq file into the compress directory of the submission and returns the compressed file.
+     * A compressed file written by an earlier run is used if the fastq file has not changed since.
+     *
+     * @param compressedFiles the fastq files keyed by their compressed files
+     */
+    private File
+    compressFastq(File file, Map<File, File> compressedFiles)
+    {
+        if (StringUtils.isBlank(manifest.getName()) || !file.isFile()) {
+            return file;
+        }
+
+        File compressDir = WebinCli.createOutputDir(getWebinCliParameters().getOutputDir(),
+                WebinCliContext.reads.name(), manifest.getName(), WebinCliConfig.COMPRESS_DIR);
+        File compressedFile = new File(compressDir, getCompressedFileName(file));
+        File otherFile = compressedFiles.putIfAbsent(compressedFile, file);
+        if (otherFile != null && !otherFile.equals(file)) {
+            error(WebinCliMessage.READS_MANIFEST_READER_COMPRESS_FASTQ_ERROR, file.getPath(),
+                    "the compressed file name " + compressedFile.getName() + " is used by " + otherFile.getPath());
+            return file;
+        }
+
+        try {
+            new ParallelGzipCompressor(0).compressIfChanged(file, compressedFile);
+        } catch (IOException ex) {
+            error(WebinCliMessage.READS_MANIFEST_READER_COMPRESS_FASTQ_ERROR, file.getPath(), ex.getMessage());
+            return file;
+        }
+        return compressedFile;
+    }
+
+    /**
+     * Returns the name of the compressed fastq file. The compressed files are uploaded using their file names only
+     * and the name of a fastq file in a subdirectory of the input directory therefore includes the subdirectory to
+     * keep the compressed files of fastq files with the same name apart.
+     */
+    private String
+    getCompressedFileName(File file)
+    {
+        Path inputDir = getInputDir().toAbsolutePath().normalize();
+        Path path = file.getAbsoluteFile().toPath().normalize();
+        String name = path.startsWith(inputDir)
+                ? inputDir.relativize(path).toString().replace(File.separatorChar, '_')
+                : file.getName();
+        return name + ManifestFileSuffix.GZIP_FILE_SUFFIX;
+    }
+
     private void
     processInstrumentAndPlatform()
     {
@@ -19,6 +19,14 @@ ManifestFieldProcessor {
      */
     void process(ValidationResult result, ManifestFieldValue fieldValue);
 
+    /**
+     * Returns true if the field processor retrieves the field from a remote service. Fields
+     * with remote field processors are validated concurrently with other fields.
+     */
+    default boolean isRemote() {
+        return false;
+    }
+
     /**
      * Interface to notify the user of the field processor.
      */
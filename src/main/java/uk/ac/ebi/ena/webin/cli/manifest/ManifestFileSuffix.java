@@ -26,6 +26,10 @@ public interface ManifestFileSuffix {
             ".agp" + GZIP_FILE_SUFFIX,
             ".agp" + BZIP2_FILE_SUFFIX);
 
+    List<String> FASTQ_FILE_SUFFIX = Arrays.asList(
+            ".fastq",
+            ".fq");
+
     List<String> BAM_FILE_SUFFIX = Arrays.asList(
             ".bam");
 
@@ -14,6 +14,8 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.apache.commons.lang.StringUtils;
+import org.slf4j.MDC;
+import uk.ac.ebi.ena.webin.cli.WebinCliException;
 import uk.ac.ebi.ena.webin.cli.WebinCliMessage;
 import uk.ac.ebi.ena.webin.cli.WebinCliParameters;
 import uk.ac.ebi.ena.webin.cli.validator.manifest.Manifest;
@@ -38,6 +40,14 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.zip.GZIPInputStream;
@@ -65,6 +75,14 @@ ManifestReader<M extends Manifest> {
         String SUBMISSION_TOOL_VERSION = "Version number of the third-party or developed tool used to submit to ENA";
     }
 
+    private static final AtomicInteger REMOTE_VALIDATION_THREAD_NUMBER = new AtomicInteger();
+
+    private static final ExecutorService REMOTE_VALIDATION_EXECUTOR = Executors.newCachedThreadPool( runnable -> {
+        Thread thread = new Thread( runnable, "webin-cli-remote-validation-" + REMOTE_VALIDATION_THREAD_NUMBER.incrementAndGet() );
+        thread.setDaemon( true );
+        return thread;
+    } );
+
     private final List<ManifestFieldDefinition> infoFields = new ManifestFieldDefinition.Builder()
         .file().optional().name(Fields.INFO).desc(Descriptions.INFO).build();
 
@@ -455,28 +473,28 @@ ManifestReader<M extends Manifest> {
 
        // Validate and fix fields.
 
-        for( ManifestFieldValue fieldValue : manifestReaderResult.getFields() )
+        Map<ManifestFieldValue, Future<List<DeferredValidation>>> remoteValidations = validateRemoteFields();
+        try
         {
-            ManifestFieldDefinition field = fieldValue.getDefinition();
-
-            for( ManifestFieldProcessor processor : field.getFieldProcessors() )
+            for( ManifestFieldValue fieldValue : manifestReaderResult.getFields() )
             {
-                ValidationResult result = getValidationResult().create(fieldValue.getOrigin());
-                processor.process( result, fieldValue );
-                fieldValue.setValidFieldValueOrFileSuffix( result.isValid() );
-            }
-
-            //iterate over field attributes and run their processors.
-            for (ManifestFieldValue att : fieldValue.getAttributes()) {
-                ManifestFieldDefinition attDef = att.getDefinition();
-
-                for( ManifestFieldProcessor attProcessor : attDef.getFieldProcessors() )
+                Future<List<DeferredValidation>> remoteValidation = remoteValidations.get( fieldValue );
+                if( remoteValidation == null )
+                {
+                    validateField( fieldValue, origin -> getValidationResult().create( origin ) );
+                } else
                 {
-                    ValidationResult result = getValidationResult().create(att.getOrigin());
-                    attProcessor.process( result, att );
-                    att.setValidFieldValueOrFileSuffix( result.isValid() );
+                    // Add the validation messages in the manifest field order.
+                    for( DeferredValidation validation : getRemoteValidation( remoteValidation ) )
+                    {
+                        ValidationResult result = getValidationResult().create( validation.origin );
+                        validation.messages.forEach( result::add );
+                    }
                 }
             }
+        } finally
+        {
+            remoteValidations.values().forEach( future -> future.cancel( true ) );
         }
 
         // Validate file count.
@@ -484,6 +502,131 @@ ManifestReader<M extends Manifest> {
         validateFileCount();
     }
 
+    /**
+     * Validates the fields with remote field processors concurrently if there is more than one such field.
+     * Fields with the same name are validated sequentially in the manifest field order.
+     */
+    private Map<ManifestFieldValue, Future<List<DeferredValidation>>>
+    validateRemoteFields()
+    {
+        Map<ManifestFieldValue, Future<List<DeferredValidation>>> validations = new HashMap<>();
+
+        List<ManifestFieldValue> remoteFields = manifestReaderResult.getFields()
+                                                                    .stream()
+                                                                    .filter( ManifestReader::isRemote )
+                                                                    .collect( Collectors.toList() );
+        if( remoteFields.stream().map( ManifestFieldValue::getName ).distinct().count() < 2 )
+        {
+            return validations;
+        }
+
+        Map<String, String> contextMap = MDC.getCopyOfContextMap();
+        Map<String, CompletableFuture<List<DeferredValidation>>> previousValidations = new HashMap<>();
+        for( ManifestFieldValue fieldValue : remoteFields )
+        {
+            Supplier<List<DeferredValidation>> validation = () -> validateFieldDeferred( fieldValue, contextMap );
+            CompletableFuture<List<DeferredValidation>> previousValidation = previousValidations.get( fieldValue.getName() );
+            CompletableFuture<List<DeferredValidation>> future = previousValidation == null
+                    ? CompletableFuture.supplyAsync( validation, REMOTE_VALIDATION_EXECUTOR )
+                    : previousValidation.thenApplyAsync( previous -> validation.get(), REMOTE_VALIDATION_EXECUTOR );
+            previousValidations.put( fieldValue.getName(), future );
+            validations.put( fieldValue, future );
+        }
+        return validations;
+    }
+
+    private static List<DeferredValidation>
+    getRemoteValidation( Future<List<DeferredValidation>> future )
+    {
+        try
+        {
+            return future.get();
+        } catch( InterruptedException ex )
+        {
+            Thread.currentThread().interrupt();
+            throw WebinCliException.systemError( ex );
+        } catch( ExecutionException ex )
+        {
+            if( ex.getCause() instanceof RuntimeException )
+            {
+                throw (RuntimeException) ex.getCause();
+            }
+            if( ex.getCause() instanceof Error )
+            {
+                throw (Error) ex.getCause();
+            }
+            throw WebinCliException.systemError( ex );
+        }
+    }
+
+    /**
+     * Validates the field and keeps the validation messages so that they can be added to the manifest
+     * validation result later.
+     */
+    private static List<DeferredValidation>
+    validateFieldDeferred( ManifestFieldValue fieldValue, Map<String, String> contextMap )
+    {
+        if( contextMap != null )
+        {
+            MDC.setContextMap( contextMap );
+        }
+        try
+        {
+            List<DeferredValidation> validations = new ArrayList<>();
+            validateField( fieldValue, origin -> {
+                DeferredValidation validation = new DeferredValidation( origin );
+                validations.add( validation );
+                ValidationResult result = new ValidationResult();
+                result.add( (MessageListener) validation.messages::add );
+                return result;
+            } );
+            return validations;
+        } finally
+        {
+            MDC.clear();
+        }
+    }
+
+    private static void
+    validateField( ManifestFieldValue fieldValue, Function<List<ValidationOrigin>, ValidationResult> createResult )
+    {
+        for( ManifestFieldProcessor processor : fieldValue.getDefinition().getFieldProcessors() )
+        {
+            ValidationResult result = createResult.apply( fieldValue.getOrigin() );
+            processor.process( result, fieldValue );
+            fieldValue.setValidFieldValueOrFileSuffix( result.isValid() );
+        }
+
+        //iterate over field attributes and run their processors.
+        for( ManifestFieldValue att : fieldValue.getAttributes() )
+        {
+            for( ManifestFieldProcessor attProcessor : att.getDefinition().getFieldProcessors() )
+            {
+                ValidationResult result = createResult.apply( att.getOrigin() );
+                attProcessor.process( result, att );
+                att.setValidFieldValueOrFileSuffix( result.isValid() );
+            }
+        }
+    }
+
+    private static boolean
+    isRemote( ManifestFieldValue fieldValue )
+    {
+        return fieldValue.getDefinition().getFieldProcessors().stream().anyMatch( ManifestFieldProcessor::isRemote )
+            || fieldValue.getAttributes().stream().anyMatch( ManifestReader::isRemote );
+    }
+
+    private static class DeferredValidation
+    {
+        private final List<ValidationOrigin> origin;
+        private final List<ValidationMessage> messages = new ArrayList<>();
+
+        private DeferredValidation( List<ValidationOrigin> origin )
+        {
+            this.origin = origin;
+        }
+    }
+
 
     protected abstract void
     processManifest();
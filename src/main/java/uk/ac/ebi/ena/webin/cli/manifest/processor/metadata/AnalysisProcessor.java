@@ -10,19 +10,16 @@
  */
 package uk.ac.ebi.ena.webin.cli.manifest.processor.metadata;
 
-import uk.ac.ebi.ena.webin.cli.WebinCliException;
 import uk.ac.ebi.ena.webin.cli.manifest.ManifestFieldProcessor;
 import uk.ac.ebi.ena.webin.cli.manifest.ManifestFieldValue;
 import uk.ac.ebi.ena.webin.cli.manifest.processor.MetadataProcessorParameters;
 import uk.ac.ebi.ena.webin.cli.service.AnalysisService;
+import uk.ac.ebi.ena.webin.cli.service.utils.ReferenceCache;
 import uk.ac.ebi.ena.webin.cli.validator.message.ValidationMessage;
 import uk.ac.ebi.ena.webin.cli.validator.message.ValidationResult;
 import uk.ac.ebi.ena.webin.cli.validator.reference.Analysis;
 
-import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 import java.util.stream.Collectors;
 
 public class AnalysisProcessor implements ManifestFieldProcessor {
@@ -44,34 +41,31 @@ public class AnalysisProcessor implements ManifestFieldProcessor {
     this.callback = callback;
   }
 
+  @Override
+  public boolean isRemote() {
+    return true;
+  }
+
   @Override
   public void process(ValidationResult result, ManifestFieldValue fieldValue) {
-    String value = fieldValue.getValue();
-    String[] ids = value.split(", *");
-    Set<String> idsSet = new HashSet<>();
-    List<Analysis> analysis_list = new ArrayList<>(ids.length);
+    List<String> ids = BatchReferenceResolver.parseIds(fieldValue.getValue());
 
-    for (String a : ids) {
-      String id = a.trim();
-      if (id.isEmpty()) continue;
-      if (!idsSet.add(id)) continue;
-      try {
-        AnalysisService analysisService =
-            new AnalysisService.Builder()
-                .setCredentials(parameters.getWebinServiceUserName(), parameters.getPassword())
-                .setTest(parameters.isTest())
-                .build();
-        analysis_list.add(analysisService.getAnalysis(id));
+    AnalysisService analysisService =
+        new AnalysisService.Builder()
+            .setCredentials(parameters.getWebinServiceUserName(), parameters.getPassword())
+            .setTest(parameters.isTest())
+            .build();
 
-      } catch (WebinCliException e) {
-        result.add(ValidationMessage.error(e));
-      }
-    }
+    BatchReferenceResolver.Result<Analysis> analyses = BatchReferenceResolver.resolve(ids, id ->
+        ReferenceCache.getInstance().get(ReferenceCache.Type.ANALYSIS,
+            parameters.isTest(), parameters.getWebinServiceUserName(), id, Analysis.class, () -> analysisService.getAnalysis(id)));
+
+    analyses.getErrors().forEach(e -> result.add(ValidationMessage.error(e)));
 
     if (result.isValid()) {
       fieldValue.setValue(
-          analysis_list.stream().map(e -> e.getAnalysisId()).collect(Collectors.joining(", ")));
-      callback.notify(analysis_list);
+          analyses.getReferences().stream().map(e -> e.getAnalysisId()).collect(Collectors.joining(", ")));
+      callback.notify(analyses.getReferences());
     }
   }
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.manifest.processor.metadata;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.slf4j.MDC;
+
+import uk.ac.ebi.ena.webin.cli.WebinCliException;
+
+/**
+ * Resolves the references listed in a comma separated manifest field such as RUN_REF or ANALYSIS_REF.
+ * Duplicate references are resolved once and at most {@link #MAX_PARALLELISM} references are resolved
+ * at the same time by all the resolvers in this process. The resolved references and the errors are
+ * returned in the order the references were listed.
+ */
+class BatchReferenceResolver {
+
+  static final int MAX_PARALLELISM = 8;
+
+  private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+  private static final ExecutorService EXECUTOR =
+      Executors.newFixedThreadPool(
+          MAX_PARALLELISM,
+          runnable -> {
+            Thread thread =
+                new Thread(runnable, "webin-cli-reference-resolver-" + THREAD_NUMBER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  static class Result<T> {
+    private final List<T> references = new ArrayList<>();
+    private final List<WebinCliException> errors = new ArrayList<>();
+
+    public List<T> getReferences() {
+      return references;
+    }
+
+    public List<WebinCliException> getErrors() {
+      return errors;
+    }
+  }
+
+  private BatchReferenceResolver() {}
+
+  /** Returns the unique non-empty references in the comma separated field value. */
+  static List<String> parseIds(String value) {
+    Set<String> ids = new LinkedHashSet<>();
+    for (String id : value.split(",")) {
+      id = id.trim();
+      if (!id.isEmpty()) {
+        ids.add(id);
+      }
+    }
+    return new ArrayList<>(ids);
+  }
+
+  /**
+   * Resolves the references using the given function. Errors thrown by the function as WebinCliException
+   * are collected and returned with the result so that all invalid references are reported together.
+   */
+  static <T> Result<T> resolve(List<String> ids, Function<String, T> resolver) {
+    Result<T> result = new Result<>();
+    if (ids.size() <= 1) {
+      for (String id : ids) {
+        try {
+          result.references.add(resolver.apply(id));
+        } catch (WebinCliException ex) {
+          result.errors.add(ex);
+        }
+      }
+      return result;
+    }
+
+    Map<String, String> contextMap = MDC.getCopyOfContextMap();
+    List<Future<T>> futures = new ArrayList<>(ids.size());
+    try {
+      for (String id : ids) {
+        futures.add(
+            EXECUTOR.submit(
+                () -> {
+                  if (contextMap != null) {
+                    MDC.setContextMap(contextMap);
+                  }
+                  try {
+                    return resolver.apply(id);
+                  } finally {
+                    MDC.clear();
+                  }
+                }));
+      }
+      for (Future<T> future : futures) {
+        try {
+          result.references.add(future.get());
+        } catch (ExecutionException ex) {
+          if (ex.getCause() instanceof WebinCliException) {
+            result.errors.add((WebinCliException) ex.getCause());
+          } else if (ex.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) ex.getCause();
+          } else if (ex.getCause() instanceof Error) {
+            throw (Error) ex.getCause();
+          } else {
+            throw WebinCliException.systemError(ex);
+          }
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw WebinCliException.systemError(ex);
+    } finally {
+      futures.forEach(future -> future.cancel(true));
+    }
+    return result;
+  }
+}
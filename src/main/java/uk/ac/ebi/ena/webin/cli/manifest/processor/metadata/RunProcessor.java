@@ -10,19 +10,16 @@
  */
 package uk.ac.ebi.ena.webin.cli.manifest.processor.metadata;
 
-import uk.ac.ebi.ena.webin.cli.WebinCliException;
 import uk.ac.ebi.ena.webin.cli.manifest.ManifestFieldProcessor;
 import uk.ac.ebi.ena.webin.cli.manifest.ManifestFieldValue;
 import uk.ac.ebi.ena.webin.cli.manifest.processor.MetadataProcessorParameters;
 import uk.ac.ebi.ena.webin.cli.service.RunService;
+import uk.ac.ebi.ena.webin.cli.service.utils.ReferenceCache;
 import uk.ac.ebi.ena.webin.cli.validator.message.ValidationMessage;
 import uk.ac.ebi.ena.webin.cli.validator.message.ValidationResult;
 import uk.ac.ebi.ena.webin.cli.validator.reference.Run;
 
-import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 import java.util.stream.Collectors;
 
 public class RunProcessor implements ManifestFieldProcessor {
@@ -43,36 +40,31 @@ public class RunProcessor implements ManifestFieldProcessor {
     this.callback = callback;
   }
 
+  @Override
+  public boolean isRemote() {
+    return true;
+  }
+
   @Override
   public void process(ValidationResult result, ManifestFieldValue fieldValue) {
-    String value = fieldValue.getValue();
-    String[] ids = value.split(", *");
-    Set<String> idsSet = new HashSet<>();
-    List<Run> run_list = new ArrayList<>(ids.length);
+    List<String> ids = BatchReferenceResolver.parseIds(fieldValue.getValue());
 
-    for (String r : ids) {
-      String id = r.trim();
-      if (id.isEmpty()) continue;
+    RunService runService =
+        new RunService.Builder()
+            .setCredentials(parameters.getWebinServiceUserName(), parameters.getPassword())
+            .setTest(parameters.isTest())
+            .build();
 
-      if (!idsSet.add(id)) continue;
-      try {
-        RunService runService =
-            new RunService.Builder()
-                .setCredentials(parameters.getWebinServiceUserName(), parameters.getPassword())
-                .setTest(parameters.isTest())
-                .build();
-        run_list.add(runService.getRun(id));
+    BatchReferenceResolver.Result<Run> runs = BatchReferenceResolver.resolve(ids, id ->
+        ReferenceCache.getInstance().get(ReferenceCache.Type.RUN,
+            parameters.isTest(), parameters.getWebinServiceUserName(), id, Run.class, () -> runService.getRun(id)));
 
-      } catch (WebinCliException e) {
-        result.add(ValidationMessage.error(e));
-      }
-    }
+    runs.getErrors().forEach(e -> result.add(ValidationMessage.error(e)));
 
     if (result.isValid()) {
       fieldValue.setValue(
-          run_list.stream().map(e -> e.getRunId()).collect(Collectors.joining(", ")));
-
-      callback.notify(run_list);
+          runs.getReferences().stream().map(e -> e.getRunId()).collect(Collectors.joining(", ")));
+      callback.notify(runs.getReferences());
     }
   }
 }
@@ -16,6 +16,7 @@ import uk.ac.ebi.ena.webin.cli.manifest.ManifestFieldProcessor;
 import uk.ac.ebi.ena.webin.cli.manifest.ManifestFieldValue;
 import uk.ac.ebi.ena.webin.cli.manifest.processor.MetadataProcessorParameters;
 import uk.ac.ebi.ena.webin.cli.service.SampleService;
+import uk.ac.ebi.ena.webin.cli.service.utils.ReferenceCache;
 import uk.ac.ebi.ena.webin.cli.utils.ExceptionUtils;
 import uk.ac.ebi.ena.webin.cli.validator.message.ValidationMessage;
 import uk.ac.ebi.ena.webin.cli.validator.message.ValidationResult;
@@ -44,21 +45,29 @@ public class SampleProcessor implements ManifestFieldProcessor {
     return callback;
   }
 
+  @Override
+  public boolean isRemote() {
+    return true;
+  }
+
   @Override
   public void process(ValidationResult result, ManifestFieldValue fieldValue) {
     String value = fieldValue.getValue();
 
     try {
-      SampleService sampleService =
-          new SampleService.Builder()
-              .setCredentials(parameters.getWebinServiceUserName(), parameters.getPassword())
-              .setTest(parameters.isTest())
-              .build();
+      Sample sample = ReferenceCache.getInstance().get(ReferenceCache.Type.SAMPLE,
+          parameters.isTest(), parameters.getWebinServiceUserName(), value, Sample.class, () -> {
+            SampleService sampleService =
+                new SampleService.Builder()
+                    .setCredentials(parameters.getWebinServiceUserName(), parameters.getPassword())
+                    .setTest(parameters.isTest())
+                    .build();
 
-      Sample sample = ExceptionUtils.executeWithRestExceptionHandling(() -> sampleService.getSample(value),
-          WebinCliMessage.SERVICE_AUTHENTICATION_ERROR.format(SampleService.SERVICE_NAME),
-          WebinCliMessage.SAMPLE_SERVICE_VALIDATION_ERROR.format(value),
-          WebinCliMessage.SAMPLE_SERVICE_SYSTEM_ERROR.format(value));
+            return ExceptionUtils.executeWithRestExceptionHandling(() -> sampleService.getSample(value),
+                WebinCliMessage.SERVICE_AUTHENTICATION_ERROR.format(SampleService.SERVICE_NAME),
+                WebinCliMessage.SAMPLE_SERVICE_VALIDATION_ERROR.format(value),
+                WebinCliMessage.SAMPLE_SERVICE_SYSTEM_ERROR.format(value));
+          });
 
       fieldValue.setValue(sample.getBioSampleId());
       callback.notify(sample);
@@ -17,6 +17,7 @@ import uk.ac.ebi.ena.webin.cli.manifest.ManifestFieldValue;
 import uk.ac.ebi.ena.webin.cli.manifest.processor.MetadataProcessorParameters;
 import uk.ac.ebi.ena.webin.cli.service.SampleXmlService;
 import uk.ac.ebi.ena.webin.cli.service.exception.ServiceException;
+import uk.ac.ebi.ena.webin.cli.service.utils.ReferenceCache;
 import uk.ac.ebi.ena.webin.cli.utils.ExceptionUtils;
 import uk.ac.ebi.ena.webin.cli.validator.message.ValidationMessage;
 import uk.ac.ebi.ena.webin.cli.validator.message.ValidationResult;
@@ -41,21 +42,29 @@ public class SampleXmlProcessor implements ManifestFieldProcessor {
     this.callback = callback;
   }
 
+  @Override
+  public boolean isRemote() {
+    return true;
+  }
+
   @Override
   public void process(ValidationResult result, ManifestFieldValue fieldValue) {
     String value = fieldValue.getValue();
 
     try {
-      SampleXmlService sampleXmlService =
-          new SampleXmlService.Builder()
-              .setCredentials(parameters.getWebinServiceUserName(), parameters.getPassword())
-              .setTest(parameters.isTest())
-              .build();
+      Sample source = ReferenceCache.getInstance().get(ReferenceCache.Type.SAMPLE_XML,
+          parameters.isTest(), parameters.getWebinServiceUserName(), value, Sample.class, () -> {
+            SampleXmlService sampleXmlService =
+                new SampleXmlService.Builder()
+                    .setCredentials(parameters.getWebinServiceUserName(), parameters.getPassword())
+                    .setTest(parameters.isTest())
+                    .build();
 
-      Sample source = ExceptionUtils.executeWithRestExceptionHandling(() -> sampleXmlService.getSample(value),
-          WebinCliMessage.SERVICE_AUTHENTICATION_ERROR.format(SampleXmlService.SERVICE_NAME),
-          WebinCliMessage.SAMPLE_SERVICE_VALIDATION_ERROR.format(value),
-          WebinCliMessage.SAMPLE_SERVICE_SYSTEM_ERROR.format(value));
+            return ExceptionUtils.executeWithRestExceptionHandling(() -> sampleXmlService.getSample(value),
+                WebinCliMessage.SERVICE_AUTHENTICATION_ERROR.format(SampleXmlService.SERVICE_NAME),
+                WebinCliMessage.SAMPLE_SERVICE_VALIDATION_ERROR.format(value),
+                WebinCliMessage.SAMPLE_SERVICE_SYSTEM_ERROR.format(value));
+          });
 
       callback.notify(source);
 
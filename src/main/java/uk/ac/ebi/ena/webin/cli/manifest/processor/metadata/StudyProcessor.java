@@ -15,6 +15,7 @@ import uk.ac.ebi.ena.webin.cli.manifest.ManifestFieldProcessor;
 import uk.ac.ebi.ena.webin.cli.manifest.ManifestFieldValue;
 import uk.ac.ebi.ena.webin.cli.manifest.processor.MetadataProcessorParameters;
 import uk.ac.ebi.ena.webin.cli.service.StudyService;
+import uk.ac.ebi.ena.webin.cli.service.utils.ReferenceCache;
 import uk.ac.ebi.ena.webin.cli.validator.message.ValidationMessage;
 import uk.ac.ebi.ena.webin.cli.validator.message.ValidationResult;
 import uk.ac.ebi.ena.webin.cli.validator.reference.Study;
@@ -42,17 +43,25 @@ public class StudyProcessor implements ManifestFieldProcessor {
     return callback;
   }
 
+  @Override
+  public boolean isRemote() {
+    return true;
+  }
+
   @Override
   public void process(ValidationResult result, ManifestFieldValue fieldValue) {
     String value = fieldValue.getValue();
 
     try {
-      StudyService studyService =
-          new StudyService.Builder()
-              .setCredentials(parameters.getWebinServiceUserName(), parameters.getPassword())
-              .setTest(parameters.isTest())
-              .build();
-      Study study = studyService.getStudy(value);
+      Study study = ReferenceCache.getInstance().get(ReferenceCache.Type.STUDY,
+          parameters.isTest(), parameters.getWebinServiceUserName(), value, Study.class, () -> {
+            StudyService studyService =
+                new StudyService.Builder()
+                    .setCredentials(parameters.getWebinServiceUserName(), parameters.getPassword())
+                    .setTest(parameters.isTest())
+                    .build();
+            return studyService.getStudy(value);
+          });
       fieldValue.setValue(study.getBioProjectId());
       callback.notify(study);
 
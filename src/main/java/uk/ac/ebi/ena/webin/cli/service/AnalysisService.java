@@ -22,6 +22,7 @@ import org.springframework.web.client.RestTemplate;
 import uk.ac.ebi.ena.webin.cli.WebinCliException;
 import uk.ac.ebi.ena.webin.cli.WebinCliMessage;
 import uk.ac.ebi.ena.webin.cli.service.utils.HttpHeaderBuilder;
+import uk.ac.ebi.ena.webin.cli.service.utils.RestTemplateFactory;
 import uk.ac.ebi.ena.webin.cli.utils.ExceptionUtils;
 import uk.ac.ebi.ena.webin.cli.utils.RetryUtils;
 import uk.ac.ebi.ena.webin.cli.validator.reference.Analysis;
@@ -68,7 +69,7 @@ AnalysisService extends WebinService
     private Analysis 
     getAnalysis( String analysisId, String userName, String password, boolean test )
     {
-        RestTemplate restTemplate = new RestTemplate();
+        RestTemplate restTemplate = RestTemplateFactory.getRestTemplate();
 
         HttpHeaders headers = new HttpHeaderBuilder().basicAuth( userName, password ).build();
 
@@ -21,6 +21,7 @@ import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 import uk.ac.ebi.ena.webin.cli.WebinCliMessage;
 import uk.ac.ebi.ena.webin.cli.service.utils.HttpHeaderBuilder;
+import uk.ac.ebi.ena.webin.cli.service.utils.RestTemplateFactory;
 import uk.ac.ebi.ena.webin.cli.utils.ExceptionUtils;
 import uk.ac.ebi.ena.webin.cli.utils.RetryUtils;
 
@@ -63,7 +64,7 @@ IgnoreErrorsService extends WebinService {
     
     private boolean getIgnoreErrors(String userName, String password, String context, String name, boolean test) {
 
-        RestTemplate restTemplate = new RestTemplate();
+        RestTemplate restTemplate = RestTemplateFactory.getRestTemplate();
 
         HttpHeaders headers = new HttpHeaderBuilder().basicAuth(userName, password).build();
 
@@ -20,6 +20,7 @@ import org.springframework.web.client.RestTemplate;
 import uk.ac.ebi.ena.webin.cli.WebinCliException;
 import uk.ac.ebi.ena.webin.cli.WebinCliMessage;
 import uk.ac.ebi.ena.webin.cli.service.utils.HttpHeaderBuilder;
+import uk.ac.ebi.ena.webin.cli.service.utils.RestTemplateFactory;
 import uk.ac.ebi.ena.webin.cli.utils.ExceptionUtils;
 import uk.ac.ebi.ena.webin.cli.utils.RetryUtils;
 
@@ -72,7 +73,7 @@ LoginService
     public String login() {
         RequestEntity< LoginRequestBody > request =  getAuthRequest("/login");
 
-        RestTemplate restTemplate = new RestTemplate();
+        RestTemplate restTemplate = RestTemplateFactory.getRestTemplate();
 
         LoginResponseBody responseBody = ExceptionUtils.executeWithRestExceptionHandling(
 
@@ -101,7 +102,7 @@ LoginService
     public String getAuthToken() {
         RequestEntity< LoginRequestBody > request =  getAuthRequest("/token");
 
-        RestTemplate restTemplate = new RestTemplate();
+        RestTemplate restTemplate = RestTemplateFactory.getRestTemplate();
 
         return ExceptionUtils.executeWithRestExceptionHandling(
 
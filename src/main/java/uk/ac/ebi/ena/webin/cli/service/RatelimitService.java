@@ -22,6 +22,7 @@ import org.springframework.web.client.RestTemplate;
 import uk.ac.ebi.ena.webin.cli.WebinCliMessage;
 import uk.ac.ebi.ena.webin.cli.service.models.RateLimitResult;
 import uk.ac.ebi.ena.webin.cli.service.utils.HttpHeaderBuilder;
+import uk.ac.ebi.ena.webin.cli.service.utils.RestTemplateFactory;
 import uk.ac.ebi.ena.webin.cli.utils.ExceptionUtils;
 import uk.ac.ebi.ena.webin.cli.utils.RetryUtils;
 
@@ -57,7 +58,7 @@ public class RatelimitService extends WebinService {
     }
 
     public RateLimitResult ratelimit(String context, String submissionAccountId, String studyId, String sampleId) {
-        RestTemplate restTemplate = new RestTemplate();
+        RestTemplate restTemplate = RestTemplateFactory.getRestTemplate();
 
         HttpHeaders headers = new HttpHeaderBuilder().basicAuth(getUserName(), getPassword()).build();
         String url = getWebinRestUri("cli/submission/v2/ratelimit/", getTest());
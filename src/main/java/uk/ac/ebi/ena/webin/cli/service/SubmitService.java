@@ -31,6 +31,7 @@ import org.springframework.web.client.RestTemplate;
 import uk.ac.ebi.ena.webin.cli.WebinCliException;
 import uk.ac.ebi.ena.webin.cli.WebinCliMessage;
 import uk.ac.ebi.ena.webin.cli.service.utils.HttpHeaderBuilder;
+import uk.ac.ebi.ena.webin.cli.service.utils.RestTemplateFactory;
 import uk.ac.ebi.ena.webin.cli.submit.SubmissionBundle;
 import uk.ac.ebi.ena.webin.cli.utils.ExceptionUtils;
 import uk.ac.ebi.ena.webin.cli.utils.RetryUtils;
@@ -43,7 +44,13 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public class SubmitService extends WebinService {
 
@@ -55,6 +62,19 @@ public class SubmitService extends WebinService {
 
     private final boolean saveSubmissionXmlFiles;
 
+    /**
+     * Thrown when a combined submission has certainly not been made: either the submission request was not sent or
+     * the receipt reports that the submission failed. Other errors, for example read timeouts, leave it unknown
+     * whether the submission was made.
+     */
+    public static class NotSubmittedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public NotSubmittedException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
     public static class Builder extends AbstractBuilder<SubmitService> {
         private String submitDir;
 
@@ -84,13 +104,84 @@ public class SubmitService extends WebinService {
     }
     
 
-    public void
+    /**
+     * @return the accessions of the submitted objects
+     */
+    public Map<SubmissionBundle.SubmissionXMLFileType, String>
     doSubmission(List<SubmissionBundle.SubmissionXMLFile> xmlFileList) {
         String submissionXml = createSubmissionXml(xmlFileList);
         if (saveSubmissionXmlFiles) {
             saveToFile(Paths.get(submitDir, SUBMISSION_XML_NAME), submissionXml);
         }
 
+        String receiptXml = sendSubmissionXml(submissionXml);
+
+        return processReceipt(receiptXml, xmlFileList);
+    }
+
+    /**
+     * Submits the XMLs of many submission bundles in one request. The objects of the same type are combined into
+     * one XML set and the submission attributes of all bundles are combined into one submission. The submission
+     * either succeeds or fails as a whole. The submission XML and the receipt are saved in the submit directory
+     * of every bundle.
+     *
+     * @return the accessions of the submitted objects mapped back to the bundles using the object aliases. The
+     * accessions are returned in the same order as the bundles.
+     * @throws NotSubmittedException if the submission has certainly not been made
+     */
+    public List<Map<SubmissionBundle.SubmissionXMLFileType, String>>
+    doCombinedSubmission(List<SubmissionBundle> bundles) {
+        String submissionXml;
+        try {
+            submissionXml = createCombinedSubmissionXml(bundles);
+            if (saveSubmissionXmlFiles) {
+                bundles.forEach(bundle ->
+                    saveToFile(bundle.getSubmitDir().toPath().resolve(SUBMISSION_XML_NAME), submissionXml));
+            }
+        } catch (RuntimeException ex) {
+            throw new NotSubmittedException(ex.getMessage(), ex);
+        }
+
+        String receiptXml = sendSubmissionXml(submissionXml);
+
+        Element rootNode = readReceipt(receiptXml, bundles.stream()
+                .map(bundle -> bundle.getSubmitDir().getPath())
+                .collect(Collectors.toList()),
+            message -> new NotSubmittedException(message, null));
+        if (rootNode == null) {
+            throw new NotSubmittedException(WebinCliMessage.SUBMIT_SERVICE_SYSTEM_ERROR.text(), null);
+        }
+
+        List<Map<SubmissionBundle.SubmissionXMLFileType, String>> accessions = new ArrayList<>();
+        for (SubmissionBundle bundle : bundles) {
+            Map<SubmissionBundle.SubmissionXMLFileType, String> bundleAccessions =
+                new EnumMap<>(SubmissionBundle.SubmissionXMLFileType.class);
+            for (SubmissionBundle.SubmissionXMLFile xmlFile : bundle.getXMLFileList()) {
+                if (xmlFile.getType() == SubmissionBundle.SubmissionXMLFileType.SUBMISSION) {
+                    continue;
+                }
+                String alias = parseXml(xmlFile.getXmlContent()).getChildren().stream()
+                    .map(e -> e.getAttributeValue("alias"))
+                    .findFirst().orElse(null);
+                String accession = rootNode.getChildren(xmlFile.getType().name()).stream()
+                    .filter(e -> alias != null && alias.equals(e.getAttributeValue("alias")))
+                    .map(e -> e.getAttributeValue("accession"))
+                    .findFirst().orElse(null);
+                bundleAccessions.put(xmlFile.getType(), accession);
+            }
+            accessions.add(bundleAccessions);
+        }
+        return accessions;
+    }
+
+    /**
+     * Logs the accessions returned by {@link #doCombinedSubmission(List)} for one bundle.
+     */
+    public void logAccessions(Map<SubmissionBundle.SubmissionXMLFileType, String> accessions) {
+        accessions.forEach(this::logAccession);
+    }
+
+    private String sendSubmissionXml(String submissionXml) {
         MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
         body.add("file", new ByteArrayResource(submissionXml.getBytes(StandardCharsets.UTF_8)) {
             //The remote endpoint responds back with 400 status code if file name is not present in
@@ -104,7 +195,7 @@ public class SubmitService extends WebinService {
 
         HttpHeaders headers = new HttpHeaderBuilder().basicAuth( getUserName(), getPassword() ).multipartFormData().build();
 
-        RestTemplate restTemplate = new RestTemplate();
+        RestTemplate restTemplate = RestTemplateFactory.getRestTemplate();
 
         ResponseEntity<String> response = ExceptionUtils.executeWithRestExceptionHandling(
 
@@ -120,7 +211,7 @@ public class SubmitService extends WebinService {
             null,
             WebinCliMessage.SUBMIT_SERVICE_SYSTEM_ERROR.text());
 
-        processReceipt(response.getBody(), xmlFileList);
+        return response.getBody();
     }
 
     private String createSubmissionXml(List<SubmissionBundle.SubmissionXMLFile> xmlFileList) {
@@ -136,7 +227,112 @@ public class SubmitService extends WebinService {
         return sb.toString();
     }
 
-    private void processReceipt(String receiptXml, List<SubmissionBundle.SubmissionXMLFile> xmlFileList) {
+    String createCombinedSubmissionXml(List<SubmissionBundle> bundles) {
+        Map<SubmissionBundle.SubmissionXMLFileType, Element> sets =
+            new EnumMap<>(SubmissionBundle.SubmissionXMLFileType.class);
+
+        for (SubmissionBundle bundle : bundles) {
+            for (SubmissionBundle.SubmissionXMLFile xmlFile : bundle.getXMLFileList()) {
+                Element setE = parseXml(xmlFile.getXmlContent());
+                Element combinedSetE = sets.get(xmlFile.getType());
+                if (combinedSetE == null) {
+                    sets.put(xmlFile.getType(), setE);
+                } else if (xmlFile.getType() == SubmissionBundle.SubmissionXMLFileType.SUBMISSION) {
+                    // Only one submission is allowed. Keep the manifest attributes of all bundles.
+                    Element submissionE = combinedSetE.getChild("SUBMISSION");
+                    Element otherAttributesE = setE.getChild("SUBMISSION").getChild("SUBMISSION_ATTRIBUTES");
+                    if (otherAttributesE == null) {
+                        continue;
+                    }
+                    Element attributesE = submissionE.getChild("SUBMISSION_ATTRIBUTES");
+                    if (attributesE == null) {
+                        attributesE = new Element("SUBMISSION_ATTRIBUTES");
+                        submissionE.addContent(attributesE);
+                    }
+                    for (Element attributeE : otherAttributesE.getChildren("SUBMISSION_ATTRIBUTE")) {
+                        String tag = attributeE.getChildText("TAG");
+                        if (tag != null && tag.startsWith("ENA-MANIFEST-FILE")) {
+                            attributesE.addContent(attributeE.clone());
+                        }
+                    }
+                } else {
+                    for (Element e : new ArrayList<>(setE.getChildren())) {
+                        combinedSetE.addContent(e.detach());
+                    }
+                }
+            }
+        }
+
+        XMLOutputter xmlOutput = new XMLOutputter(Format.getPrettyFormat());
+        StringBuilder sb = new StringBuilder(32768);
+
+        sb.append("<WEBIN>" + System.lineSeparator());
+        sets.values().forEach(setE -> {
+            sb.append(xmlOutput.outputString(setE));
+            sb.append(System.lineSeparator());
+        });
+        sb.append("</WEBIN>");
+
+        return sb.toString();
+    }
+
+    private Element parseXml(String xml) {
+        try {
+            return new SAXBuilder().build(new StringReader(xml)).detachRootElement();
+        } catch (IOException | JDOMException ex) {
+            throw WebinCliException.systemError(ex);
+        }
+    }
+
+    private Map<SubmissionBundle.SubmissionXMLFileType, String>
+    processReceipt(String receiptXml, List<SubmissionBundle.SubmissionXMLFile> xmlFileList) {
+        Map<SubmissionBundle.SubmissionXMLFileType, String> accessions =
+            new EnumMap<>(SubmissionBundle.SubmissionXMLFileType.class);
+
+        Element rootNode = readReceipt(receiptXml, Collections.singletonList(submitDir),
+            message -> WebinCliException.systemError(message));
+        if (rootNode == null) {
+            return accessions;
+        }
+
+        for (SubmissionBundle.SubmissionXMLFile xmlFile : xmlFileList ) {
+            //Do not show submission accession in the output.
+            if (xmlFile.getType() == SubmissionBundle.SubmissionXMLFileType.SUBMISSION) {
+                continue;
+            }
+
+            String xmlFileType = String.valueOf( xmlFile.getType() );
+            String accession = rootNode.getChild( xmlFileType ).getAttributeValue( "accession" );
+
+            logAccession( xmlFile.getType(), accession );
+
+            accessions.put( xmlFile.getType(), accession );
+        }
+        return accessions;
+    }
+
+    private void logAccession(SubmissionBundle.SubmissionXMLFileType type, String accession) {
+        String xmlFileType = String.valueOf( type );
+
+        String msg = ( getTest() ? WebinCliMessage.SUBMIT_SERVICE_SUCCESS_TEST
+                                 : WebinCliMessage.SUBMIT_SERVICE_SUCCESS).format( xmlFileType.toLowerCase(), accession );
+
+        if( null == accession || accession.isEmpty() ) {
+            msg = (getTest() ? WebinCliMessage.SUBMIT_SERVICE_SUCCESS_TEST_NOACC
+                : WebinCliMessage.SUBMIT_SERVICE_SUCCESS_NOACC).format(xmlFileType.toLowerCase());
+        }
+
+        log.info( msg );
+    }
+
+    /**
+     * Saves the receipt in the submit directories and returns its root element if the submission was successful.
+     * Returns null if the submission failed without error messages.
+     *
+     * @param failure creates the exception thrown if the receipt reports that the submission failed
+     */
+    private Element readReceipt(
+        String receiptXml, List<String> submitDirs, Function<String, RuntimeException> failure) {
         StringBuilder errorsSb = new StringBuilder();
         try {
             SAXBuilder builder = new SAXBuilder();
@@ -146,31 +342,14 @@ public class SubmitService extends WebinService {
             StringWriter stringWriter = new StringWriter();
             xmlOutput.output(doc, stringWriter);
 
-            saveToFile(Paths.get(submitDir + File.separator + RECEIPT_XML_NAME), stringWriter.toString());
+            for (String dir : submitDirs) {
+                saveToFile(Paths.get(dir + File.separator + RECEIPT_XML_NAME), stringWriter.toString());
+            }
 
             Element rootNode = doc.getRootElement();
+            boolean success = Boolean.valueOf( rootNode.getAttributeValue( "success" ) );
 
-            if( Boolean.valueOf( rootNode.getAttributeValue( "success" ) ) ) {
-                for (SubmissionBundle.SubmissionXMLFile xmlFile : xmlFileList ) {
-                    //Do not show submission accession in the output.
-                    if (xmlFile.getType() == SubmissionBundle.SubmissionXMLFileType.SUBMISSION) {
-                        continue;
-                    }
-
-                    String xmlFileType = String.valueOf( xmlFile.getType() );
-                    String accession = rootNode.getChild( xmlFileType ).getAttributeValue( "accession" );
-
-                    String msg = ( getTest() ? WebinCliMessage.SUBMIT_SERVICE_SUCCESS_TEST
-                                             : WebinCliMessage.SUBMIT_SERVICE_SUCCESS).format( xmlFileType.toLowerCase(), accession );
-                   
-                    if( null == accession || accession.isEmpty() ) {
-                        msg = (getTest() ? WebinCliMessage.SUBMIT_SERVICE_SUCCESS_TEST_NOACC
-                            : WebinCliMessage.SUBMIT_SERVICE_SUCCESS_NOACC).format(xmlFileType.toLowerCase());
-                    }
-                    
-                    log.info( msg );
-                }
-            } else {
+            if( !success ) {
                 List<Element> childrenList = rootNode.getChildren("MESSAGES");
                 for (Element child : childrenList) {
                     List<Element> errorList = child.getChildren("ERROR");
@@ -184,8 +363,10 @@ public class SubmitService extends WebinService {
             }
 
             if (errorsSb.length() != 0) {
-                throw WebinCliException.systemError(errorsSb.toString());
+                throw failure.apply(errorsSb.toString());
             }
+
+            return success ? rootNode : null;
         } catch (IOException | JDOMException ex) {
             throw WebinCliException.systemError(ex);
         }
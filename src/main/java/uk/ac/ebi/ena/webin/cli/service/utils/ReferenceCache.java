@@ -0,0 +1,401 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Caches the study, sample, run and analysis references retrieved from the Webin REST services so that the same
+ * references are not retrieved again when many submissions refer to them. The references are cached by type,
+ * test or production service, submission account and the referenced accession or alias. Cached references
+ * expire after the configured time to live. Only references that were found are cached.
+ * <p>
+ * By default the references are cached in memory only. If a cache file is configured then the references are
+ * also appended to the cache file and are available to later runs. The cache file is shared by concurrent runs
+ * which append to and compact the cache file while holding a lock on a separate lock file.
+ * <p>
+ * Concurrent retrievals of the same reference, for example by submissions validated in parallel in the same
+ * process, are coalesced into one request to the Webin REST services even when the cache is disabled. The number
+ * of cached, coalesced and remote retrievals are counted.
+ * <p>
+ * The cached and coalesced references are copied by serialising them to JSON. References that can't be copied
+ * are not cached, and the callers that would have received a copy retrieve the reference themselves.
+ */
+public class ReferenceCache {
+    private static final Logger log = LoggerFactory.getLogger(ReferenceCache.class);
+
+    public static final long DEFAULT_TTL_SECONDS = TimeUnit.HOURS.toSeconds(1);
+
+    private static final String SEPARATOR = "\t";
+    private static final int COLUMNS = 6;
+    private static final String LOCK_FILE_SUFFIX = ".lock";
+
+    /** File locks are held by the process and can't be used to exclude other threads of this process. */
+    private static final Object FILE_LOCK = new Object();
+
+    private static volatile ReferenceCache instance = new ReferenceCache(null, DEFAULT_TTL_SECONDS);
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+        .configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+
+    private final File cacheFile;
+    private final long ttlMillis;
+    private final Map<Key, Entry> references = new ConcurrentHashMap<>();
+    /** The references retrieved by the calls in flight. */
+    private final SingleFlight<Key, Reference> inFlightReferences = new SingleFlight<>();
+
+    private final AtomicLong cachedCalls = new AtomicLong();
+    private final AtomicLong coalescedCalls = new AtomicLong();
+    private final AtomicLong remoteCalls = new AtomicLong();
+
+    public enum Type {
+        STUDY,
+        SAMPLE,
+        SAMPLE_XML,
+        RUN,
+        ANALYSIS
+    }
+
+    static final class Key {
+        private final Type type;
+        private final boolean test;
+        private final String account;
+        private final String id;
+
+        Key(Type type, boolean test, String account, String id) {
+            this.type = type;
+            this.test = test;
+            this.account = account;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return test == key.test && type == key.type && account.equals(key.account) && id.equals(key.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, test, account, id);
+        }
+    }
+
+    private static final class Entry {
+        private final long created;
+        private final String json;
+
+        private Entry(long created, String json) {
+            this.created = created;
+            this.json = json;
+        }
+    }
+
+    /**
+     * A retrieved reference and its JSON from which the callers sharing the retrieval create their own copy.
+     */
+    private static final class Reference {
+        private final Object value;
+        private final String json;
+
+        private Reference(Object value, String json) {
+            this.value = value;
+            this.json = json;
+        }
+    }
+
+    ReferenceCache(File cacheFile, long ttlSeconds) {
+        this.cacheFile = cacheFile;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(Math.max(0, ttlSeconds));
+        if (cacheFile != null && cacheFile.isFile() && ttlMillis > 0) {
+            read();
+        }
+    }
+
+    public static ReferenceCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Configures the reference cache used by this process.
+     *
+     * @param cacheFile file where the references are stored, or null to keep the references in memory only
+     * @param ttlSeconds the time to live of the cached references in seconds, or zero to disable the cache
+     * @param clear remove all cached references including the ones stored in the cache file
+     */
+    public static void configure(File cacheFile, long ttlSeconds, boolean clear) {
+        if (clear && cacheFile != null) {
+            try {
+                Files.deleteIfExists(cacheFile.toPath());
+            } catch (IOException ex) {
+                log.warn("Unable to delete the reference cache file: {}", cacheFile.getPath());
+            }
+        }
+        instance = new ReferenceCache(cacheFile, ttlSeconds);
+    }
+
+    /**
+     * Returns the default reference cache file in the user home directory.
+     */
+    public static File getDefaultCacheFile() {
+        return new File(new File(System.getProperty("user.home"), ".webin-cli"), "references");
+    }
+
+    /**
+     * Returns the cached reference, or retrieves and caches the reference if it has not been cached or the cached
+     * reference has expired. Exceptions thrown by the supplier are not cached. Callers retrieving the same reference
+     * at the same time share one retrieval and receive their own copy of the reference. The caller executing the
+     * retrieval receives the reference returned by the supplier.
+     */
+    public <T> T get(Type type, boolean test, String account, String id, Class<T> valueClass, Supplier<T> supplier) {
+        if (account == null || id == null) {
+            remoteCalls.incrementAndGet();
+            return supplier.get();
+        }
+
+        Key key = new Key(type, test, account, id.trim());
+        if (ttlMillis > 0) {
+            Entry entry = references.get(key);
+            if (entry != null && !isExpired(entry)) {
+                T value = copy(key, entry.json, valueClass);
+                if (value != null) {
+                    cachedCalls.incrementAndGet();
+                    log.debug("Using the cached {} reference: {}", type.name().toLowerCase(), id);
+                    return value;
+                }
+                references.remove(key, entry);
+            }
+        }
+
+        // The reference is serialised before the supplier returns so that no caller can change it while the
+        // other callers are copying it.
+        SingleFlight.Call<Reference> call = inFlightReferences.execute(key, () -> {
+            remoteCalls.incrementAndGet();
+            T value = supplier.get();
+            if (value == null) {
+                return null;
+            }
+            String json = toJson(key, value);
+            // Only references that can be copied are cached.
+            if (ttlMillis > 0 && json != null && copy(key, json, valueClass) != null) {
+                put(key, json);
+            }
+            return new Reference(value, json);
+        });
+        Reference reference = call.getValue();
+        if (reference == null) {
+            return null;
+        }
+        if (!call.isCoalesced()) {
+            return valueClass.cast(reference.value);
+        }
+
+        T value = reference.json != null ? copy(key, reference.json, valueClass) : null;
+        if (value != null) {
+            coalescedCalls.incrementAndGet();
+            log.debug("Using the concurrently retrieved {} reference: {}", type.name().toLowerCase(), id);
+            return value;
+        }
+        // The reference can't be shared and is retrieved again.
+        remoteCalls.incrementAndGet();
+        return supplier.get();
+    }
+
+    public long getCachedCalls() {
+        return cachedCalls.get();
+    }
+
+    public long getCoalescedCalls() {
+        return coalescedCalls.get();
+    }
+
+    public long getRemoteCalls() {
+        return remoteCalls.get();
+    }
+
+    @Override
+    public String toString() {
+        return "remote: " + getRemoteCalls() + ", cached: " + getCachedCalls() + ", coalesced: " + getCoalescedCalls();
+    }
+
+    /**
+     * Removes all cached references from memory.
+     */
+    public void clear() {
+        references.clear();
+    }
+
+    /**
+     * Returns the number of retrievals waiting for an identical retrieval in flight.
+     */
+    int getWaitingCalls() {
+        return inFlightReferences.getWaitingCalls();
+    }
+
+    private boolean isExpired(Entry entry) {
+        return System.currentTimeMillis() - entry.created > ttlMillis;
+    }
+
+    /**
+     * Returns the reference as JSON, or null if the reference can't be serialised.
+     */
+    private String toJson(Key key, Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException ex) {
+            log.debug("Unable to copy the {} reference: {}", key.type.name().toLowerCase(), key.id, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Returns a copy of the reference from its JSON, or null if the reference can't be deserialised.
+     */
+    private <T> T copy(Key key, String json, Class<T> valueClass) {
+        try {
+            return objectMapper.readValue(json, valueClass);
+        } catch (IOException ex) {
+            log.debug("Unable to copy the {} reference: {}", key.type.name().toLowerCase(), key.id, ex);
+            return null;
+        }
+    }
+
+    private void put(Key key, String json) {
+        Entry entry = new Entry(System.currentTimeMillis(), json);
+        references.put(key, entry);
+
+        if (cacheFile != null) {
+            append(toLine(key, entry) + System.lineSeparator());
+        }
+    }
+
+    private void append(String line) {
+        synchronized (FILE_LOCK) {
+            try (FileChannel lockChannel = openLockFile(); FileLock ignored = lockChannel.lock()) {
+                Files.write(cacheFile.toPath(), line.getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException ex) {
+                // The reference cache is an optimisation only.
+                log.warn("Unable to write the reference cache file: {}", cacheFile.getPath());
+            }
+        }
+    }
+
+    private static String toLine(Key key, Entry entry) {
+        // The JSON written by Jackson does not contain tabs or line breaks.
+        return String.join(SEPARATOR,
+            key.type.name(),
+            String.valueOf(key.test),
+            key.account,
+            key.id,
+            String.valueOf(entry.created),
+            entry.json);
+    }
+
+    private void read() {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(cacheFile.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            log.warn("Unable to read the reference cache file: {}", cacheFile.getPath());
+            return;
+        }
+
+        parse(lines);
+
+        if (lines.size() > 2 * references.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Adds the references that have not expired. A reference replaces the same reference only if it is newer.
+     */
+    private void parse(List<String> lines) {
+        for (String line : lines) {
+            String[] columns = line.split(SEPARATOR, COLUMNS);
+            if (columns.length != COLUMNS) {
+                continue;
+            }
+            try {
+                Key key = new Key(Type.valueOf(columns[0]), Boolean.parseBoolean(columns[1]), columns[2], columns[3]);
+                Entry entry = new Entry(Long.parseLong(columns[4]), columns[5]);
+                if (!isExpired(entry)) {
+                    references.merge(key, entry, (oldEntry, newEntry) ->
+                        newEntry.created >= oldEntry.created ? newEntry : oldEntry);
+                }
+            } catch (IllegalArgumentException ex) {
+                // Ignore incomplete lines.
+            }
+        }
+    }
+
+    /**
+     * Rewrites the cache file without the expired and replaced references. The cache file is read again while
+     * holding the lock to keep the references appended by other runs since the cache file was read.
+     */
+    void compact() {
+        synchronized (FILE_LOCK) {
+            try (FileChannel lockChannel = openLockFile(); FileLock ignored = lockChannel.lock()) {
+                parse(Files.readAllLines(cacheFile.toPath(), StandardCharsets.UTF_8));
+
+                List<String> lines = new ArrayList<>();
+                references.forEach((key, entry) -> {
+                    if (!isExpired(entry)) {
+                        lines.add(toLine(key, entry));
+                    }
+                });
+                Path tempFile = Files.createTempFile(cacheFile.getAbsoluteFile().getParentFile().toPath(), "references", ".tmp");
+                Files.write(tempFile, lines, StandardCharsets.UTF_8);
+                Files.move(tempFile, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException ex) {
+                log.warn("Unable to compact the reference cache file: {}", cacheFile.getPath());
+            }
+        }
+    }
+
+    /**
+     * Opens the lock file next to the cache file. The cache file itself can't be locked because it is replaced
+     * when it is compacted.
+     */
+    private FileChannel openLockFile() throws IOException {
+        Files.createDirectories(cacheFile.getAbsoluteFile().getParentFile().toPath());
+        return FileChannel.open(new File(cacheFile.getPath() + LOCK_FILE_SUFFIX).toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service.utils;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Provides the RestTemplate shared by all Webin REST service calls in this process. The connections are pooled
+ * and kept alive so that consecutive calls to the same server do not open a new TCP and TLS connection.
+ */
+public class RestTemplateFactory {
+    private static final Logger log = LoggerFactory.getLogger(RestTemplateFactory.class);
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+    public static final int DEFAULT_CONNECT_TIMEOUT_SECONDS = 30;
+    public static final int DEFAULT_READ_TIMEOUT_SECONDS = 600;
+
+    private static final int MAX_IDLE_SECONDS = 60;
+
+    private static volatile RestTemplateFactory instance = new RestTemplateFactory(
+        DEFAULT_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_CONNECT_TIMEOUT_SECONDS, DEFAULT_READ_TIMEOUT_SECONDS);
+
+    private final int maxConnectionsPerRoute;
+    private final int connectTimeoutSeconds;
+    private final int readTimeoutSeconds;
+    private final CloseableHttpClient httpClient;
+    private final RestTemplate restTemplate;
+
+    RestTemplateFactory(int maxConnectionsPerRoute, int connectTimeoutSeconds, int readTimeoutSeconds) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        this.connectTimeoutSeconds = connectTimeoutSeconds;
+        this.readTimeoutSeconds = readTimeoutSeconds;
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        // The services are called on a few routes only.
+        connectionManager.setMaxTotal(maxConnectionsPerRoute * 4);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+            .setConnectTimeout((int) TimeUnit.SECONDS.toMillis(connectTimeoutSeconds))
+            .setConnectionRequestTimeout((int) TimeUnit.SECONDS.toMillis(connectTimeoutSeconds))
+            .setSocketTimeout((int) TimeUnit.SECONDS.toMillis(readTimeoutSeconds))
+            .build();
+
+        // The system properties are used so that the proxy settings are applied as before.
+        this.httpClient = HttpClients.custom()
+            .useSystemProperties()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(requestConfig)
+            .evictExpiredConnections()
+            .evictIdleConnections(MAX_IDLE_SECONDS, TimeUnit.SECONDS)
+            .build();
+        this.restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+    }
+
+    /**
+     * Returns the shared RestTemplate. The RestTemplate is thread safe.
+     */
+    public static RestTemplate getRestTemplate() {
+        return instance.restTemplate;
+    }
+
+    public static RestTemplateFactory getInstance() {
+        return instance;
+    }
+
+    /**
+     * Configures the connection pool and timeouts of this process. Values less than one use the defaults.
+     */
+    public static void configure(int maxConnectionsPerRoute, int connectTimeoutSeconds, int readTimeoutSeconds) {
+        RestTemplateFactory previous = instance;
+        instance = new RestTemplateFactory(
+            maxConnectionsPerRoute > 0 ? maxConnectionsPerRoute : DEFAULT_MAX_CONNECTIONS_PER_ROUTE,
+            connectTimeoutSeconds > 0 ? connectTimeoutSeconds : DEFAULT_CONNECT_TIMEOUT_SECONDS,
+            readTimeoutSeconds > 0 ? readTimeoutSeconds : DEFAULT_READ_TIMEOUT_SECONDS);
+        try {
+            previous.httpClient.close();
+        } catch (IOException ex) {
+            log.debug("Unable to close the HTTP client: {}", ex.getMessage());
+        }
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    public int getConnectTimeoutSeconds() {
+        return connectTimeoutSeconds;
+    }
+
+    public int getReadTimeoutSeconds() {
+        return readTimeoutSeconds;
+    }
+}
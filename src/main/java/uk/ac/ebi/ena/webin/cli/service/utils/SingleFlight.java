@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service.utils;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import uk.ac.ebi.ena.webin.cli.WebinCliException;
+
+/**
+ * Coalesces concurrent calls with the same key into one call. The first caller executes the call and the callers
+ * arriving while the call is in flight wait for it and receive the same result or exception. Results are not
+ * kept after the call has completed.
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+    private final AtomicInteger waitingCalls = new AtomicInteger();
+
+    public static class Call<V> {
+        private final V value;
+        private final boolean coalesced;
+
+        private Call(V value, boolean coalesced) {
+            this.value = value;
+            this.coalesced = coalesced;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        /**
+         * Returns true if the value was returned by a call executed by another caller.
+         */
+        public boolean isCoalesced() {
+            return coalesced;
+        }
+    }
+
+    /**
+     * Executes the call, or waits for the identical call already in flight.
+     */
+    public Call<V> execute(K key, Supplier<V> supplier) {
+        CompletableFuture<V> call = new CompletableFuture<>();
+        CompletableFuture<V> inFlightCall = calls.putIfAbsent(key, call);
+        if (inFlightCall != null) {
+            waitingCalls.incrementAndGet();
+            try {
+                return new Call<>(join(inFlightCall), true);
+            } finally {
+                waitingCalls.decrementAndGet();
+            }
+        }
+
+        try {
+            V value = supplier.get();
+            call.complete(value);
+            return new Call<>(value, false);
+        } catch (RuntimeException | Error ex) {
+            call.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            calls.remove(key, call);
+        }
+    }
+
+    /**
+     * Returns the number of callers waiting for a call executed by another caller.
+     */
+    int getWaitingCalls() {
+        return waitingCalls.get();
+    }
+
+    private static <V> V join(CompletableFuture<V> call) {
+        try {
+            return call.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw WebinCliException.systemError(ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw (Error) ex.getCause();
+        }
+    }
+}
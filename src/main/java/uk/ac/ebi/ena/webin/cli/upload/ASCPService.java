@@ -12,18 +12,30 @@ package uk.ac.ebi.ena.webin.cli.upload;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 import uk.ac.ebi.ena.webin.cli.WebinCliException;
 import uk.ac.ebi.ena.webin.cli.WebinCliMessage;
 import uk.ac.ebi.ena.webin.cli.utils.RetryUtils;
-import uk.ac.ebi.ena.webin.cli.utils.ShellExec;
+import uk.ac.ebi.ena.webin.cli.utils.ProcessRunner;
 
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 
 public class ASCPService implements UploadService
@@ -33,15 +45,105 @@ public class ASCPService implements UploadService
     private static final Logger log = LoggerFactory.getLogger(ASCPService.class);
 
     private static final String EXECUTABLE = "ascp";
+    private static final long AVAILABILITY_TIMEOUT_SECONDS = 30;
+    /** Progress line written by ascp, for example: "reads.fastq.gz  45%  450MB  120Mb/s  00:10 ETA". */
+    private static final Pattern PROGRESS_PATTERN = Pattern.compile( "^\\s*(\\S+)\\s+(\\d{1,3})%\\s+\\S+\\s+\\S+.*$" );
+    /** Target rate value that lets ascp use the server target rate and adapt to the available bandwidth. */
+    public static final String AUTO_RATE = "auto";
+    private static final Pattern RATE_PATTERN = Pattern.compile( "^(\\d+)([KMG]?)$", Pattern.CASE_INSENSITIVE );
+
+    /** The result of the ascp availability check shared by all instances. */
+    private static volatile Boolean available;
+
+    private final int sessions;
+    private final String rate;
     private String userName;
     private String password;
+    private UploadProgress uploadProgress;
+
+
+    public static class
+    Builder
+    {
+        private int sessions = 1;
+        private String rate = "300M";
+
+        /**
+         * The number of concurrent ascp sessions between which the files are divided.
+         */
+        public Builder
+        setSessions( int sessions )
+        {
+            this.sessions = sessions;
+            return this;
+        }
+
+
+        /**
+         * The total target transfer rate in bits per second with an optional K, M or G suffix, or
+         * {@link #AUTO_RATE} to use the server target rate adapting to the available bandwidth.
+         */
+        public Builder
+        setRate( String rate )
+        {
+            this.rate = rate;
+            return this;
+        }
 
+
+        public ASCPService
+        build()
+        {
+            return new ASCPService( this );
+        }
+    }
+
+
+    public
+    ASCPService()
+    {
+        this( new Builder() );
+    }
+
+
+    protected
+    ASCPService( Builder builder )
+    {
+        this.sessions = Math.max( 1, builder.sessions );
+        this.rate = null == builder.rate ? AUTO_RATE : builder.rate.trim();
+        if( !AUTO_RATE.equalsIgnoreCase( this.rate ) && !RATE_PATTERN.matcher( this.rate ).matches() )
+            throw WebinCliException.userError( WebinCliMessage.ASCP_RATE_ERROR.format( this.rate ) );
+    }
+
+
+    /**
+     * Checks if ascp is available. The check is done only once.
+     */
     @Override public boolean
     isAvailable()
+    {
+        if( null == available )
+        {
+            synchronized( ASCPService.class )
+            {
+                if( null == available )
+                    available = checkAvailable();
+            }
+        }
+        return available;
+    }
+
+
+    private static boolean
+    checkAvailable()
     {
         try
         {            
-            int exitVal = new ShellExec( EXECUTABLE + " -h", new HashMap<String, String>()  { private static final long serialVersionUID = 1L; { put( "PATH", System.getenv( "PATH" ) ); } } ).exec();
+            int exitVal = new ProcessRunner.Builder()
+                .setCommand( Arrays.asList( EXECUTABLE, "-h" ) )
+                .setTimeout( AVAILABILITY_TIMEOUT_SECONDS, TimeUnit.SECONDS )
+                .build()
+                .run();
             if( 0 != exitVal )
                 return false;
             
@@ -51,6 +153,86 @@ public class ASCPService implements UploadService
         }
         return true;
     }
+
+
+    /**
+     * Returns the ascp target rate option for one session, or null to use the server target rate. The rate is
+     * also limited by the share of the {@link BandwidthLimiter} total rate allocated to the session and by the
+     * {@link BandwidthLimiter} connection rate.
+     *
+     * @param totalShare the share of the total rate in bits per second allocated to the session, or zero if the
+     *                   total rate is not limited
+     */
+    String
+    getSessionRate( long totalShare )
+    {
+        long kbps = 0;
+        if( !AUTO_RATE.equalsIgnoreCase( rate ) )
+        {
+            Matcher matcher = RATE_PATTERN.matcher( rate );
+            matcher.matches();
+            kbps = Long.parseLong( matcher.group( 1 ) );
+            switch( matcher.group( 2 ).toUpperCase() )
+            {
+                case "":  kbps = kbps / 1000; break;
+                case "M": kbps = kbps * 1000; break;
+                case "G": kbps = kbps * 1000_000; break;
+                default: break;
+            }
+        }
+
+        long sessionKbps = 0 == kbps ? 0 : Math.max( 1, kbps / sessions );
+        sessionKbps = minRate( sessionKbps, toKbps( totalShare ) );
+        sessionKbps = minRate( sessionKbps, toKbps( BandwidthLimiter.getInstance().getConnectionRate() ) );
+        return 0 == sessionKbps ? null : sessionKbps + "K";
+    }
+
+
+    private static long
+    toKbps( long bps )
+    {
+        return 0 == bps ? 0 : Math.max( 1, bps / 1000 );
+    }
+
+
+    /**
+     * Returns the lower of the rates where zero means unlimited.
+     */
+    private static long
+    minRate( long rate1, long rate2 )
+    {
+        if( 0 == rate1 )
+            return rate2;
+        if( 0 == rate2 )
+            return rate1;
+        return Math.min( rate1, rate2 );
+    }
+
+
+    /**
+     * Divides the files between the sessions so that each session uploads about the same number of bytes.
+     */
+    List<List<File>>
+    divideFiles( List<File> uploadFilesList )
+    {
+        int sessionCount = Math.min( sessions, uploadFilesList.size() );
+        List<List<File>> sessionFiles = new ArrayList<>();
+        long[] sessionBytes = new long[ sessionCount ];
+        for( int i = 0; i < sessionCount; ++i )
+            sessionFiles.add( new ArrayList<>() );
+
+        uploadFilesList.stream()
+            .sorted( Comparator.comparingLong( File::length ).reversed() )
+            .forEach( file -> {
+                int session = 0;
+                for( int i = 1; i < sessionCount; ++i )
+                    if( sessionBytes[ i ] < sessionBytes[ session ] )
+                        session = i;
+                sessionFiles.get( session ).add( file );
+                sessionBytes[ session ] += file.length();
+            } );
+        return sessionFiles;
+    }
     
     
     @Override public void
@@ -74,22 +256,26 @@ public class ASCPService implements UploadService
     }
     
        
-    private String[] 
-    getCommand( Path file_list, Path inputDir, String uploadDir )
-    {
-        return new String[] { EXECUTABLE, 
-                              "--file-checksum=md5",
-                              "-d",
-                              "--mode=send",
-                              "--overwrite=always",
-                              "-QT",
-                              "-l300M",
-                              //"-L-",
-                              String.format("--host=%s", SERVER),
-                              String.format( "--user=\"%s\"", this.userName ),
-                              String.format( "--src-base=\"%s\"", inputDir.normalize().toString().replaceAll( " ", "\\\\ " ) ),
-                              String.format( "--file-list=\"%s\"", file_list ),
-                              String.format( "\"%s\"", uploadDir ) };
+    private List<String>
+    getCommand( Path file_list, Path inputDir, String uploadDir, String sessionRate )
+    {
+        List<String> command = new ArrayList<>( Arrays.asList( EXECUTABLE,
+                                                               "--file-checksum=md5",
+                                                               "-d",
+                                                               "--mode=send",
+                                                               "--overwrite=always",
+                                                               "-QT" ) );
+        // Without a target rate ascp uses the server target rate.
+        if( null != sessionRate )
+            command.add( "-l" + sessionRate );
+        //command.add( "-L-" );
+        command.add( String.format("--host=%s", SERVER) );
+        // The arguments are passed to ascp without a shell and must not be quoted.
+        command.add( String.format( "--user=%s", this.userName ) );
+        command.add( String.format( "--src-base=%s", inputDir.normalize() ) );
+        command.add( String.format( "--file-list=%s", file_list ) );
+        command.add( uploadDir );
+        return command;
     }
     
     
@@ -100,28 +286,122 @@ public class ASCPService implements UploadService
     {
         log.info("Uploading files to : {}", SERVER);
 
+        List<List<File>> sessionFiles = divideFiles( uploadFilesList );
+        // The total rate is shared with the ascp sessions of the other submissions in this process.
+        BandwidthLimiter.addSessions( Math.max( 1, sessionFiles.size() ) );
+        try
+        {
+            uploadSessions( sessionFiles, uploadFilesList, uploadDir, inputDir );
+        } finally
+        {
+            BandwidthLimiter.removeSessions( Math.max( 1, sessionFiles.size() ) );
+        }
+    }
+
+
+    private void
+    uploadSessions( List<List<File>> sessionFiles, List<File> uploadFilesList, String uploadDir, Path inputDir )
+    {
+        if( 1 >= sessionFiles.size() )
+        {
+            uploadSession( uploadFilesList, uploadDir, inputDir );
+            return;
+        }
+
+        log.info( "Uploading files using {} concurrent Aspera sessions.", sessionFiles.size() );
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool( sessionFiles.size(), runnable -> {
+            Thread thread = new Thread( runnable, "webin-cli-ascp-" + threadNumber.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        } );
+
+        // The log messages are written to the report file of the submission.
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+
+        List<Future<?>> futures = new ArrayList<>();
+        try
+        {
+            for( List<File> files : sessionFiles )
+            {
+                futures.add( executorService.submit( () -> {
+                    if( null != mdc )
+                        MDC.setContextMap( mdc );
+                    try
+                    {
+                        uploadSession( files, uploadDir, inputDir );
+                    } finally {
+                        MDC.clear();
+                    }
+                } ) );
+            }
+
+            for( Future<?> future : futures )
+                future.get();
+
+        } catch( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            throw WebinCliException.systemError(WebinCliMessage.ASCP_UPLOAD_ERROR.text(), ex.getMessage());
+        } catch( ExecutionException ex ) {
+            if( ex.getCause() instanceof WebinCliException )
+                throw (WebinCliException) ex.getCause();
+            throw WebinCliException.systemError(WebinCliMessage.ASCP_UPLOAD_ERROR.text(), ex.getCause().getMessage());
+        } finally {
+            futures.forEach( future -> future.cancel( true ) );
+            executorService.shutdownNow();
+        }
+    }
+
+
+    private void
+    uploadSession( List<File> uploadFilesList, String uploadDir, Path inputDir )
+    {
         try
         {      
             String file_list = createUploadList( uploadFilesList, inputDir );
-            String[] command = getCommand( Files.write( Files.createTempFile( "FILE", "LIST"),
-                                                      file_list.getBytes(), 
-                                                      StandardOpenOption.CREATE, StandardOpenOption.SYNC ),
-                                         inputDir.toAbsolutePath(),
-                                         uploadDir );
+            Path fileListPath = Files.write( Files.createTempFile( "FILE", "LIST"),
+                                             file_list.getBytes(),
+                                             StandardOpenOption.CREATE, StandardOpenOption.SYNC );
             
-            String cmd = String.join(" ", command);
             Map<String, String> vars = new HashMap<>();
             vars.put( "ASPERA_SCP_PASS", this.password );
-            vars.put( "PATH", System.getenv( "PATH" ) );
 
             RetryUtils.executeWithRetry(context -> {
-                int exitVal = new ShellExec( cmd, vars ).exec( true );
+                int exitVal;
+                long totalShare = 0;
+                try
+                {
+                    // The rate of a running ascp session can't be changed.
+                    totalShare = BandwidthLimiter.acquireSessionRate();
+                    List<String> command = getCommand( fileListPath, inputDir.toAbsolutePath(), uploadDir,
+                                                       getSessionRate( totalShare ) );
+                    log.info( "Invoking: {}", String.join( " ", command ) );
+
+                    exitVal = new ProcessRunner.Builder()
+                        .setCommand( command )
+                        .setEnvironment( vars )
+                        .setOutputConsumer( this::processOutput )
+                        .setErrorConsumer( log::warn )
+                        .build()
+                        .run();
+                } catch( InterruptedException ex ) {
+                    // Keep the interrupt so that the upload is not retried after it has been cancelled.
+                    Thread.currentThread().interrupt();
+                    throw ex;
+                } finally
+                {
+                    BandwidthLimiter.releaseSessionRate( totalShare );
+                }
 
                 // Even when the process completes without exception, throw error as long as exit code is not 0 so a
                 // retry can be attempted.
                 if( 0 != exitVal )
                     throw WebinCliException.systemError(WebinCliMessage.ASCP_UPLOAD_ERROR.text());
 
+                if( null != uploadProgress )
+                    uploadFilesList.forEach( uploadProgress::completed );
+
                 return null;
             }, context -> log.warn("Retrying file upload."), Exception.class);
         } catch (WebinCliException ex) {
@@ -132,6 +412,35 @@ public class ASCPService implements UploadService
     }
 
     
+    @Override public void
+    setUploadProgress( UploadProgress uploadProgress )
+    {
+        this.uploadProgress = uploadProgress;
+    }
+
+
+    /**
+     * Updates the upload progress from the ascp progress lines and logs the other lines. The progress lines are
+     * logged if there is no upload progress.
+     */
+    void
+    processOutput( String line )
+    {
+        Matcher matcher = PROGRESS_PATTERN.matcher( line );
+        if( null != uploadProgress && matcher.matches() )
+        {
+            String fileName = matcher.group( 1 );
+            long size = uploadProgress.getSize( fileName );
+            if( 0 <= size )
+            {
+                uploadProgress.update( fileName, size * Math.min( 100, Integer.parseInt( matcher.group( 2 ) ) ) / 100 );
+                return;
+            }
+        }
+        log.info( line );
+    }
+
+
     @Override public void
     disconnect()
     {
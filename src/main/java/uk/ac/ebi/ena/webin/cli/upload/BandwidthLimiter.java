@@ -0,0 +1,368 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.upload;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.ebi.ena.webin.cli.WebinCliException;
+import uk.ac.ebi.ena.webin.cli.WebinCliMessage;
+
+/**
+ * Limits the upload bandwidth of all concurrent transfers in this process using token buckets. The total rate of
+ * all transfers and the rate of each transfer can be limited separately. The total rate can follow a time of day
+ * schedule. The rates can be changed while files are being uploaded.
+ * <p>
+ * Transfers that are not read through a throttled stream, such as ascp sessions, are given a fixed share of the
+ * total rate when they are started. The total rate is divided between all such sessions registered in this process,
+ * and a session waits until its share is available so that the concurrent sessions never exceed the total rate.
+ * <p>
+ * The rates are in bits per second. A rate of zero means unlimited.
+ */
+public class BandwidthLimiter {
+    private static final Logger log = LoggerFactory.getLogger(BandwidthLimiter.class);
+
+    private static final Pattern RATE_PATTERN = Pattern.compile("^(\\d+)([KMG]?)$", Pattern.CASE_INSENSITIVE);
+
+    /** The maximum number of bytes read from the throttled stream before waiting for the tokens. */
+    private static final int MAX_READ_SIZE = 64 * 1024;
+
+    /** The time to wait before checking again if the total rate has changed while waiting for a session rate. */
+    private static final long SESSION_WAIT_MILLIS = 1000;
+
+    private static volatile BandwidthLimiter instance = new BandwidthLimiter();
+
+    /** The sessions are shared by all instances as the running sessions keep their rate when the limits change. */
+    private static final Object sessionLock = new Object();
+    private static int sessions;
+    private static long allocatedSessionRate;
+
+    private final TokenBucket bucket = new TokenBucket();
+
+    private volatile long rate;
+    private volatile long connectionRate;
+    private volatile List<ScheduleEntry> schedule = Collections.emptyList();
+
+    /**
+     * The total rate used from the start time of day until the start time of the next entry.
+     */
+    public static class ScheduleEntry {
+        private final LocalTime startTime;
+        private final long rate;
+
+        public ScheduleEntry(LocalTime startTime, long rate) {
+            this.startTime = startTime;
+            this.rate = rate;
+        }
+
+        public LocalTime getStartTime() {
+            return startTime;
+        }
+
+        public long getRate() {
+            return rate;
+        }
+
+        @Override
+        public String toString() {
+            return startTime + "=" + rate;
+        }
+    }
+
+    public static BandwidthLimiter getInstance() {
+        return instance;
+    }
+
+    /**
+     * Configures the bandwidth limits of this process.
+     *
+     * @param rate the total rate, or null if not limited
+     * @param connectionRate the rate of each transfer, or null if not limited
+     * @param schedule the total rate by time of day, or null to use the total rate at all times
+     */
+    public static void configure(String rate, String connectionRate, String schedule) {
+        BandwidthLimiter limiter = new BandwidthLimiter();
+        limiter.setRate(parseRate(rate));
+        limiter.setConnectionRate(parseRate(connectionRate));
+        limiter.setSchedule(parseSchedule(schedule));
+        instance = limiter;
+    }
+
+    /**
+     * Registers sessions that will acquire their rate using {@link #acquireSessionRate()}. The total rate is divided
+     * between all registered sessions.
+     */
+    public static void addSessions(int count) {
+        synchronized (sessionLock) {
+            sessions += count;
+            sessionLock.notifyAll();
+        }
+    }
+
+    /**
+     * Unregisters the sessions registered using {@link #addSessions(int)}.
+     */
+    public static void removeSessions(int count) {
+        synchronized (sessionLock) {
+            sessions = Math.max(0, sessions - count);
+            sessionLock.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until the share of the total rate of a registered session is not used by the other sessions and
+     * allocates it to a session started now. The share is the total rate divided by the number of registered
+     * sessions. The allocated rate must be released using {@link #releaseSessionRate(long)} when the session ends.
+     *
+     * @return the allocated rate in bits per second, or zero if the total rate is not limited
+     */
+    public static long acquireSessionRate() throws InterruptedException {
+        synchronized (sessionLock) {
+            while (true) {
+                long totalRate = getInstance().getRate();
+                if (0 == totalRate) {
+                    return 0;
+                }
+                long sessionRate = Math.max(1, totalRate / Math.max(1, sessions));
+                if (0 == allocatedSessionRate || allocatedSessionRate + sessionRate <= totalRate) {
+                    allocatedSessionRate += sessionRate;
+                    return sessionRate;
+                }
+                // The total rate may be changed by the schedule without notifying the waiting sessions.
+                sessionLock.wait(SESSION_WAIT_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Releases the rate allocated using {@link #acquireSessionRate()}.
+     */
+    public static void releaseSessionRate(long sessionRate) {
+        synchronized (sessionLock) {
+            allocatedSessionRate = Math.max(0, allocatedSessionRate - sessionRate);
+            sessionLock.notifyAll();
+        }
+    }
+
+    /**
+     * Parses a rate in bits per second with an optional K, M or G suffix.
+     *
+     * @return the rate in bits per second, or zero if the rate is null or empty
+     */
+    public static long parseRate(String rate) {
+        if (rate == null || rate.trim().isEmpty()) {
+            return 0;
+        }
+        Matcher matcher = RATE_PATTERN.matcher(rate.trim());
+        if (!matcher.matches()) {
+            throw WebinCliException.userError(WebinCliMessage.UPLOAD_RATE_ERROR.format(rate));
+        }
+        long bps = Long.parseLong(matcher.group(1));
+        switch (matcher.group(2).toUpperCase()) {
+            case "K": return bps * 1000;
+            case "M": return bps * 1000_000;
+            case "G": return bps * 1000_000_000;
+            default: return bps;
+        }
+    }
+
+    /**
+     * Parses a comma separated list of HH:mm=RATE entries. For example, "07:00=100M,19:00=0" limits the total
+     * rate to 100 Mbit/s during the day and does not limit it overnight.
+     *
+     * @return the schedule entries ordered by start time, or an empty list if the schedule is null or empty
+     */
+    public static List<ScheduleEntry> parseSchedule(String schedule) {
+        if (schedule == null || schedule.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<ScheduleEntry> entries = new ArrayList<>();
+        for (String entry : schedule.split(",")) {
+            String[] values = entry.trim().split("=", 2);
+            if (values.length != 2) {
+                throw WebinCliException.userError(WebinCliMessage.UPLOAD_RATE_SCHEDULE_ERROR.format(schedule));
+            }
+            try {
+                entries.add(new ScheduleEntry(LocalTime.parse(values[0].trim()), parseRate(values[1])));
+            } catch (DateTimeParseException | WebinCliException ex) {
+                throw WebinCliException.userError(WebinCliMessage.UPLOAD_RATE_SCHEDULE_ERROR.format(schedule));
+            }
+        }
+        entries.sort(Comparator.comparing(ScheduleEntry::getStartTime));
+        return entries;
+    }
+
+    /**
+     * Sets the total rate used when there is no schedule.
+     */
+    public void setRate(long rate) {
+        this.rate = Math.max(0, rate);
+        log.debug("Upload bandwidth limit: {}", this);
+    }
+
+    public void setConnectionRate(long connectionRate) {
+        this.connectionRate = Math.max(0, connectionRate);
+        log.debug("Upload bandwidth limit: {}", this);
+    }
+
+    /**
+     * Sets the total rate by time of day. An empty schedule uses the total rate set using {@link #setRate(long)}.
+     */
+    public void setSchedule(List<ScheduleEntry> schedule) {
+        List<ScheduleEntry> entries = new ArrayList<>(schedule);
+        entries.sort(Comparator.comparing(ScheduleEntry::getStartTime));
+        this.schedule = Collections.unmodifiableList(entries);
+        log.debug("Upload bandwidth limit: {}", this);
+    }
+
+    /**
+     * Returns the total rate used when there is no schedule.
+     */
+    public long getDefaultRate() {
+        return rate;
+    }
+
+    public List<ScheduleEntry> getSchedule() {
+        return schedule;
+    }
+
+    public long getConnectionRate() {
+        return connectionRate;
+    }
+
+    /**
+     * Returns the current total rate.
+     */
+    public long getRate() {
+        return getRate(LocalTime.now());
+    }
+
+    long getRate(LocalTime time) {
+        List<ScheduleEntry> entries = schedule;
+        if (entries.isEmpty()) {
+            return rate;
+        }
+        // The last entry of the day applies until the first entry of the next day.
+        ScheduleEntry current = entries.get(entries.size() - 1);
+        for (ScheduleEntry entry : entries) {
+            if (entry.getStartTime().isAfter(time)) {
+                break;
+            }
+            current = entry;
+        }
+        return current.getRate();
+    }
+
+    /**
+     * Returns the stream limiting the rate at which the bytes are read from the given stream. Each stream is
+     * limited by the rate of one transfer and by the total rate shared by all streams.
+     */
+    public InputStream throttle(InputStream inputStream) {
+        return new ThrottledInputStream(inputStream);
+    }
+
+    /**
+     * Waits until the bytes may be transferred.
+     */
+    void acquire(TokenBucket connectionBucket, long bytes) throws InterruptedIOException {
+        long now = System.nanoTime();
+        long waitNanos = Math.max(
+            bucket.take(bytes, getRate() / 8, now),
+            connectionBucket.take(bytes, connectionRate / 8, now));
+        if (waitNanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for upload bandwidth.");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "rate=" + rate +
+            ", connectionRate=" + connectionRate +
+            ", schedule=" + schedule.stream().map(ScheduleEntry::toString).collect(Collectors.joining(","));
+    }
+
+    /**
+     * Token bucket holding at most one second of tokens. Tokens are taken before waiting so that the waiting
+     * transfers are served in order.
+     */
+    static class TokenBucket {
+        private long bytesPerSecond;
+        private double tokens;
+        private long updated = System.nanoTime();
+
+        /**
+         * Takes the tokens for the bytes and returns the time in nanoseconds to wait until the tokens are available.
+         */
+        synchronized long take(long bytes, long bytesPerSecond, long now) {
+            if (bytesPerSecond <= 0) {
+                this.bytesPerSecond = 0;
+                this.tokens = 0;
+                this.updated = now;
+                return 0;
+            }
+            if (this.bytesPerSecond != bytesPerSecond) {
+                this.bytesPerSecond = bytesPerSecond;
+                this.tokens = Math.min(tokens, bytesPerSecond);
+            }
+            tokens = Math.min(bytesPerSecond, tokens + (now - updated) * (double) bytesPerSecond / 1e9);
+            updated = now;
+            tokens -= bytes;
+            return tokens >= 0 ? 0 : (long) (-tokens * 1e9 / bytesPerSecond);
+        }
+    }
+
+    private class ThrottledInputStream extends FilterInputStream {
+        private final TokenBucket connectionBucket = new TokenBucket();
+
+        private ThrottledInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                acquire(connectionBucket, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, Math.min(len, MAX_READ_SIZE));
+            if (read > 0) {
+                acquire(connectionBucket, read);
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,601 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.upload;
+
+import org.apache.commons.net.ftp.FTP;
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPReply;
+import org.apache.commons.net.ftp.FTPSClient;
+import org.apache.commons.net.io.CopyStreamAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.retry.RetryCallback;
+import uk.ac.ebi.ena.webin.cli.WebinCliException;
+import uk.ac.ebi.ena.webin.cli.WebinCliMessage;
+import uk.ac.ebi.ena.webin.cli.utils.ChecksumCache;
+import uk.ac.ebi.ena.webin.cli.utils.ChecksumEngine;
+import uk.ac.ebi.ena.webin.cli.utils.ChecksumInputStream;
+import uk.ac.ebi.ena.webin.cli.utils.RetryUtils;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * An authenticated FTP connection to the Webin file upload area. Each connection has its own working directory
+ * and may be used by one thread at a time.
+ */
+class FtpConnection {
+    private final static String SERVER = "webin2.ebi.ac.uk";
+    private final static int FTP_PORT = 21;
+    private final static int UPLOAD_BUFFER_SIZE = 1024 * 1024;
+    private final static Pattern MD5_PATTERN = Pattern.compile( "\\b[0-9a-fA-F]{32}\\b" );
+    private final FTPSClient ftpClient;
+    private final FtpTransferSettings settings;
+    private final AtomicBoolean uploadResume;
+    /** The command used to get the MD5 checksum of a remote file, or an empty string if not supported. */
+    private String hashCommand;
+    /** True if the MD5 checksum of a byte range of a remote file can be requested using RANG and HASH. */
+    private Boolean rangeHash;
+    private final Set<String> remoteDirs;
+    private UploadProgress uploadProgress;
+    /** True if the connection has been closed. A file being uploaded is abandoned and no new uploads are started. */
+    private volatile boolean disconnected;
+
+    private static final Logger log = LoggerFactory.getLogger(FtpConnection.class);
+
+    /**
+     * @param uploadResume resume failed file uploads from the size of the partially uploaded remote file, shared
+     *                     between the connections so that resume is disabled for all of them if the server
+     *                     refuses it
+     * @param remoteDirs the directories relative to the upload directory known to exist, shared between the
+     *                   connections uploading to the same upload directory
+     * @param settings the connection and transfer settings
+     */
+    FtpConnection(AtomicBoolean uploadResume, Set<String> remoteDirs, FtpTransferSettings settings) {
+        this.uploadResume = uploadResume;
+        this.remoteDirs = remoteDirs;
+        this.settings = settings;
+        this.ftpClient = settings.createClient();
+    }
+
+    void setUploadProgress(UploadProgress uploadProgress) {
+        this.uploadProgress = uploadProgress;
+    }
+
+    void connect(String userName, String password) {
+        checkNotDisconnected();
+        try {
+            settings.apply(ftpClient);
+
+            log.info("Connecting to FTP server : {}", SERVER);
+
+            RetryUtils.executeWithRetry((RetryCallback<Void, Exception>) context -> {
+                ftpClient.connect(SERVER, FTP_PORT);
+                return null;
+            }, context -> log.warn("Retrying connecting to FTP server."), SocketException.class, IOException.class);
+        } catch (Exception e) {
+            throw WebinCliException.systemError(WebinCliMessage.FTP_CONNECT_ERROR.text(), e.getMessage());
+        }
+
+        try {
+            RetryUtils.executeWithRetry((RetryCallback<Void, Exception>) context -> {
+                if (!ftpClient.login(userName, password))
+                    throw WebinCliException.userError(WebinCliMessage.SERVICE_AUTHENTICATION_ERROR.format("FTP"));
+                return null;
+            }, context -> log.warn("Retrying FTP server login."), IOException.class);
+        } catch (WebinCliException e) {
+            throw e;
+        } catch (Exception e) {
+            throw WebinCliException.systemError(WebinCliMessage.FTP_SERVER_ERROR.text(), e.getMessage());
+        }
+    }
+
+    
+    /**
+     * Changes the working directory to the upload directory creating it if necessary.
+     */
+    void
+    changeToUploadDir( String uploadDir ) throws IOException
+    {
+        ftpClient.enterLocalPassiveMode();
+
+        try {
+            RetryUtils.executeWithRetry((RetryCallback<Void, Exception>) context -> {
+                if( !ftpClient.setFileType( FTP.BINARY_FILE_TYPE ) )
+                    throw WebinCliException.systemError( WebinCliMessage.FTP_SERVER_ERROR.text() );
+                return null;
+            }, context -> log.warn("Retrying setting file type on FTP server."), IOException.class);
+        } catch (WebinCliException e) {
+            throw e;
+        } catch (Exception ex) {
+            throw WebinCliException.systemError(WebinCliMessage.FTP_SERVER_ERROR.text(), ex.getMessage());
+        }
+
+        changeToSubdir( Paths.get( uploadDir ) );
+    }
+
+
+    /**
+     * Deletes the files in the working directory except for the given files.
+     */
+    void
+    deleteFiles( Set<String> keepFileNames ) throws Exception
+    {
+        FTPFile[] deleteFilesList = RetryUtils.executeWithRetry(
+            (RetryCallback<FTPFile[], Exception>) context -> ftpClient.listFiles(),
+            context -> log.warn("Retrying retrieving file list from FTP server."), IOException.class);
+
+        if( deleteFilesList != null && deleteFilesList.length > 0 )
+        {
+            for( FTPFile ftpFile: deleteFilesList )
+                if( !keepFileNames.contains( ftpFile.getName() ) )
+                    RetryUtils.executeWithRetry(
+                        (RetryCallback<Boolean, Exception>) context -> ftpClient.deleteFile( ftpFile.getName()),
+                        context -> log.warn("Retrying file deletion on FTP server."), IOException.class);
+        }
+    }
+
+
+    /**
+     * Uploads the file.
+     *
+     * @param incremental skip the file if it has already been uploaded, or resume the upload of a partially
+     *                    uploaded file. Both require that the server can confirm the MD5 checksum of the
+     *                    uploaded data.
+     */
+    void
+    storeFile(Path local, Path remote, boolean incremental) throws IOException
+    {
+        // The file is stored using its path relative to the upload directory without changing the working
+        // directory. Only the directories not yet known to exist are created.
+        Path subdir = 1 == remote.getNameCount() ? Paths.get( "." ): remote.subpath( 0, remote.getNameCount() - 1 );
+        String remoteFileName = toRemotePath( remote );
+
+        makeDirectories( subdir );
+
+        try {
+            if( incremental && isUploaded( local, remoteFileName ) )
+            {
+                log.info( "Skipping already uploaded file: {}", local );
+            }
+            else
+            {
+                log.info( "Uploading file: {}", local );
+
+                RetryUtils.executeWithRetry((RetryCallback<Void, Exception>) context -> {
+                    checkNotDisconnected();
+                    // In case of a retry, the upload is resumed from the size of the partially uploaded remote file
+                    // if the server supports it. Otherwise, the entire file is re-uploaded from the beginning.
+                    // A remote file left by an earlier run is resumed only if its contents match the local file.
+                    long offset = 0 < context.getRetryCount() ? getRestartOffset( local, remoteFileName, false )
+                                : incremental ? getRestartOffset( local, remoteFileName, true ) : 0;
+                    uploadFile( local, remoteFileName, offset );
+                    return null;
+                }, context -> log.warn("Retrying file upload to FTP server."), IOException.class);
+            }
+        } catch (WebinCliException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw WebinCliException.systemError( WebinCliMessage.FTP_SERVER_ERROR.text(), ex.getMessage());
+        }
+    }
+
+
+    private void
+    uploadFile( Path local, String remoteFileName, long offset ) throws IOException
+    {
+        try( ChecksumInputStream fileInputStream = new ChecksumInputStream(
+            new BufferedInputStream( Files.newInputStream( local ), UPLOAD_BUFFER_SIZE ), "MD5" ) )
+        {
+            // The bytes uploaded before the restart offset are read locally so that they are included
+            // in the checksum.
+            long skipped = 0;
+            byte[] buffer = new byte[ UPLOAD_BUFFER_SIZE ];
+            while( skipped < offset )
+            {
+                int read = fileInputStream.read( buffer, 0, (int) Math.min( buffer.length, offset - skipped ) );
+                if( read < 0 )
+                    throw WebinCliException.systemError( WebinCliMessage.FTP_UPLOAD_CHANGED_FILE_ERROR.format( local.toString() ) );
+                skipped += read;
+            }
+
+            if( null != uploadProgress )
+            {
+                File file = local.toFile();
+                ftpClient.setCopyStreamListener( new CopyStreamAdapter() {
+                    @Override public void
+                    bytesTransferred( long totalBytesTransferred, int bytesTransferred, long streamSize )
+                    {
+                        uploadProgress.update( file, offset + totalBytesTransferred );
+                    }
+                } );
+            }
+
+            // The socket writes can't be interrupted. The upload is abandoned when the next block is read after the
+            // connection has been closed by another thread.
+            InputStream inputStream = new FilterInputStream( BandwidthLimiter.getInstance().throttle( fileInputStream ) ) {
+                @Override public int
+                read() throws IOException
+                {
+                    checkReadable();
+                    return super.read();
+                }
+
+                @Override public int
+                read( byte[] b, int off, int len ) throws IOException
+                {
+                    checkReadable();
+                    return super.read( b, off, len );
+                }
+
+                private void
+                checkReadable() throws IOException
+                {
+                    if( disconnected )
+                        throw new IOException( WebinCliMessage.FTP_UPLOAD_CANCELLED_ERROR.text() );
+                }
+            };
+
+            ftpClient.setRestartOffset( offset );
+            if( !ftpClient.storeFile( remoteFileName, inputStream ) )
+            {
+                if( 0 < offset )
+                {
+                    log.warn( "The FTP server refused to resume the upload. Uploading the entire file: {}", local );
+                    uploadResume.set( false );
+                    uploadFile( local, remoteFileName, 0 );
+                    return;
+                }
+                throw WebinCliException.systemError( WebinCliMessage.FTP_UPLOAD_ERROR.format( remoteFileName ) );
+            }
+
+            verifyChecksum( local, fileInputStream );
+        }
+
+        long remoteSize = getRemoteSize( remoteFileName );
+        if( 0 <= remoteSize && remoteSize != local.toFile().length() )
+            // The upload is retried and resumed from the size of the remote file.
+            throw new IOException( "The uploaded file size " + remoteSize + " does not match the file size "
+                + local.toFile().length() + ": " + local );
+    }
+
+
+    /**
+     * Returns the size of the partially uploaded remote file from which the upload can be resumed,
+     * or 0 if the upload can't be resumed.
+     *
+     * @param verify resume only if the MD5 checksum of the remote file is the same as the checksum of the
+     *               same number of bytes of the local file
+     */
+    private long
+    getRestartOffset( Path local, String remoteFileName, boolean verify ) throws IOException
+    {
+        if( !uploadResume.get() )
+            return 0;
+
+        long remoteSize = getRemoteSize( remoteFileName );
+        if( 0 >= remoteSize || remoteSize >= local.toFile().length() )
+            return 0;
+
+        if( verify )
+        {
+            String remoteDigest = getRemoteMd5( remoteFileName, remoteSize );
+            if( null == remoteDigest )
+            {
+                log.info( "Unable to verify the partially uploaded file. Uploading the entire file: {}", local );
+                return 0;
+            }
+            if( !remoteDigest.equalsIgnoreCase( getLocalMd5( local, remoteSize ) ) )
+            {
+                log.info( "The partially uploaded file has changed. Uploading the entire file: {}", local );
+                return 0;
+            }
+        }
+
+        log.info( "Resuming upload of file: {} from byte: {}", local, remoteSize );
+        return remoteSize;
+    }
+
+
+    /**
+     * Returns true if the remote file has the same size and MD5 checksum as the local file. Returns false if the
+     * server supports neither the HASH nor the XMD5 command.
+     */
+    private boolean
+    isUploaded( Path local, String remoteFileName ) throws IOException
+    {
+        if( getRemoteSize( remoteFileName ) != local.toFile().length() )
+            return false;
+
+        String remoteDigest = getRemoteMd5( remoteFileName );
+        if( null == remoteDigest )
+        {
+            log.info( "Unable to verify the already uploaded file. Uploading the file again: {}", local );
+            return false;
+        }
+        return remoteDigest.equalsIgnoreCase( ChecksumEngine.getInstance().getDigest( "MD5", local.toFile() ) );
+    }
+
+
+    /**
+     * Returns the MD5 checksum of the remote file using HASH or XMD5, or null if the server supports neither.
+     */
+    private String
+    getRemoteMd5( String remoteFileName ) throws IOException
+    {
+        String command = getHashCommand();
+        if( command.isEmpty() || !FTPReply.isPositiveCompletion( ftpClient.sendCommand( command, remoteFileName ) ) )
+            return null;
+
+        Matcher matcher = MD5_PATTERN.matcher( ftpClient.getReplyString() );
+        return matcher.find() ? matcher.group() : null;
+    }
+
+
+    /**
+     * Returns the command used to get the MD5 checksum of a remote file, or an empty string if not supported.
+     */
+    private String
+    getHashCommand() throws IOException
+    {
+        if( null == hashCommand )
+        {
+            if( ftpClient.hasFeature( "HASH" ) && FTPReply.isPositiveCompletion( ftpClient.sendCommand( "OPTS", "HASH MD5" ) ) )
+                hashCommand = "HASH";
+            else if( ftpClient.hasFeature( "XMD5" ) )
+                hashCommand = "XMD5";
+            else
+                hashCommand = "";
+        }
+        return hashCommand;
+    }
+
+
+    /**
+     * Returns the MD5 checksum of the first bytes of the remote file using RANG and HASH, or null if the server does
+     * not support them or does not confirm the requested range.
+     */
+    private String
+    getRemoteMd5( String remoteFileName, long length ) throws IOException
+    {
+        if( null == rangeHash )
+            rangeHash = "HASH".equals( getHashCommand() ) && ftpClient.hasFeature( "RANG" );
+
+        // The range is inclusive and is used by the next command only. The checksum is used only if the reply
+        // confirms the requested range.
+        String range = "0-" + ( length - 1 );
+        if( !rangeHash
+            || !FTPReply.isPositiveIntermediate( ftpClient.sendCommand( "RANG", "0 " + ( length - 1 ) ) )
+            || !FTPReply.isPositiveCompletion( ftpClient.sendCommand( "HASH", remoteFileName ) ) )
+            return null;
+
+        String reply = ftpClient.getReplyString();
+        if( !reply.contains( " " + range + " " ) )
+            return null;
+
+        Matcher matcher = MD5_PATTERN.matcher( reply );
+        return matcher.find() ? matcher.group() : null;
+    }
+
+
+    /**
+     * Returns the MD5 checksum of the first bytes of the local file.
+     */
+    private static String
+    getLocalMd5( Path local, long length ) throws IOException
+    {
+        try( ChecksumInputStream fileInputStream = new ChecksumInputStream(
+            new BufferedInputStream( Files.newInputStream( local ), UPLOAD_BUFFER_SIZE ), "MD5" ) )
+        {
+            long read = 0;
+            byte[] buffer = new byte[ UPLOAD_BUFFER_SIZE ];
+            while( read < length )
+            {
+                int n = fileInputStream.read( buffer, 0, (int) Math.min( buffer.length, length - read ) );
+                if( n < 0 )
+                    return null;
+                read += n;
+            }
+            return fileInputStream.getDigest();
+        }
+    }
+
+
+    /**
+     * Returns the size of the remote file using MLST or SIZE, or -1 if the size is not available.
+     */
+    private long
+    getRemoteSize( String remoteFileName ) throws IOException
+    {
+        FTPFile ftpFile = ftpClient.mlistFile( remoteFileName );
+        if( null != ftpFile && 0 <= ftpFile.getSize() )
+            return ftpFile.getSize();
+
+        if( FTPReply.FILE_STATUS == ftpClient.sendCommand( "SIZE", remoteFileName ) )
+        {
+            String[] reply = ftpClient.getReplyString().trim().split( "\\s+" );
+            try {
+                return Long.parseLong( reply[ reply.length - 1 ] );
+            } catch( NumberFormatException ex ) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * The MD5 checksum is calculated while the file is uploaded. If the checksum has already been calculated then
+     * the uploaded data must have the same checksum. Otherwise, the checksum is cached and is not calculated again
+     * when the submission xmls are written.
+     */
+    private void
+    verifyChecksum(Path local, ChecksumInputStream fileInputStream)
+    {
+        File file = local.toFile();
+        if( fileInputStream.getCount() != file.length() )
+            throw WebinCliException.systemError( WebinCliMessage.FTP_UPLOAD_CHANGED_FILE_ERROR.format( local.toString() ) );
+
+        String digest = fileInputStream.getDigest();
+        ChecksumCache checksumCache = ChecksumCache.getInstance();
+        String cachedDigest = checksumCache.getCachedDigest( "MD5", file );
+        if( cachedDigest == null )
+            checksumCache.putDigest( "MD5", file, digest );
+        else if( !cachedDigest.equalsIgnoreCase( digest ) )
+            throw WebinCliException.systemError( WebinCliMessage.FTP_UPLOAD_CHANGED_FILE_ERROR.format( local.toString() ) );
+    }
+
+
+    /**
+     * Creates the directories relative to the upload directory that are not yet known to exist.
+     */
+    private void
+    makeDirectories( Path subdir )
+    {
+        for( int l = 1; l <= subdir.getNameCount(); ++l )
+        {
+            String dirName = subdir.getName( l - 1 ).toString();
+            if( dirName.equals( "." ) )
+                continue;
+
+            if( dirName.equals( ".." ) )
+                throw WebinCliException.systemError( WebinCliMessage.FTP_CHANGE_DIR_ERROR.format(dirName) );
+
+            String dir = toRemotePath( subdir.subpath( 0, l ) );
+            if( remoteDirs.contains( dir ) )
+                continue;
+
+            String parentDir = 1 == l ? "" : toRemotePath( subdir.subpath( 0, l - 1 ) );
+            try {
+                RetryUtils.executeWithRetry((RetryCallback<Void, Exception>) context -> {
+                    // The directory may already exist or have been created by another connection.
+                    if( !ftpClient.makeDirectory( dir )
+                        && Stream.of( parentDir.isEmpty() ? ftpClient.listDirectories() : ftpClient.listDirectories( parentDir ) )
+                            .noneMatch(f -> dirName.equals( f.getName() ) ) )
+                        throw WebinCliException.systemError( WebinCliMessage.FTP_CREATE_DIR_ERROR.format(dir) );
+                    return null;
+                }, context -> log.warn("Retrying directory creation on FTP server."), IOException.class);
+            } catch (WebinCliException e) {
+                throw e;
+            } catch (Exception ex) {
+                throw WebinCliException.systemError(WebinCliMessage.FTP_SERVER_ERROR.text(), ex.getMessage());
+            }
+            remoteDirs.add( dir );
+        }
+    }
+
+
+    private static String
+    toRemotePath( Path path )
+    {
+        StringBuilder remotePath = new StringBuilder();
+        for( Path name : path )
+        {
+            if( name.toString().equals( "." ) )
+                continue;
+            if( 0 < remotePath.length() )
+                remotePath.append( '/' );
+            remotePath.append( name );
+        }
+        return remotePath.toString();
+    }
+
+
+    private int
+    changeToSubdir( Path subdir ) throws IOException
+    {
+        int level = 0;
+        for( int l = 0; l < subdir.getNameCount(); ++l )
+        {
+            String dir = subdir.subpath( l, l + 1 ).getFileName().toString();
+
+            if( dir.equals( "." ) )
+                continue;
+
+            if( dir.equals( ".." ) )
+            {
+                throw WebinCliException.systemError( WebinCliMessage.FTP_CHANGE_DIR_ERROR.format(dir) );
+            }
+
+            try {
+                FTPFile[] ftpDirs = RetryUtils.executeWithRetry(
+                    (RetryCallback<FTPFile[], Exception>) context -> ftpClient.listDirectories(),
+                    context -> log.warn("Retrying retrieving directory list from FTP server."), IOException.class);
+
+                if(Stream.of( ftpDirs ).noneMatch(f -> dir.equals( f.getName() ) ))
+                {
+                    RetryUtils.executeWithRetry((RetryCallback<Void, Exception>) context -> {
+                        // The directory may have been created by another connection.
+                        if( !ftpClient.makeDirectory( dir )
+                            && Stream.of( ftpClient.listDirectories() ).noneMatch(f -> dir.equals( f.getName() ) ) )
+                            throw WebinCliException.systemError( WebinCliMessage.FTP_CREATE_DIR_ERROR.format(dir) );
+                        return null;
+                    }, context -> log.warn("Retrying directory creation on FTP server."), IOException.class);
+                }
+
+                RetryUtils.executeWithRetry((RetryCallback<Void, Exception>) context -> {
+                    if( !ftpClient.changeWorkingDirectory( dir ) )
+                        throw WebinCliException.systemError( WebinCliMessage.FTP_CHANGE_DIR_ERROR.format(dir) );
+                    return null;
+                }, context -> log.warn("Retrying changing working directory on FTP server."), IOException.class);
+
+                level ++;
+            } catch (WebinCliException e) {
+                throw e;
+            } catch (Exception ex) {
+                throw WebinCliException.systemError(WebinCliMessage.FTP_SERVER_ERROR.text(), ex.getMessage());
+            }
+        }
+        return level;
+    }
+    
+    
+    boolean
+    isConnected()
+    {
+        return ftpClient.isConnected();
+    }
+
+
+    /**
+     * Closes the connection. May be called by another thread to cancel the upload in progress.
+     */
+    void
+    disconnect()
+    {
+        disconnected = true;
+        try
+        {
+            if(ftpClient.isConnected())
+                ftpClient.disconnect();
+        } catch (IOException e) {}
+    }
+
+
+    private void
+    checkNotDisconnected()
+    {
+        if( disconnected )
+            throw WebinCliException.systemError( WebinCliMessage.FTP_UPLOAD_CANCELLED_ERROR.text() );
+    }
+}
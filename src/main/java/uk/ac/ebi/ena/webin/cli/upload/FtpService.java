@@ -10,202 +10,295 @@
  */
 package uk.ac.ebi.ena.webin.cli.upload;
 
-import org.apache.commons.net.ftp.FTP;
-import org.apache.commons.net.ftp.FTPFile;
-import org.apache.commons.net.ftp.FTPSClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.retry.RetryCallback;
+import org.slf4j.MDC;
 import uk.ac.ebi.ena.webin.cli.WebinCliException;
 import uk.ac.ebi.ena.webin.cli.WebinCliMessage;
-import uk.ac.ebi.ena.webin.cli.utils.RetryUtils;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
-import java.net.SocketException;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+/**
+ * Uploads files using one or more FTP connections. When more than one connection is used, different files are
+ * uploaded at the same time starting from the largest files.
+ */
 public class FtpService implements UploadService {
-    private final static String SERVER = "webin2.ebi.ac.uk";
-    private final static int FTP_PORT = 21;
-    private final FTPSClient ftpClient = new FTPSClient();
+    /** Resume failed file uploads. Disabled for all connections if the server refuses to resume an upload. */
+    private final AtomicBoolean uploadResume;
+    private final int uploadThreads;
+    private final boolean incrementalUpload;
+    private final FtpTransferSettings settings;
+    private final Set<File> uploadedFiles;
+    /** The connections, closed by {@link #disconnect} which may be called by another thread. */
+    private final List<FtpConnection> connections = new CopyOnWriteArrayList<>();
+    private volatile boolean disconnected;
+    /** The directories relative to the upload directory known to exist. */
+    private final Set<String> remoteDirs = ConcurrentHashMap.newKeySet();
+    private Consumer<File> uploadedFileListener = file -> {};
+    private UploadProgress uploadProgress;
+    private String userName;
+    private String password;
 
     private static final Logger log = LoggerFactory.getLogger(FtpService.class);
 
-    @Override public void connect(String userName, String password) {
-        try {
-            ftpClient.setRemoteVerificationEnabled(false);
-            ftpClient.setActivePortRange(40000, 50000);
-            ftpClient.setConnectTimeout(10_000);
-            ftpClient.setDefaultTimeout(10_000);
-            ftpClient.setDataTimeout(10_000);
-
-            log.info("Connecting to FTP server : {}", SERVER);
-
-            RetryUtils.executeWithRetry((RetryCallback<Void, Exception>) context -> {
-                ftpClient.connect(SERVER, FTP_PORT);
-                return null;
-            }, context -> log.warn("Retrying connecting to FTP server."), SocketException.class, IOException.class);
-        } catch (Exception e) {
-            throw WebinCliException.systemError(WebinCliMessage.FTP_CONNECT_ERROR.text(), e.getMessage());
-        }
+    public static class Builder {
+        private boolean uploadResume = true;
+        private int uploadThreads = 1;
+        private boolean incrementalUpload;
+        private boolean tunedTransfer;
+        private Collection<File> uploadedFiles = Collections.emptySet();
 
-        try {
-            RetryUtils.executeWithRetry((RetryCallback<Void, Exception>) context -> {
-                if (!ftpClient.login(userName, password))
-                    throw WebinCliException.userError(WebinCliMessage.SERVICE_AUTHENTICATION_ERROR.format("FTP"));
-                return null;
-            }, context -> log.warn("Retrying FTP server login."), IOException.class);
-        } catch (WebinCliException e) {
-            throw e;
-        } catch (Exception e) {
-            throw WebinCliException.systemError(WebinCliMessage.FTP_SERVER_ERROR.text(), e.getMessage());
+        /**
+         * Resume failed file uploads from the size of the partially uploaded remote file.
+         */
+        public Builder setUploadResume(boolean uploadResume) {
+            this.uploadResume = uploadResume;
+            return this;
         }
-    }
-
-    
-    private void
-    storeFile(Path local, Path remote) throws IOException
-    {
-        Path subdir = 1 == remote.getNameCount() ? Paths.get( "." ): remote.subpath( 0, remote.getNameCount() - 1 );
 
-        log.info( "Uploading file: {}", local );
+        /**
+         * The maximum number of files uploaded at the same time using separate connections.
+         */
+        public Builder setUploadThreads(int uploadThreads) {
+            this.uploadThreads = uploadThreads;
+            return this;
+        }
 
-        int level = changeToSubdir( subdir );
+        /**
+         * Skip the files that have already been uploaded and delete only the other files in the upload directory.
+         */
+        public Builder setIncrementalUpload(boolean incrementalUpload) {
+            this.incrementalUpload = incrementalUpload;
+            return this;
+        }
 
-        try {
-            RetryUtils.executeWithRetry((RetryCallback<Void, Exception>) context -> {
-                // In case of a retry, the entire file will be re-uploaded from beginning. Hence, the input stream
-                // will need to be re-created as well.
-                try (InputStream fileInputStream = new BufferedInputStream(Files.newInputStream(local))) {
-                    if (!ftpClient.storeFile(remote.getFileName().toString(), fileInputStream))
-                        throw WebinCliException.systemError(WebinCliMessage.FTP_UPLOAD_ERROR.format(remote.getFileName().toString()));
-                }
+        /**
+         * Use large buffers and a control connection keep-alive.
+         */
+        public Builder setTunedTransfer(boolean tunedTransfer) {
+            this.tunedTransfer = tunedTransfer;
+            return this;
+        }
 
-                return null;
-            }, context -> log.warn("Retrying file upload to FTP server."), IOException.class);
+        /**
+         * The files uploaded by an earlier run. They are not uploaded but are kept in the upload directory.
+         */
+        public Builder setUploadedFiles(Collection<File> uploadedFiles) {
+            this.uploadedFiles = uploadedFiles;
+            return this;
+        }
 
-            for( int l = 0; l < level; ++l )
-            {
-                RetryUtils.executeWithRetry((RetryCallback<Void, Exception>) context -> {
-                    if( !ftpClient.changeToParentDirectory() )
-                        throw WebinCliException.systemError( WebinCliMessage.FTP_CHANGE_DIR_ERROR.format("parent") );
-                    return null;
-                }, context -> log.warn("Retrying directory change on FTP server."), IOException.class);
-            }
-        } catch (WebinCliException ex) {
-            throw ex;
-        } catch (Exception ex) {
-            throw WebinCliException.systemError( WebinCliMessage.FTP_SERVER_ERROR.text(), ex.getMessage());
+        public FtpService build() {
+            return new FtpService(this);
         }
     }
 
+    public FtpService() {
+        this(new Builder());
+    }
 
-    private int
-    changeToSubdir( Path subdir ) throws IOException
-    {
-        int level = 0;
-        for( int l = 0; l < subdir.getNameCount(); ++l )
-        {
-            String dir = subdir.subpath( l, l + 1 ).getFileName().toString();
-
-            if( dir.equals( "." ) )
-                continue;
+    protected FtpService(Builder builder) {
+        this.uploadResume = new AtomicBoolean(builder.uploadResume);
+        this.uploadThreads = Math.max(1, builder.uploadThreads);
+        this.incrementalUpload = builder.incrementalUpload;
+        this.settings = builder.tunedTransfer ? FtpTransferSettings.TUNED : FtpTransferSettings.DEFAULT;
+        this.uploadedFiles = new HashSet<>(builder.uploadedFiles);
+    }
 
-            if( dir.equals( ".." ) )
-            {
-                throw WebinCliException.systemError( WebinCliMessage.FTP_CHANGE_DIR_ERROR.format(dir) );
-            }
+    @Override public void connect(String userName, String password) {
+        this.userName = userName;
+        this.password = password;
 
-            try {
-                FTPFile[] ftpDirs = RetryUtils.executeWithRetry(
-                    (RetryCallback<FTPFile[], Exception>) context -> ftpClient.listDirectories(),
-                    context -> log.warn("Retrying retrieving directory list from FTP server."), IOException.class);
-
-                if(Stream.of( ftpDirs ).noneMatch(f -> dir.equals( f.getName() ) ))
-                {
-                    RetryUtils.executeWithRetry((RetryCallback<Void, Exception>) context -> {
-                        if( !ftpClient.makeDirectory( dir ) )
-                            throw WebinCliException.systemError( WebinCliMessage.FTP_CREATE_DIR_ERROR.format(dir) );
-                        return null;
-                    }, context -> log.warn("Retrying directory creation on FTP server."), IOException.class);
-                }
-
-                RetryUtils.executeWithRetry((RetryCallback<Void, Exception>) context -> {
-                    if( !ftpClient.changeWorkingDirectory( dir ) )
-                        throw WebinCliException.systemError( WebinCliMessage.FTP_CHANGE_DIR_ERROR.format(dir) );
-                    return null;
-                }, context -> log.warn("Retrying changing working directory on FTP server."), IOException.class);
+        log.info("FTP transfer settings: {}", settings);
 
-                level ++;
-            } catch (WebinCliException e) {
-                throw e;
-            } catch (Exception ex) {
-                throw WebinCliException.systemError(WebinCliMessage.FTP_SERVER_ERROR.text(), ex.getMessage());
-            }
-        }
-        return level;
+        FtpConnection connection = new FtpConnection(uploadResume, remoteDirs, settings);
+        connection.setUploadProgress(uploadProgress);
+        connections.add(connection);
+        checkNotDisconnected();
+        connection.connect(userName, password);
     }
-    
-    
+
+
     //TODO verbose possible issues with file/folder permissions
     @Override public void
     upload(List<File> uploadFilesList, String uploadDir, Path inputDir )
     {
         if( null == uploadDir || uploadDir.isEmpty() )
             throw WebinCliException.userError( WebinCliMessage.FTP_UPLOAD_DIR_ERROR.text());
+
+        FtpConnection connection = connections.get( 0 );
+        remoteDirs.clear();
         try 
         {
-            ftpClient.enterLocalPassiveMode();
+            connection.changeToUploadDir( uploadDir );
+            // In incremental mode, the files in the upload directory that are part of this submission are kept.
+            // The files uploaded by an earlier run are always kept.
+            Set<String> keepFileNames = Stream.concat(
+                    incrementalUpload ? uploadFilesList.stream() : Stream.empty(), uploadedFiles.stream() )
+                .map( file -> getRemotePath( file, inputDir ) )
+                .filter( remote -> 1 == remote.getNameCount() )
+                .map( Path::toString )
+                .collect( Collectors.toSet() );
+            connection.deleteFiles( keepFileNames );
+        } catch (WebinCliException e) {
+            throw e;
+        } catch (Exception ex) {
+            throw WebinCliException.systemError(WebinCliMessage.FTP_SERVER_ERROR.text(), ex.getMessage());
+        }
 
-            RetryUtils.executeWithRetry((RetryCallback<Void, Exception>) context -> {
-                if( !ftpClient.setFileType( FTP.BINARY_FILE_TYPE ) )
-                    throw WebinCliException.systemError( WebinCliMessage.FTP_SERVER_ERROR.text() );
-                return null;
-            }, context -> log.warn("Retrying setting file type on FTP server."), IOException.class);
-           
-            changeToSubdir( Paths.get( uploadDir ) );
+        // Upload the largest files first so that the connections finish at about the same time.
+        List<File> files = uploadFilesList.stream()
+            .sorted( Comparator.comparingLong( File::length ).reversed() )
+            .collect( Collectors.toList() );
 
-            FTPFile[] deleteFilesList = RetryUtils.executeWithRetry(
-                (RetryCallback<FTPFile[], Exception>) context -> ftpClient.listFiles(),
-                context -> log.warn("Retrying retrieving file list from FTP server."), IOException.class);
+        int threads = Math.min( uploadThreads, files.size() );
+        if( threads <= 1 )
+        {
+            for( File file: files )
+                storeFile( connection, file, inputDir );
+            return;
+        }
 
-            if( deleteFilesList != null && deleteFilesList.length > 0 )
-            {
-                for( FTPFile ftpFile: deleteFilesList )
-                    RetryUtils.executeWithRetry(
-                        (RetryCallback<Boolean, Exception>) context -> ftpClient.deleteFile( ftpFile.getName()),
-                        context -> log.warn("Retrying file deletion on FTP server."), IOException.class);
-            }
-            
-            for( File file: uploadFilesList ) 
+        // The other connections are opened by the upload threads when they are first used.
+        BlockingQueue<FtpConnection> idleConnections = new LinkedBlockingQueue<>();
+        idleConnections.add( connection );
+        for( int i = 1; i < threads; ++i )
+        {
+            FtpConnection otherConnection = new FtpConnection( uploadResume, remoteDirs, settings );
+            otherConnection.setUploadProgress( uploadProgress );
+            connections.add( otherConnection );
+            idleConnections.add( otherConnection );
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool( threads, runnable -> {
+            Thread thread = new Thread( runnable, "webin-cli-ftp-upload-" + threadNumber.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        } );
+
+        // The log messages are written to the report file of the submission.
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+
+        List<Future<?>> futures = new ArrayList<>();
+        try
+        {
+            for( File file: files )
             {
-                Path f = file.isAbsolute() ? file.toPath().startsWith( inputDir ) ? inputDir.relativize( file.toPath() ) 
-                                                                                  : file.toPath().getFileName()
-                                           : file.toPath();
-                storeFile( file.toPath(), f );
+                futures.add( executorService.submit( () -> {
+                    if( mdc != null )
+                        MDC.setContextMap( mdc );
+                    FtpConnection uploadConnection = idleConnections.take();
+                    try
+                    {
+                        if( !uploadConnection.isConnected() )
+                        {
+                            checkNotDisconnected();
+                            uploadConnection.connect( userName, password );
+                            uploadConnection.changeToUploadDir( uploadDir );
+                        }
+                        storeFile( uploadConnection, file, inputDir );
+                    } finally {
+                        idleConnections.add( uploadConnection );
+                        MDC.clear();
+                    }
+                    return null;
+                } ) );
             }
+
+            for( Future<?> future: futures )
+                future.get();
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw WebinCliException.systemError(WebinCliMessage.FTP_SERVER_ERROR.text(), ex.getMessage());
+        } catch (ExecutionException ex) {
+            if( ex.getCause() instanceof WebinCliException )
+                throw (WebinCliException) ex.getCause();
+            throw WebinCliException.systemError(WebinCliMessage.FTP_SERVER_ERROR.text(), ex.getCause().getMessage());
+        } finally {
+            futures.forEach( future -> future.cancel( true ) );
+            executorService.shutdownNow();
+        }
+    }
+
+
+    private static Path
+    getRemotePath( File file, Path inputDir )
+    {
+        return file.isAbsolute() ? file.toPath().startsWith( inputDir ) ? inputDir.relativize( file.toPath() )
+                                                                        : file.toPath().getFileName()
+                                 : file.toPath();
+    }
+
+
+    private void
+    storeFile( FtpConnection connection, File file, Path inputDir )
+    {
+        try
+        {
+            connection.storeFile( file.toPath(), getRemotePath( file, inputDir ), incrementalUpload );
         } catch (WebinCliException e) {
             throw e;
         } catch (Exception ex) {
             throw WebinCliException.systemError(WebinCliMessage.FTP_SERVER_ERROR.text(), ex.getMessage());
         }
+        if( null != uploadProgress )
+            uploadProgress.completed( file );
+        uploadedFileListener.accept( file );
+    }
+
+    @Override public void
+    setUploadProgress( UploadProgress uploadProgress )
+    {
+        this.uploadProgress = uploadProgress;
+        connections.forEach( connection -> connection.setUploadProgress( uploadProgress ) );
     }
 
+    @Override public void
+    setUploadedFileListener( Consumer<File> listener )
+    {
+        this.uploadedFileListener = listener;
+    }
+
+    /**
+     * Closes the connections. May be called by another thread to cancel the upload in progress.
+     */
     @Override public void 
     disconnect() 
     {
-        try 
-        {
-            if(ftpClient.isConnected())
-                ftpClient.disconnect();
-        } catch (IOException e) {}
+        disconnected = true;
+        connections.forEach( FtpConnection::disconnect );
+    }
+
+
+    private void
+    checkNotDisconnected()
+    {
+        if( disconnected )
+            throw WebinCliException.systemError( WebinCliMessage.FTP_UPLOAD_CANCELLED_ERROR.text() );
     }
 
     
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.upload;
+
+import org.apache.commons.net.ftp.FTPSClient;
+
+/**
+ * FTP connection and transfer settings.
+ */
+class FtpTransferSettings {
+    private final static int TIMEOUT = 10_000;
+
+    /** Settings used by default. */
+    static final FtpTransferSettings DEFAULT = new FtpTransferSettings(0, 0, 0);
+
+    /**
+     * Settings for long transfers over high bandwidth-delay product paths: large socket and transfer buffers, and a
+     * control connection keep-alive that prevents the control connection from timing out during multi-hour
+     * transfers.
+     */
+    static final FtpTransferSettings TUNED = new FtpTransferSettings(1024 * 1024, 4 * 1024 * 1024, 300);
+
+    private final int bufferSize;
+    private final int sendBufferSize;
+    private final long controlKeepAliveTimeout;
+
+    /**
+     * @param bufferSize the transfer buffer size in bytes, or 0 for the default
+     * @param sendBufferSize the data socket send buffer size in bytes, or 0 for the default
+     * @param controlKeepAliveTimeout the control connection keep-alive interval during transfers in seconds,
+     *                                or 0 for no keep-alive
+     */
+    FtpTransferSettings(int bufferSize, int sendBufferSize, long controlKeepAliveTimeout) {
+        this.bufferSize = bufferSize;
+        this.sendBufferSize = sendBufferSize;
+        this.controlKeepAliveTimeout = controlKeepAliveTimeout;
+    }
+
+    FTPSClient createClient() {
+        return new FTPSClient();
+    }
+
+    void apply(FTPSClient ftpClient) {
+        ftpClient.setRemoteVerificationEnabled(false);
+        ftpClient.setActivePortRange(40000, 50000);
+        ftpClient.setConnectTimeout(TIMEOUT);
+        ftpClient.setDefaultTimeout(TIMEOUT);
+        ftpClient.setDataTimeout(TIMEOUT);
+
+        if (0 < bufferSize) {
+            ftpClient.setBufferSize(bufferSize);
+        }
+        if (0 < sendBufferSize) {
+            ftpClient.setSendDataSocketBufferSize(sendBufferSize);
+        }
+        if (0 < controlKeepAliveTimeout) {
+            ftpClient.setControlKeepAliveTimeout(controlKeepAliveTimeout);
+            ftpClient.setControlKeepAliveReplyTimeout(TIMEOUT);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "transfer buffer size: " + (0 < bufferSize ? bufferSize + " bytes" : "default")
+            + ", send buffer size: " + (0 < sendBufferSize ? sendBufferSize + " bytes" : "default")
+            + ", control connection keep-alive: " + (0 < controlKeepAliveTimeout ? controlKeepAliveTimeout + " seconds" : "none");
+    }
+}
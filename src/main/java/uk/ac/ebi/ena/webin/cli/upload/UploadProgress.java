@@ -0,0 +1,245 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.upload;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the progress of the files uploaded in one submission. The number of bytes uploaded, the current and
+ * average throughput and the estimated time remaining for each file and for the whole submission are periodically
+ * written to the log and to a JSON progress file.
+ * <p>
+ * The upload services report the number of bytes uploaded for each file. The methods are thread safe.
+ */
+public class UploadProgress implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(UploadProgress.class);
+
+    private static final long DEFAULT_REPORT_INTERVAL_SECONDS = 10;
+
+    private final Map<String, FileProgress> files = new LinkedHashMap<>();
+    private final File progressFile;
+    private final long reportIntervalSeconds;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final long startNanos = System.nanoTime();
+    private ScheduledExecutorService scheduler;
+    private long lastReportNanos = startNanos;
+    private long lastReportBytes;
+
+    private static class FileProgress {
+        private final File file;
+        private final long size;
+        private volatile long bytes;
+        private volatile long startNanos;
+        private volatile boolean completed;
+        private long lastReportBytes;
+
+        private FileProgress(File file) {
+            this.file = file;
+            this.size = file.length();
+        }
+    }
+
+    /**
+     * Progress of one file or of the whole submission written to the progress file.
+     */
+    public static class Progress {
+        public String file;
+        public long bytes;
+        public long size;
+        /** Throughput since the previous report in bytes per second. */
+        public long throughput;
+        /** Average throughput in bytes per second. */
+        public long averageThroughput;
+        /** Estimated time remaining in seconds, or -1 if unknown. */
+        public long eta;
+        public boolean completed;
+        public List<Progress> files;
+    }
+
+    /**
+     * @param files the uploaded files
+     * @param progressFile the JSON progress file, or null if the progress is only logged
+     */
+    public UploadProgress(List<File> files, File progressFile) {
+        this(files, progressFile, DEFAULT_REPORT_INTERVAL_SECONDS);
+    }
+
+    UploadProgress(List<File> files, File progressFile, long reportIntervalSeconds) {
+        files.forEach(file -> this.files.put(file.getPath(), new FileProgress(file)));
+        this.progressFile = progressFile;
+        this.reportIntervalSeconds = reportIntervalSeconds;
+    }
+
+    /**
+     * Starts reporting the progress periodically.
+     */
+    public synchronized void start() {
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "webin-cli-upload-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> {
+            // The progress is written to the report file of the submission.
+            if (mdc != null) {
+                MDC.setContextMap(mdc);
+            }
+            report();
+        }, reportIntervalSeconds, reportIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Sets the number of bytes of the file uploaded so far.
+     */
+    public void update(File file, long bytes) {
+        FileProgress fileProgress = files.get(file.getPath());
+        if (fileProgress != null) {
+            if (fileProgress.startNanos == 0) {
+                fileProgress.startNanos = System.nanoTime();
+            }
+            fileProgress.bytes = bytes;
+        }
+    }
+
+    /**
+     * Sets the number of bytes uploaded so far for the file with the given file name. Used by upload services
+     * that report the progress using file names only.
+     */
+    public void update(String fileName, long bytes) {
+        for (FileProgress fileProgress : files.values()) {
+            if (fileProgress.file.getName().equals(fileName)) {
+                update(fileProgress.file, bytes);
+                return;
+            }
+        }
+    }
+
+    public void completed(File file) {
+        FileProgress fileProgress = files.get(file.getPath());
+        if (fileProgress != null) {
+            update(file, fileProgress.size);
+            fileProgress.completed = true;
+        }
+    }
+
+    /**
+     * Returns the size of the file with the given file name, or -1 if unknown.
+     */
+    public long getSize(String fileName) {
+        return files.values().stream()
+            .filter(fileProgress -> fileProgress.file.getName().equals(fileName))
+            .mapToLong(fileProgress -> fileProgress.size)
+            .findFirst()
+            .orElse(-1);
+    }
+
+    /**
+     * Logs the progress and writes the progress file.
+     */
+    synchronized Progress report() {
+        long nanos = System.nanoTime();
+        double seconds = Math.max(nanos - lastReportNanos, 1) / 1e9;
+
+        Progress total = new Progress();
+        total.files = new ArrayList<>();
+        for (FileProgress fileProgress : files.values()) {
+            long bytes = fileProgress.bytes;
+            Progress progress = new Progress();
+            progress.file = fileProgress.file.getPath();
+            progress.bytes = bytes;
+            progress.size = fileProgress.size;
+            progress.completed = fileProgress.completed;
+            progress.throughput = (long) ((bytes - fileProgress.lastReportBytes) / seconds);
+            progress.averageThroughput = fileProgress.startNanos == 0
+                ? 0 : (long) (bytes / (Math.max(nanos - fileProgress.startNanos, 1) / 1e9));
+            progress.eta = getEta(progress);
+            fileProgress.lastReportBytes = bytes;
+            total.files.add(progress);
+
+            total.bytes += bytes;
+            total.size += fileProgress.size;
+
+            if (0 < bytes && !progress.completed) {
+                log.info("Uploading file: {} {}", progress.file, format(progress));
+            }
+        }
+
+        total.completed = total.files.stream().allMatch(progress -> progress.completed);
+        total.throughput = (long) ((total.bytes - lastReportBytes) / seconds);
+        total.averageThroughput = (long) (total.bytes / (Math.max(nanos - startNanos, 1) / 1e9));
+        total.eta = getEta(total);
+        lastReportBytes = total.bytes;
+        lastReportNanos = nanos;
+
+        log.info("Uploaded files: {}", format(total));
+        writeProgressFile(total);
+        return total;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        report();
+    }
+
+    private static long getEta(Progress progress) {
+        if (progress.completed || progress.bytes >= progress.size) {
+            return 0;
+        }
+        return 0 < progress.averageThroughput ? (progress.size - progress.bytes) / progress.averageThroughput : -1;
+    }
+
+    private static String format(Progress progress) {
+        return String.format("%.1f of %.1f MB (%d%%), %.1f MB/s, average %.1f MB/s, ETA %s",
+            progress.bytes / 1e6,
+            progress.size / 1e6,
+            0 < progress.size ? 100 * progress.bytes / progress.size : 100,
+            progress.throughput / 1e6,
+            progress.averageThroughput / 1e6,
+            0 <= progress.eta
+                ? String.format("%d:%02d:%02d", progress.eta / 3600, progress.eta / 60 % 60, progress.eta % 60)
+                : "unknown");
+    }
+
+    private void writeProgressFile(Progress progress) {
+        if (progressFile == null) {
+            return;
+        }
+        try {
+            // The progress file is replaced atomically so that it can be read at any time.
+            Path tempFile = Files.createTempFile(progressFile.getAbsoluteFile().getParentFile().toPath(), "upload-progress", ".tmp");
+            objectMapper.writeValue(tempFile.toFile(), progress);
+            Files.move(tempFile, progressFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            log.warn("Unable to write the upload progress file: {}", progressFile.getPath());
+        }
+    }
+}
@@ -13,6 +13,7 @@ package uk.ac.ebi.ena.webin.cli.upload;
 import java.io.File;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface
 UploadService
@@ -21,4 +22,15 @@ UploadService
     void upload(List<File> uploadFilesList, String uploadDir, Path inputDir );
     void disconnect();
     boolean isAvailable();
+
+    /**
+     * Sets a listener called after each file has been uploaded. Upload services uploading all files at once do not
+     * call the listener.
+     */
+    default void setUploadedFileListener( Consumer<File> listener ) {}
+
+    /**
+     * Sets the progress updated while the files are uploaded.
+     */
+    default void setUploadProgress( UploadProgress uploadProgress ) {}
 }
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.ebi.ena.webin.cli.WebinCliException;
+
+/**
+ * Caches the checksums of the submitted files to avoid reading large files again when the same files are
+ * validated or submitted more than once. A cached checksum is used only if the canonical path, size, last
+ * modified time and file key (inode) of the file are unchanged.
+ * <p>
+ * By default the checksums are cached in memory only. If a cache file is configured then the checksums are also
+ * appended to the cache file and are available to later runs. The cache file is shared by concurrent runs which
+ * append to and compact the cache file while holding a lock on a separate lock file.
+ */
+public class ChecksumCache {
+    private static final Logger log = LoggerFactory.getLogger(ChecksumCache.class);
+
+    private static final String SEPARATOR = "\t";
+    private static final int COLUMNS = 6;
+    private static final String LOCK_FILE_SUFFIX = ".lock";
+
+    /** File locks are held by the process and can't be used to exclude other threads of this process. */
+    private static final Object FILE_LOCK = new Object();
+
+    private static volatile ChecksumCache instance = new ChecksumCache(null, false);
+
+    private final File cacheFile;
+    private final boolean forceRecompute;
+    private final Map<Key, String> checksums = new ConcurrentHashMap<>();
+
+    static final class Key {
+        private final String digestName;
+        private final String path;
+        private final long size;
+        private final long lastModified;
+        private final String fileKey;
+
+        Key(String digestName, String path, long size, long lastModified, String fileKey) {
+            this.digestName = digestName;
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+        }
+
+        static Key of(String digestName, File file) throws IOException {
+            Path path = file.getCanonicalFile().toPath();
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return new Key(
+                digestName.toUpperCase(),
+                path.toString(),
+                attributes.size(),
+                attributes.lastModifiedTime().toMillis(),
+                String.valueOf(attributes.fileKey()));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return size == key.size && lastModified == key.lastModified && digestName.equals(key.digestName)
+                && path.equals(key.path) && fileKey.equals(key.fileKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(digestName, path, size, lastModified, fileKey);
+        }
+    }
+
+    ChecksumCache(File cacheFile, boolean forceRecompute) {
+        this.cacheFile = cacheFile;
+        this.forceRecompute = forceRecompute;
+        if (cacheFile != null && cacheFile.isFile()) {
+            read();
+        }
+    }
+
+    public static ChecksumCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Configures the checksum cache used by this process.
+     *
+     * @param cacheFile file where the checksums are stored, or null to keep the checksums in memory only
+     * @param forceRecompute calculate the checksums of all files again ignoring the cached checksums
+     */
+    public static void configure(File cacheFile, boolean forceRecompute) {
+        instance = new ChecksumCache(cacheFile, forceRecompute);
+    }
+
+    /**
+     * Returns the default checksum cache file in the user home directory.
+     */
+    public static File getDefaultCacheFile() {
+        return new File(new File(System.getProperty("user.home"), ".webin-cli"), "checksums");
+    }
+
+    /**
+     * Returns the checksum of the file calculating it only if the file has changed since its checksum was cached.
+     */
+    public String getDigest(String digestName, File file) {
+        Key key = getKey(digestName, file);
+
+        if (!forceRecompute) {
+            String digest = checksums.get(key);
+            if (digest != null) {
+                log.debug("Using the cached {} checksum for file: {}", digestName, file.getPath());
+                return digest;
+            }
+        }
+
+        String digest = FileUtils.calculateDigest(digestName, file);
+        put(key, digest);
+        return digest;
+    }
+
+    /**
+     * Returns the cached checksum or null if the checksum has not been cached or the file has changed.
+     */
+    public String getCachedDigest(String digestName, File file) {
+        return forceRecompute ? null : checksums.get(getKey(digestName, file));
+    }
+
+    /**
+     * Caches a checksum calculated elsewhere.
+     */
+    public void putDigest(String digestName, File file, String digest) {
+        put(getKey(digestName, file), digest);
+    }
+
+    private static Key getKey(String digestName, File file) {
+        try {
+            return Key.of(digestName, file);
+        } catch (IOException ex) {
+            throw WebinCliException.systemError(ex);
+        }
+    }
+
+    private void put(Key key, String digest) {
+        if (digest.equals(checksums.put(key, digest)) || cacheFile == null) {
+            return;
+        }
+
+        String line = toLine(key, digest) + System.lineSeparator();
+        synchronized (FILE_LOCK) {
+            try (FileChannel lockChannel = openLockFile(); FileLock ignored = lockChannel.lock()) {
+                Files.write(cacheFile.toPath(), line.getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException ex) {
+                // The checksum cache is an optimisation only.
+                log.warn("Unable to write the checksum cache file: {}", cacheFile.getPath());
+            }
+        }
+    }
+
+    private void read() {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(cacheFile.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            log.warn("Unable to read the checksum cache file: {}", cacheFile.getPath());
+            return;
+        }
+
+        parse(lines);
+
+        if (lines.size() > 2 * checksums.size()) {
+            compact();
+        }
+    }
+
+    private void parse(List<String> lines) {
+        for (String line : lines) {
+            String[] columns = line.split(SEPARATOR, COLUMNS);
+            if (columns.length != COLUMNS) {
+                continue;
+            }
+            try {
+                Key key = new Key(
+                    columns[0], columns[5], Long.parseLong(columns[2]), Long.parseLong(columns[3]), columns[4]);
+                checksums.put(key, columns[1]);
+            } catch (NumberFormatException ex) {
+                // Ignore incomplete lines.
+            }
+        }
+    }
+
+    /**
+     * Rewrites the cache file without the checksums of changed files. The cache file is read again while holding
+     * the lock to keep the checksums appended by other runs since the cache file was read.
+     */
+    void compact() {
+        synchronized (FILE_LOCK) {
+            try (FileChannel lockChannel = openLockFile(); FileLock ignored = lockChannel.lock()) {
+                parse(Files.readAllLines(cacheFile.toPath(), StandardCharsets.UTF_8));
+
+                List<String> lines = new ArrayList<>();
+                checksums.forEach((key, digest) -> {
+                    if (key.equals(getCurrentKey(key))) {
+                        lines.add(toLine(key, digest));
+                    }
+                });
+                Path tempFile = Files.createTempFile(cacheFile.getAbsoluteFile().getParentFile().toPath(), "checksums", ".tmp");
+                Files.write(tempFile, lines, StandardCharsets.UTF_8);
+                Files.move(tempFile, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException ex) {
+                log.warn("Unable to compact the checksum cache file: {}", cacheFile.getPath());
+            }
+        }
+    }
+
+    /**
+     * Opens the lock file next to the cache file. The cache file itself can't be locked because it is replaced
+     * when it is compacted.
+     */
+    private FileChannel openLockFile() throws IOException {
+        Files.createDirectories(cacheFile.getAbsoluteFile().getParentFile().toPath());
+        return FileChannel.open(new File(cacheFile.getPath() + LOCK_FILE_SUFFIX).toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private static String toLine(Key key, String digest) {
+        return String.join(SEPARATOR,
+            key.digestName,
+            digest,
+            String.valueOf(key.size),
+            String.valueOf(key.lastModified),
+            key.fileKey,
+            key.path);
+    }
+
+    private static Key getCurrentKey(Key key) {
+        try {
+            return Key.of(key.digestName, new File(key.path));
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.ebi.ena.webin.cli.WebinCliException;
+
+/**
+ * Calculates the checksums of many files concurrently using a bounded thread pool shared by all submissions.
+ * The checksums are stored in the {@link ChecksumCache} and the checksums already in the cache are not calculated
+ * again. The MD5 checksums available from {@link SidecarChecksums} are not calculated either.
+ */
+public class ChecksumEngine {
+    private static final Logger log = LoggerFactory.getLogger(ChecksumEngine.class);
+
+    private static final int DEFAULT_MAX_THREADS = 4;
+
+    private static volatile ChecksumEngine instance = new ChecksumEngine(getDefaultThreads());
+
+    private final int threads;
+    private final ExecutorService executorService;
+
+    ChecksumEngine(int threads) {
+        this.threads = threads;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executorService = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "webin-cli-checksum-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static ChecksumEngine getInstance() {
+        return instance;
+    }
+
+    /**
+     * Configures the number of files hashed concurrently by this process.
+     */
+    public static void configure(int threads) {
+        ChecksumEngine previous = instance;
+        instance = new ChecksumEngine(threads > 0 ? threads : getDefaultThreads());
+        previous.executorService.shutdown();
+    }
+
+    private static int getDefaultThreads() {
+        return Math.max(1, Math.min(DEFAULT_MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Returns the checksum of the file calculating it only if it is not available from the checksum cache or from
+     * the checksum files.
+     */
+    public String getDigest(String digestName, File file) {
+        ChecksumCache cache = ChecksumCache.getInstance();
+        String digest = cache.getCachedDigest(digestName, file);
+        if (digest == null) {
+            digest = getSidecarDigest(digestName, file);
+        }
+        return digest != null ? digest : cache.getDigest(digestName, file);
+    }
+
+    /**
+     * Calculates the checksums of the files concurrently.
+     *
+     * @return the checksums of the files in the same order as the files
+     */
+    public Map<File, String> calculateDigests(String digestName, Collection<File> files) {
+        ChecksumCache cache = ChecksumCache.getInstance();
+        Map<File, String> digests = new LinkedHashMap<>();
+        List<File> uncachedFiles = new ArrayList<>();
+
+        for (File file : new LinkedHashSet<>(files)) {
+            String digest = cache.getCachedDigest(digestName, file);
+            if (digest == null) {
+                digest = getSidecarDigest(digestName, file);
+            }
+            digests.put(file, digest);
+            if (digest == null) {
+                uncachedFiles.add(file);
+            }
+        }
+
+        if (uncachedFiles.isEmpty()) {
+            return digests;
+        }
+
+        long start = System.nanoTime();
+        List<Future<String>> futures = new ArrayList<>();
+        for (File file : uncachedFiles) {
+            futures.add(executorService.submit(() -> cache.getDigest(digestName, file)));
+        }
+
+        long bytes = 0;
+        try {
+            for (int i = 0; i < uncachedFiles.size(); ++i) {
+                digests.put(uncachedFiles.get(i), futures.get(i).get());
+                bytes += uncachedFiles.get(i).length();
+            }
+        } catch (InterruptedException ex) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw WebinCliException.systemError(ex);
+        } catch (ExecutionException ex) {
+            futures.forEach(future -> future.cancel(true));
+            if (ex.getCause() instanceof WebinCliException) {
+                throw (WebinCliException) ex.getCause();
+            }
+            throw WebinCliException.systemError(ex);
+        }
+
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+        log.info("Calculated {} checksums for {} files ({} MB) in {} seconds: {} MB/s.",
+            digestName,
+            uncachedFiles.size(),
+            String.format("%.1f", bytes / 1e6),
+            String.format("%.1f", seconds),
+            String.format("%.1f", bytes / 1e6 / seconds));
+
+        return digests;
+    }
+
+    <T> Future<T> submit(Callable<T> task) {
+        return executorService.submit(task);
+    }
+
+    private static String getSidecarDigest(String digestName, File file) {
+        return "MD5".equalsIgnoreCase(digestName) ? SidecarChecksums.getInstance().getDigest(file) : null;
+    }
+}
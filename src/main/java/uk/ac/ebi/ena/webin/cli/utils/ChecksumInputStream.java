@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import uk.ac.ebi.ena.webin.cli.WebinCliException;
+
+/**
+ * Calculates the checksum and counts the bytes of the data read through the stream.
+ */
+public class ChecksumInputStream extends FilterInputStream {
+    private final MessageDigest digest;
+    private long count;
+
+    public ChecksumInputStream(InputStream in, String digestName) {
+        super(in);
+        try {
+            this.digest = MessageDigest.getInstance(digestName);
+        } catch (NoSuchAlgorithmException ex) {
+            throw WebinCliException.systemError(ex);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b >= 0) {
+            digest.update((byte) b);
+            ++count;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = in.read(b, off, len);
+        if (read > 0) {
+            digest.update(b, off, read);
+            count += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) {
+        // Skipped bytes would not be included in the checksum.
+        return 0;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Returns the number of bytes read.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the checksum of the bytes read. Must be called only once after all bytes have been read.
+     */
+    public String getDigest() {
+        return FileUtils.toHex(digest.digest());
+    }
+}
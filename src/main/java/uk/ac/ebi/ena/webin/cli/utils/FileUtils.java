@@ -13,16 +13,16 @@ package uk.ac.ebi.ena.webin.cli.utils;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import uk.ac.ebi.ena.webin.cli.WebinCliException;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.zip.GZIPInputStream;
@@ -50,37 +50,68 @@ FileUtils
 		}
 	}
 
+	/** Read buffer size used when calculating file checksums. */
+	private static final int DIGEST_BUFFER_SIZE = 1024 * 1024;
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	/** Direct buffers are expensive to allocate and are therefore reused by each thread. */
+	private static final ThreadLocal<ByteBuffer> DIGEST_BUFFER =
+		ThreadLocal.withInitial( () -> ByteBuffer.allocateDirect( DIGEST_BUFFER_SIZE ) );
+
     public static String calculateDigest( String digestName, File file ) {
-    	try {
-			return calculateDigest(digestName, new BufferedInputStream(new FileInputStream( file ), 1024 * 1024));
-		} catch( IOException ex ) {
+		try( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) ) {
+			MessageDigest digest = MessageDigest.getInstance( digestName );
+			ByteBuffer buffer = DIGEST_BUFFER.get();
+			buffer.clear();
+			while( channel.read( buffer ) >= 0 ) {
+				buffer.flip();
+				digest.update( buffer );
+				buffer.clear();
+			}
+			return toHex( digest.digest() );
+		} catch( NoSuchAlgorithmException | IOException ex ) {
 			throw WebinCliException.systemError( ex );
 		}
     }
 
 	public static String calculateDigest(String digestName, byte[] bytes) {
-		return calculateDigest(digestName, new ByteArrayInputStream(bytes));
+		try {
+			return toHex( MessageDigest.getInstance( digestName ).digest( bytes ) );
+		} catch( NoSuchAlgorithmException ex ) {
+			throw WebinCliException.systemError( ex );
+		}
 	}
 
 	public static String calculateDigest(String digestName, InputStream is) {
 		try {
 			MessageDigest digest = MessageDigest.getInstance( digestName );
-			byte[] buf = new byte[ 4096 ];
+			byte[] buf = new byte[ 64 * 1024 ];
 			int  read = 0;
-			try( BufferedInputStream bis = new BufferedInputStream( is ) ) {
-				while( ( read = bis.read( buf ) ) > 0 ) {
+			try( InputStream in = is ) {
+				while( ( read = in.read( buf ) ) >= 0 ) {
 					digest.update(buf, 0, read);
 				}
 
-				byte[] message_digest = digest.digest();
-				BigInteger value = new BigInteger( 1, message_digest );
-				return String.format( String.format( "%%0%dx", message_digest.length << 1 ), value );
+				return toHex( digest.digest() );
 			}
 		} catch( NoSuchAlgorithmException | IOException ex ) {
 			throw WebinCliException.systemError( ex );
 		}
 	}
 
+	/**
+	 * Returns the lower case hexadecimal representation of the bytes.
+	 */
+	public static String toHex( byte[] bytes ) {
+		char[] hex = new char[ bytes.length << 1 ];
+		for( int i = 0; i < bytes.length; ++i ) {
+			hex[ i << 1 ] = HEX_DIGITS[ ( bytes[ i ] >> 4 ) & 0xf ];
+			hex[ ( i << 1 ) + 1 ] = HEX_DIGITS[ bytes[ i ] & 0xf ];
+		}
+		return new String( hex );
+	}
+
 	public static boolean 
 	emptyDirectory( File dir )
 	{
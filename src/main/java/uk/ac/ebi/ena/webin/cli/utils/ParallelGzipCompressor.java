@@ -0,0 +1,238 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compresses files using many threads. The input is divided into blocks that are compressed concurrently into
+ * separate gzip members written in the input order. Concatenated gzip members are a valid gzip file that can be
+ * read by any gzip reader.
+ */
+public class ParallelGzipCompressor {
+    private static final Logger log = LoggerFactory.getLogger(ParallelGzipCompressor.class);
+
+    static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+    static final String SOURCE_FILE_SUFFIX = ".source";
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int OS_UNKNOWN = 0xff;
+
+    private final int threads;
+    private final int blockSize;
+    private final int level;
+
+    public ParallelGzipCompressor(int threads) {
+        this(threads, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    ParallelGzipCompressor(int threads, int blockSize, int level) {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.blockSize = blockSize;
+        this.level = level;
+    }
+
+    /**
+     * Compresses the input file into the output file. The output file is written into a temporary file that is
+     * renamed when the compression has completed. The MD5 checksum of the output file is calculated while it is
+     * written and is stored in the {@link ChecksumCache}.
+     *
+     * @return the MD5 checksum of the output file
+     */
+    public String compress(File input, File output) throws IOException {
+        long start = System.currentTimeMillis();
+        Path outputDir = output.getAbsoluteFile().getParentFile().toPath();
+        Path tempFile = Files.createTempFile(outputDir, output.getName(), ".tmp");
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            try (InputStream inputStream = Files.newInputStream(input.toPath());
+                 OutputStream outputStream = new DigestOutputStream(Files.newOutputStream(tempFile), digest)) {
+                compress(inputStream, outputStream);
+            }
+            Files.move(tempFile, output.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            String md5 = FileUtils.toHex(digest.digest());
+            ChecksumCache.getInstance().putDigest("MD5", output, md5);
+            log.info("Compressed {} into {} in {} ms.", input, output, System.currentTimeMillis() - start);
+            return md5;
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Compresses the input file into the output file unless the output file was compressed from the same input
+     * file by an earlier run. The canonical path, size, last modified time and file key of the input file and the
+     * size of the output file are recorded in a {@code <output>.source} file when the output file is written. The
+     * output file is reused only if the recorded values are unchanged.
+     *
+     * @return true if the input file was compressed, false if the output file was reused
+     */
+    public boolean compressIfChanged(File input, File output) throws IOException {
+        File sourceFile = new File(output.getPath() + SOURCE_FILE_SUFFIX);
+        if (output.isFile() && sourceFile.isFile()
+            && getSource(input, output).equals(new String(Files.readAllBytes(sourceFile.toPath()), StandardCharsets.UTF_8))) {
+            log.info("Using {} compressed by an earlier run.", output);
+            return false;
+        }
+
+        Files.deleteIfExists(sourceFile.toPath());
+        compress(input, output);
+        Files.write(sourceFile.toPath(), getSource(input, output).getBytes(StandardCharsets.UTF_8));
+        return true;
+    }
+
+    private static String getSource(File input, File output) throws IOException {
+        Path path = input.getCanonicalFile().toPath();
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        return String.join("\t",
+            path.toString(),
+            String.valueOf(attributes.size()),
+            String.valueOf(attributes.lastModifiedTime().toMillis()),
+            String.valueOf(attributes.fileKey()),
+            String.valueOf(output.length()));
+    }
+
+    /**
+     * Compresses the input stream into the output stream. At most two blocks per thread are held in memory.
+     */
+    public void compress(InputStream inputStream, OutputStream outputStream) throws IOException {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "webin-cli-compress-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Deque<Future<byte[]>> pending = new ArrayDeque<>();
+            boolean empty = true;
+            byte[] block;
+            while ((block = readBlock(inputStream)) != null) {
+                empty = false;
+                byte[] data = block;
+                pending.add(executorService.submit(() -> compressBlock(data)));
+                if (pending.size() >= threads * 2) {
+                    outputStream.write(take(pending));
+                }
+            }
+            while (!pending.isEmpty()) {
+                outputStream.write(take(pending));
+            }
+            if (empty) {
+                // An empty gzip file contains one empty member.
+                outputStream.write(compressBlock(new byte[0]));
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private byte[] readBlock(InputStream inputStream) throws IOException {
+        byte[] block = new byte[blockSize];
+        int length = 0;
+        while (length < blockSize) {
+            int read = inputStream.read(block, length, blockSize - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        if (length == 0) {
+            return null;
+        }
+        if (length < blockSize) {
+            byte[] lastBlock = new byte[length];
+            System.arraycopy(block, 0, lastBlock, 0, length);
+            return lastBlock;
+        }
+        return block;
+    }
+
+    private static byte[] take(Deque<Future<byte[]>> pending) throws IOException {
+        try {
+            return pending.remove().get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        } catch (ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    /**
+     * Compresses the block into one gzip member.
+     */
+    byte[] compressBlock(byte[] data) {
+        ByteArrayOutputStream member = new ByteArrayOutputStream(data.length / 2 + 64);
+        // Header without a file name or a modification time so that the output only depends on the input.
+        writeShort(member, GZIP_MAGIC);
+        member.write(Deflater.DEFLATED);
+        member.write(0);
+        writeInt(member, 0);
+        member.write(0);
+        member.write(OS_UNKNOWN);
+
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] buffer = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                member.write(buffer, 0, length);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        writeInt(member, (int) crc.getValue());
+        writeInt(member, data.length);
+        return member.toByteArray();
+    }
+
+    private static void writeShort(ByteArrayOutputStream outputStream, int value) {
+        outputStream.write(value & 0xff);
+        outputStream.write((value >> 8) & 0xff);
+    }
+
+    private static void writeInt(ByteArrayOutputStream outputStream, int value) {
+        writeShort(outputStream, value & 0xffff);
+        writeShort(outputStream, (value >> 16) & 0xffff);
+    }
+}
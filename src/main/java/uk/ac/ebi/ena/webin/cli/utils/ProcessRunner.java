@@ -0,0 +1,247 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs an external program without a shell and consumes its output line by line. Lines are terminated by line
+ * feeds or carriage returns so that progress lines rewritten in place are received as separate lines. Lines longer
+ * than {@link #MAX_LINE_LENGTH} characters are truncated.
+ * <p>
+ * The output is read by a thread pool shared by all processes. A process can be stopped using {@link #cancel} or
+ * by setting a timeout.
+ */
+public class ProcessRunner {
+    private static final Logger log = LoggerFactory.getLogger(ProcessRunner.class);
+
+    static final int MAX_LINE_LENGTH = 64 * 1024;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+    private static final ExecutorService STREAM_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "webin-cli-process-output-" + THREAD_NUMBER.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<String> command;
+    private final Map<String, String> environment;
+    private final File directory;
+    private final Consumer<String> outputConsumer;
+    private final Consumer<String> errorConsumer;
+    private final long timeoutMillis;
+
+    private volatile Process process;
+    private volatile boolean cancelled;
+
+    public static class Builder {
+        private final List<String> command = new ArrayList<>();
+        private final Map<String, String> environment = new HashMap<>();
+        private File directory;
+        private Consumer<String> outputConsumer;
+        private Consumer<String> errorConsumer;
+        private long timeoutMillis;
+
+        /**
+         * The program and its arguments. The arguments are passed to the program as they are without shell
+         * quoting or expansion.
+         */
+        public Builder setCommand(List<String> command) {
+            this.command.clear();
+            this.command.addAll(command);
+            return this;
+        }
+
+        /**
+         * Environment variables added to the environment of the process.
+         */
+        public Builder setEnvironment(Map<String, String> environment) {
+            this.environment.putAll(environment);
+            return this;
+        }
+
+        public Builder setDirectory(File directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        /**
+         * Consumer of the standard output lines, or null to discard the standard output.
+         */
+        public Builder setOutputConsumer(Consumer<String> outputConsumer) {
+            this.outputConsumer = outputConsumer;
+            return this;
+        }
+
+        /**
+         * Consumer of the standard error lines, or null to discard the standard error.
+         */
+        public Builder setErrorConsumer(Consumer<String> errorConsumer) {
+            this.errorConsumer = errorConsumer;
+            return this;
+        }
+
+        /**
+         * The process is stopped if it has not completed within the timeout. Zero means no timeout.
+         */
+        public Builder setTimeout(long timeout, TimeUnit unit) {
+            this.timeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        public ProcessRunner build() {
+            return new ProcessRunner(this);
+        }
+    }
+
+    private ProcessRunner(Builder builder) {
+        this.command = new ArrayList<>(builder.command);
+        this.environment = new HashMap<>(builder.environment);
+        this.directory = builder.directory;
+        this.outputConsumer = builder.outputConsumer;
+        this.errorConsumer = builder.errorConsumer;
+        this.timeoutMillis = builder.timeoutMillis;
+    }
+
+    /**
+     * Runs the process and waits until it has completed and its output has been consumed.
+     *
+     * @return the exit code of the process
+     * @throws ProcessTimeoutException if the process did not complete within the timeout
+     * @throws InterruptedException if the thread was interrupted or the process was cancelled
+     */
+    public int run() throws IOException, InterruptedException {
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.environment().putAll(environment);
+        processBuilder.directory(directory);
+
+        log.debug("Running: {}", command.get(0));
+
+        Process startedProcess = processBuilder.start();
+        process = startedProcess;
+        startedProcess.getOutputStream().close();
+
+        Future<?> output = STREAM_EXECUTOR.submit(() -> consume(startedProcess.getInputStream(), outputConsumer));
+        Future<?> error = STREAM_EXECUTOR.submit(() -> consume(startedProcess.getErrorStream(), errorConsumer));
+        try {
+            if (cancelled) {
+                throw new InterruptedException("Process cancelled: " + command.get(0));
+            }
+            if (0 < timeoutMillis) {
+                if (!startedProcess.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                    throw new ProcessTimeoutException(command.get(0), timeoutMillis);
+                }
+            } else {
+                startedProcess.waitFor();
+            }
+            if (cancelled) {
+                throw new InterruptedException("Process cancelled: " + command.get(0));
+            }
+            waitFor(output);
+            waitFor(error);
+            return startedProcess.exitValue();
+        } finally {
+            if (startedProcess.isAlive()) {
+                startedProcess.destroyForcibly();
+            }
+            output.cancel(true);
+            error.cancel(true);
+        }
+    }
+
+    /**
+     * Stops the process. The thread running the process throws an {@link InterruptedException}.
+     */
+    public void cancel() {
+        cancelled = true;
+        Process runningProcess = process;
+        if (runningProcess != null) {
+            runningProcess.destroy();
+        }
+    }
+
+    private static void waitFor(Future<?> future) throws InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException ex) {
+            log.debug("Unable to read process output: {}", ex.getCause().toString());
+        }
+    }
+
+    /**
+     * Reads the stream passing each line to the consumer, or discards the stream if there is no consumer.
+     */
+    static void consume(InputStream inputStream, Consumer<String> consumer) {
+        try (InputStream is = inputStream) {
+            if (consumer == null) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                while (is.read(buffer) != -1) {
+                    // Discard the output.
+                }
+                return;
+            }
+
+            Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8);
+            char[] buffer = new char[BUFFER_SIZE];
+            StringBuilder line = new StringBuilder();
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                for (int i = 0; i < read; ++i) {
+                    char ch = buffer[i];
+                    if (ch == '\n' || ch == '\r') {
+                        if (0 < line.length()) {
+                            consumer.accept(line.toString());
+                            line.setLength(0);
+                        }
+                    } else if (line.length() < MAX_LINE_LENGTH) {
+                        line.append(ch);
+                    }
+                }
+            }
+            if (0 < line.length()) {
+                consumer.accept(line.toString());
+            }
+        } catch (IOException ex) {
+            // The stream is closed when the process is stopped.
+        }
+    }
+
+    /**
+     * Thrown if the process did not complete within the timeout.
+     */
+    public static class ProcessTimeoutException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ProcessTimeoutException(String program, long timeoutMillis) {
+            super("Process " + program + " did not complete within " + timeoutMillis + " ms");
+        }
+    }
+}
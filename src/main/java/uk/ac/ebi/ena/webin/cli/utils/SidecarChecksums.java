@@ -0,0 +1,249 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.ebi.ena.webin.cli.WebinCliException;
+import uk.ac.ebi.ena.webin.cli.WebinCliMessage;
+
+/**
+ * Reads the MD5 checksums of the submitted files from checksum files written by the sequencing pipeline instead of
+ * reading the submitted files. The checksum of a file is read from:
+ * <ul>
+ * <li>the md5sum files given using {@link #configure},</li>
+ * <li>a {@code <file>.md5} file next to the file,</li>
+ * <li>a {@code md5sum.txt}, {@code md5sums.txt} or {@code MD5SUMS} file in the same directory as the file.</li>
+ * </ul>
+ * The checksum files may contain either the checksum only or lines in the md5sum format.
+ * <p>
+ * In {@link Mode#TRUST} mode the checksums are used as they are. In {@link Mode#VERIFY} mode the checksums are also
+ * calculated in the background and {@link #verify} must be called before the files are submitted. The checksums
+ * of files submitted by a later run, for example when resuming a submission, are verified by {@link #verify}
+ * using the {@link ChecksumCache} to avoid reading the files again.
+ */
+public class SidecarChecksums {
+    private static final Logger log = LoggerFactory.getLogger(SidecarChecksums.class);
+
+    private static final String SIDECAR_FILE_SUFFIX = ".md5";
+    private static final String[] DIRECTORY_FILE_NAMES = {"md5sum.txt", "md5sums.txt", "MD5SUMS"};
+    private static final Pattern LINE_PATTERN = Pattern.compile("^\\s*([0-9a-fA-F]{32})(?:\\s+\\*?(.+?))?\\s*$");
+
+    public enum Mode {
+        /** Use the checksums in the checksum files without reading the submitted files. */
+        TRUST,
+        /** Use the checksums in the checksum files and verify them in the background before submission. */
+        VERIFY
+    }
+
+    private static volatile SidecarChecksums instance = new SidecarChecksums(null, Collections.emptyList());
+
+    private final Mode mode;
+    /** Checksums from the md5sum files given explicitly keyed by the canonical file path. */
+    private final Map<Path, String> checksums = new HashMap<>();
+    /** Checksums from the md5sum files found in the directories of the submitted files. */
+    private final Map<Path, Map<Path, String>> directoryChecksums = new ConcurrentHashMap<>();
+    /** Background checksum calculations keyed by the canonical file path. */
+    private final Map<Path, Verification> verifications = new ConcurrentHashMap<>();
+
+    private static final class Verification {
+        private final String expectedDigest;
+        private final Future<String> digest;
+
+        private Verification(String expectedDigest, Future<String> digest) {
+            this.expectedDigest = expectedDigest;
+            this.digest = digest;
+        }
+    }
+
+    SidecarChecksums(Mode mode, List<File> md5Files) {
+        this.mode = mode;
+        if (mode != null) {
+            for (File md5File : md5Files) {
+                checksums.putAll(read(md5File));
+            }
+        }
+    }
+
+    public static SidecarChecksums getInstance() {
+        return instance;
+    }
+
+    /**
+     * Configures the checksum files used by this process.
+     *
+     * @param mode whether the checksums are trusted or verified, or null to ignore checksum files
+     * @param md5Files md5sum files containing the checksums of the submitted files
+     */
+    public static void configure(Mode mode, List<File> md5Files) {
+        instance = new SidecarChecksums(mode, md5Files == null ? Collections.emptyList() : md5Files);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns the MD5 checksum of the file from the checksum files or null if there is no checksum for the file.
+     * In {@link Mode#VERIFY} mode the calculation of the checksum is started in the background.
+     */
+    public String getDigest(File file) {
+        if (mode == null) {
+            return null;
+        }
+
+        Path path = getCanonicalPath(file);
+        String digest = checksums.get(path);
+        if (digest == null) {
+            digest = readSidecarFile(path);
+        }
+        if (digest == null) {
+            digest = directoryChecksums.computeIfAbsent(path.getParent(), SidecarChecksums::readDirectoryFiles).get(path);
+        }
+        if (digest == null) {
+            return null;
+        }
+
+        log.debug("Using the checksum file MD5 checksum for file: {}", file.getPath());
+
+        if (mode == Mode.VERIFY) {
+            String expectedDigest = digest;
+            verifications.computeIfAbsent(path, p -> new Verification(expectedDigest,
+                ChecksumEngine.getInstance().submit(() -> ChecksumCache.getInstance().getDigest("MD5", file))));
+        }
+        return digest;
+    }
+
+    /**
+     * Waits until the checksums of the files read from the checksum files have been verified. The verification
+     * is started if the checksum of the file was not read by this process.
+     *
+     * @throws WebinCliException if a checksum file does not match the file
+     */
+    public void verify(Collection<File> files) {
+        for (File file : files) {
+            Path path = getCanonicalPath(file);
+            Verification verification = verifications.get(path);
+            if (verification == null && mode == Mode.VERIFY) {
+                // The checksum may have been read from the checksum file by an earlier run.
+                getDigest(file);
+                verification = verifications.get(path);
+            }
+            if (verification == null) {
+                continue;
+            }
+
+            String digest;
+            try {
+                digest = verification.digest.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw WebinCliException.systemError(ex);
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof WebinCliException) {
+                    throw (WebinCliException) ex.getCause();
+                }
+                throw WebinCliException.systemError(ex);
+            }
+
+            if (!verification.expectedDigest.equalsIgnoreCase(digest)) {
+                throw WebinCliException.userError(WebinCliMessage.CHECKSUM_FILE_MISMATCH_ERROR.format(
+                    file.getPath(), verification.expectedDigest, digest));
+            }
+        }
+    }
+
+    private static String readSidecarFile(Path path) {
+        File sidecarFile = new File(path.toString() + SIDECAR_FILE_SUFFIX);
+        if (!sidecarFile.isFile()) {
+            return null;
+        }
+        Map<Path, String> sidecarChecksums = read(sidecarFile);
+        String digest = sidecarChecksums.get(path);
+        if (digest == null && sidecarChecksums.size() == 1) {
+            // The sidecar file may refer to the file using a different path.
+            digest = sidecarChecksums.values().iterator().next();
+        }
+        return digest;
+    }
+
+    private static Map<Path, String> readDirectoryFiles(Path dir) {
+        Map<Path, String> dirChecksums = new HashMap<>();
+        for (String fileName : DIRECTORY_FILE_NAMES) {
+            File md5File = dir.resolve(fileName).toFile();
+            if (md5File.isFile()) {
+                dirChecksums.putAll(read(md5File));
+            }
+        }
+        return dirChecksums;
+    }
+
+    /**
+     * Reads a checksum file. The file names are resolved relative to the directory of the checksum file.
+     * A checksum without a file name is assigned to the file the checksum file is named after.
+     */
+    static Map<Path, String> read(File md5File) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(md5File.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw WebinCliException.userError(ex, WebinCliMessage.CHECKSUM_FILE_READ_ERROR.format(md5File.getPath()));
+        }
+
+        File dir = md5File.getAbsoluteFile().getParentFile();
+        Map<Path, String> md5FileChecksums = new HashMap<>();
+        for (String line : lines) {
+            Matcher matcher = LINE_PATTERN.matcher(line);
+            if (!matcher.matches()) {
+                continue;
+            }
+            File file;
+            if (matcher.group(2) != null) {
+                file = new File(matcher.group(2));
+                if (!file.isAbsolute()) {
+                    file = new File(dir, matcher.group(2));
+                }
+            } else if (md5File.getName().endsWith(SIDECAR_FILE_SUFFIX)) {
+                String name = md5File.getName();
+                file = new File(dir, name.substring(0, name.length() - SIDECAR_FILE_SUFFIX.length()));
+            } else {
+                continue;
+            }
+            md5FileChecksums.put(getCanonicalPath(file), matcher.group(1).toLowerCase());
+        }
+        return md5FileChecksums;
+    }
+
+    private static Path getCanonicalPath(File file) {
+        try {
+            return file.getCanonicalFile().toPath();
+        } catch (IOException ex) {
+            throw WebinCliException.systemError(ex);
+        }
+    }
+}
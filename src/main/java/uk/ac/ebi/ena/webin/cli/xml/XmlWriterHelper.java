@@ -17,7 +17,7 @@ import java.util.Objects;
 
 import org.jdom2.Element;
 
-import uk.ac.ebi.ena.webin.cli.utils.FileUtils;
+import uk.ac.ebi.ena.webin.cli.utils.ChecksumEngine;
 
 public class XmlWriterHelper {
 
@@ -58,7 +58,7 @@ public class XmlWriterHelper {
         String.valueOf(uploadDir.resolve(path)).replaceAll("\\\\+", "/"),
         String.valueOf(fileType),
         "MD5",
-        FileUtils.calculateDigest("MD5", file.toFile()),
+        ChecksumEngine.getInstance().getDigest("MD5", file.toFile()),
             attributes);
   }
 
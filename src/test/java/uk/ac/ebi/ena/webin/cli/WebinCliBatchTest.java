@@ -0,0 +1,125 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class WebinCliBatchTest {
+
+  private static File createDir(File dir, String name) {
+    File subDir = new File(dir, name);
+    subDir.mkdir();
+    return subDir;
+  }
+
+  private static File createFile(File dir, String name) throws IOException {
+    File file = new File(dir, name);
+    Files.write(file.toPath(), "NAME test".getBytes());
+    return file;
+  }
+
+  @Test
+  public void testResolveDirectory() throws IOException {
+    File dir = WebinCliTestUtils.createTempDir();
+    File manifest1 = createFile(dir, "b.txt");
+    File manifest2 = createFile(dir, "a.json");
+    createFile(dir, "reads.fastq.gz");
+
+    assertThat(WebinCliBatch.resolveManifestFiles(dir.getPath()))
+        .containsExactly(manifest2.getAbsoluteFile(), manifest1.getAbsoluteFile());
+  }
+
+  @Test
+  public void testResolveGlob() throws IOException {
+    File dir = WebinCliTestUtils.createTempDir();
+    File manifest1 = createFile(dir, "run1.manifest");
+    File manifest2 = createFile(dir, "run2.manifest");
+    createFile(dir, "other.txt");
+
+    assertThat(WebinCliBatch.resolveManifestFiles(new File(dir, "run*.manifest").getPath()))
+        .containsExactly(manifest1.getAbsoluteFile(), manifest2.getAbsoluteFile());
+  }
+
+  @Test
+  public void testResolveListFile() throws IOException {
+    File dir = WebinCliTestUtils.createTempDir();
+    File manifest1 = createFile(dir, "run1.manifest");
+    File manifest2 = createFile(dir, "run2.manifest");
+    File listFile = new File(dir, "manifests.list");
+    Files.write(listFile.toPath(), Arrays.asList("# comment", "run2.manifest", "", manifest1.getAbsolutePath()));
+
+    assertThat(WebinCliBatch.resolveManifestFiles(listFile.getPath()))
+        .containsExactly(manifest2.getAbsoluteFile(), manifest1.getAbsoluteFile());
+  }
+
+  @Test
+  public void testResolveNoManifestFiles() {
+    File dir = WebinCliTestUtils.createTempDir();
+
+    assertThatThrownBy(() -> WebinCliBatch.resolveManifestFiles(dir.getPath()))
+        .isInstanceOf(WebinCliException.class)
+        .hasMessageStartingWith("No manifest files found");
+  }
+
+  @Test
+  public void testOutputDirs() throws IOException {
+    File dir = WebinCliTestUtils.createTempDir();
+    File manifest1 = createFile(dir, "run1.manifest");
+    File manifest2 = createFile(dir, "run2.manifest");
+
+    Map<File, String[]> outputDirs = WebinCliBatch.getOutputDirs(Arrays.asList(manifest1, manifest2));
+    assertThat(outputDirs.get(manifest1)).containsExactly("run1.manifest");
+    assertThat(outputDirs.get(manifest2)).containsExactly("run2.manifest");
+  }
+
+  @Test
+  public void testOutputDirsWithSameName() throws IOException {
+    File dir = WebinCliTestUtils.createTempDir();
+    File manifest1 = createFile(createDir(dir, "a"), "manifest.txt");
+    File manifest2 = createFile(createDir(dir, "b"), "manifest.txt");
+
+    Map<File, String[]> outputDirs = WebinCliBatch.getOutputDirs(Arrays.asList(manifest1, manifest2));
+    assertThat(outputDirs.get(manifest1)).containsExactly("a", "manifest.txt");
+    assertThat(outputDirs.get(manifest2)).containsExactly("b", "manifest.txt");
+  }
+
+  @Test
+  public void testOutputDirsWithSameFile() throws IOException {
+    File manifest = createFile(WebinCliTestUtils.createTempDir(), "manifest.txt");
+
+    assertThatThrownBy(() -> WebinCliBatch.getOutputDirs(Arrays.asList(manifest, manifest)))
+        .isInstanceOf(WebinCliException.class)
+        .hasMessageContaining("same output directory");
+  }
+
+  @Test
+  public void testExitCode() {
+    File file = new File("manifest.txt");
+    WebinCliBatch.Result success = new WebinCliBatch.Result(file, WebinCli.SUCCESS, "", 0);
+    WebinCliBatch.Result validationError = new WebinCliBatch.Result(file, WebinCli.VALIDATION_ERROR, "", 0);
+    WebinCliBatch.Result userError = new WebinCliBatch.Result(file, WebinCli.USER_ERROR, "", 0);
+    WebinCliBatch.Result systemError = new WebinCliBatch.Result(file, WebinCli.SYSTEM_ERROR, "", 0);
+
+    assertThat(WebinCliBatch.getExitCode(Arrays.asList(success, success))).isEqualTo(WebinCli.SUCCESS);
+    assertThat(WebinCliBatch.getExitCode(Arrays.asList(success, validationError))).isEqualTo(WebinCli.VALIDATION_ERROR);
+    assertThat(WebinCliBatch.getExitCode(Arrays.asList(validationError, userError))).isEqualTo(WebinCli.USER_ERROR);
+    assertThat(WebinCliBatch.getExitCode(Arrays.asList(systemError, userError, success))).isEqualTo(WebinCli.SYSTEM_ERROR);
+  }
+}
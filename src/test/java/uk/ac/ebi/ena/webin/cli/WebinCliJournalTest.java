@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Test;
+
+public class WebinCliJournalTest {
+
+  @Test
+  public void testResume() {
+    File journalFile = new File(WebinCliTestUtils.createTempDir(), "test.journal");
+    File manifestFile = new File("manifest.txt");
+
+    WebinCliJournal.Entry entry = new WebinCliJournal(journalFile).getEntry(manifestFile, "md5");
+    entry.append(WebinCliJournal.Event.MANIFEST_READ);
+    entry.append(WebinCliJournal.Event.BUNDLE_WRITTEN, "submit");
+    entry.append(WebinCliJournal.Event.SUBMITTED, "run=ERR1\texperiment=ERX1");
+
+    WebinCliJournal.Entry resumed = new WebinCliJournal(journalFile).getEntry(manifestFile, "md5");
+    assertThat(resumed.contains(WebinCliJournal.Event.MANIFEST_READ)).isTrue();
+    assertThat(resumed.contains(WebinCliJournal.Event.UPLOADED)).isFalse();
+    assertThat(resumed.getDetail(WebinCliJournal.Event.BUNDLE_WRITTEN)).isEqualTo("submit");
+    assertThat(resumed.getDetail(WebinCliJournal.Event.SUBMITTED)).isEqualTo("run=ERR1 experiment=ERX1");
+  }
+
+  @Test
+  public void testUploadedFiles() {
+    File journalFile = new File(WebinCliTestUtils.createTempDir(), "test.journal");
+    File manifestFile = new File("manifest.txt");
+
+    WebinCliJournal.Entry entry = new WebinCliJournal(journalFile).getEntry(manifestFile, "md5");
+    entry.append(WebinCliJournal.Event.FILE_UPLOADED, "file1.fastq.gz");
+    entry.append(WebinCliJournal.Event.FILE_UPLOADED, "file2.fastq.gz");
+
+    WebinCliJournal.Entry resumed = new WebinCliJournal(journalFile).getEntry(manifestFile, "md5");
+    assertThat(resumed.getDetails(WebinCliJournal.Event.FILE_UPLOADED))
+        .containsExactly("file1.fastq.gz", "file2.fastq.gz");
+    assertThat(resumed.getDetail(WebinCliJournal.Event.FILE_UPLOADED)).isEqualTo("file2.fastq.gz");
+    assertThat(resumed.getDetails(WebinCliJournal.Event.UPLOADED)).isEmpty();
+  }
+
+  @Test
+  public void testChangedManifest() {
+    File journalFile = new File(WebinCliTestUtils.createTempDir(), "test.journal");
+    File manifestFile = new File("manifest.txt");
+
+    new WebinCliJournal(journalFile).getEntry(manifestFile, "md5").append(WebinCliJournal.Event.SUBMITTED);
+
+    assertThat(new WebinCliJournal(journalFile).getEntry(manifestFile, "changed")
+        .contains(WebinCliJournal.Event.SUBMITTED)).isFalse();
+  }
+
+  @Test
+  public void testIncompleteLine() throws IOException {
+    File journalFile = new File(WebinCliTestUtils.createTempDir(), "test.journal");
+    File manifestFile = new File("manifest.txt");
+
+    new WebinCliJournal(journalFile).getEntry(manifestFile, "md5").append(WebinCliJournal.Event.UPLOADED);
+    Files.write(journalFile.toPath(), "2021-01-01T00:00:00\tSUBMITTED\tmd5".getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.APPEND);
+
+    WebinCliJournal.Entry entry = new WebinCliJournal(journalFile).getEntry(manifestFile, "md5");
+    assertThat(entry.contains(WebinCliJournal.Event.UPLOADED)).isTrue();
+    assertThat(entry.contains(WebinCliJournal.Event.SUBMITTED)).isFalse();
+  }
+}
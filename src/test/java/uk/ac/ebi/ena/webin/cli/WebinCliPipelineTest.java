@@ -0,0 +1,105 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+import org.mockito.InOrder;
+
+public class WebinCliPipelineTest {
+
+  private static Map<WebinCliPipeline.Stage, Integer> threads(int threads) {
+    Map<WebinCliPipeline.Stage, Integer> stageThreads = new EnumMap<>(WebinCliPipeline.Stage.class);
+    for (WebinCliPipeline.Stage stage : WebinCliPipeline.Stage.values()) {
+      stageThreads.put(stage, threads);
+    }
+    return stageThreads;
+  }
+
+  private static WebinCli mockWebinCli(List<String> threadNames) {
+    WebinCli webinCli = mock(WebinCli.class);
+    when(webinCli.getStages()).thenReturn(Arrays.asList(WebinCliPipeline.Stage.values()));
+    doAnswer(invocation -> {
+      threadNames.add(Thread.currentThread().getName());
+      return null;
+    }).when(webinCli).executeStage(any());
+    return webinCli;
+  }
+
+  @Test
+  public void testExecuteStages() throws Exception {
+    List<String> threadNames = Collections.synchronizedList(new ArrayList<>());
+    List<WebinCli> webinClis = new ArrayList<>();
+    List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+    try (WebinCliPipeline pipeline = new WebinCliPipeline(threads(2), 1)) {
+      for (int i = 0; i < 10; ++i) {
+        WebinCli webinCli = mockWebinCli(threadNames);
+        webinClis.add(webinCli);
+        futures.add(pipeline.execute(() -> webinCli));
+      }
+      for (CompletableFuture<Void> future : futures) {
+        future.get();
+      }
+    }
+
+    for (WebinCli webinCli : webinClis) {
+      InOrder inOrder = inOrder(webinCli);
+      for (WebinCliPipeline.Stage stage : WebinCliPipeline.Stage.values()) {
+        inOrder.verify(webinCli).executeStage(stage);
+      }
+      inOrder.verify(webinCli).close();
+    }
+
+    assertThat(threadNames).hasSize(40);
+    assertThat(threadNames).anyMatch(name -> name.startsWith("webin-cli-validate-"));
+    assertThat(threadNames).anyMatch(name -> name.startsWith("webin-cli-prepare-"));
+    assertThat(threadNames).anyMatch(name -> name.startsWith("webin-cli-upload-"));
+    assertThat(threadNames).anyMatch(name -> name.startsWith("webin-cli-submit-"));
+  }
+
+  @Test
+  public void testStageError() {
+    WebinCli webinCli = mockWebinCli(Collections.synchronizedList(new ArrayList<>()));
+    doThrow(WebinCliException.validationError("invalid"))
+        .when(webinCli).executeStage(WebinCliPipeline.Stage.VALIDATE);
+
+    try (WebinCliPipeline pipeline = new WebinCliPipeline(threads(1), 1)) {
+      CompletableFuture<Void> future = pipeline.execute(() -> webinCli);
+
+      assertThatThrownBy(future::get)
+          .isInstanceOf(ExecutionException.class)
+          .hasCauseInstanceOf(WebinCliException.class);
+    }
+
+    verify(webinCli, never()).executeStage(WebinCliPipeline.Stage.PREPARE);
+    verify(webinCli).close();
+  }
+}
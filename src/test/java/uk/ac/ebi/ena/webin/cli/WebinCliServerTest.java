@@ -0,0 +1,174 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+
+import org.junit.Test;
+import org.springframework.util.StreamUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import uk.ac.ebi.ena.webin.cli.upload.BandwidthLimiter;
+
+public class WebinCliServerTest {
+
+  private static WebinCliServer createServer() {
+    WebinCliCommand cmd = new WebinCliCommand();
+    cmd.server = 0;
+    cmd.serverThreads = 1;
+    cmd.serverTokenFile = new File(WebinCliTestUtils.createTempDir(), "server-token");
+    return new WebinCliServer(cmd);
+  }
+
+  private static HttpURLConnection openConnection(WebinCliServer server, String path, String token)
+      throws IOException {
+    URL url = new URL("http://localhost:" + server.getAddress().getPort() + path);
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    if (token != null) {
+      connection.setRequestProperty("Authorization", "Bearer " + token);
+    }
+    return connection;
+  }
+
+  @Test
+  public void testInvalidJob() {
+    WebinCliCommand job = new WebinCliCommand();
+    job.userName = "Webin-0";
+    job.password = "password";
+
+    WebinCliServer.JobResult result = createServer().execute(job);
+
+    assertThat(result.exitCode).isEqualTo(WebinCli.USER_ERROR);
+    assertThat(result.message).contains(WebinCliCommand.Options.context);
+  }
+
+  @Test
+  public void testJobDefaults() throws IOException {
+    WebinCliCommand job = createServer().createJob(
+        new ObjectMapper().readTree("{\"userName\":\"Webin-0\",\"uploadThreads\":3}"));
+
+    assertThat(job.userName).isEqualTo("Webin-0");
+    assertThat(job.uploadThreads).isEqualTo(3);
+    assertThat(job.ascpRate).isEqualTo("300M");
+    assertThat(job.ascpSessions).isEqualTo(1);
+    assertThat(job.batchQueueSize).isEqualTo(4);
+    assertThat(job.batchSubmitSize).isEqualTo(1);
+    assertThat(job.uploadResume).isTrue();
+  }
+
+  @Test
+  public void testJobWithProcessOption() {
+    assertThatThrownBy(() -> createServer().createJob(
+        new ObjectMapper().readTree("{\"userName\":\"Webin-0\",\"checksumThreads\":4}")))
+        .isInstanceOf(WebinCliException.class)
+        .hasMessageContaining(WebinCliCommand.Options.checksumThreads);
+  }
+
+  @Test
+  public void testJobEndpoint() throws IOException {
+    WebinCliServer server = createServer();
+    server.start();
+    try {
+      HttpURLConnection connection = openConnection(server, "/jobs", server.getToken());
+      connection.setRequestMethod("POST");
+      connection.setDoOutput(true);
+      try (OutputStream os = connection.getOutputStream()) {
+        os.write("{\"userName\":\"Webin-0\",\"password\":\"password\"}".getBytes(StandardCharsets.UTF_8));
+      }
+
+      assertThat(connection.getResponseCode()).isEqualTo(200);
+      try (InputStream is = connection.getInputStream()) {
+        assertThat(StreamUtils.copyToString(is, StandardCharsets.UTF_8))
+            .contains("\"exitCode\":" + WebinCli.USER_ERROR);
+      }
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testUnauthorizedRequest() throws IOException {
+    WebinCliServer server = createServer();
+    server.start();
+    try {
+      for (String path : new String[] {"/jobs", "/status", "/bandwidth"}) {
+        assertThat(openConnection(server, path, null).getResponseCode()).isEqualTo(401);
+        assertThat(openConnection(server, path, "invalid").getResponseCode()).isEqualTo(401);
+      }
+      HttpURLConnection connection = openConnection(server, "/bandwidth", server.getToken());
+      assertThat(connection.getResponseCode()).isEqualTo(200);
+      connection.getInputStream().close();
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testTokenFile() throws IOException {
+    WebinCliCommand cmd = new WebinCliCommand();
+    cmd.server = 0;
+    cmd.serverThreads = 1;
+    cmd.serverTokenFile = new File(WebinCliTestUtils.createTempDir(), "server-token");
+    WebinCliServer server = new WebinCliServer(cmd);
+    server.start();
+    try {
+      assertThat(new String(Files.readAllBytes(cmd.serverTokenFile.toPath()), StandardCharsets.UTF_8))
+          .isEqualTo(server.getToken());
+      if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+        assertThat(Files.getPosixFilePermissions(cmd.serverTokenFile.toPath()))
+            .isEqualTo(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE));
+      }
+      assertThat(server.isAuthenticated("Bearer " + server.getToken())).isTrue();
+      assertThat(server.isAuthenticated(server.getToken())).isFalse();
+      assertThat(server.isAuthenticated(null)).isFalse();
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testBandwidth() {
+    try {
+      WebinCliServer.BandwidthSettings settings = new WebinCliServer.BandwidthSettings();
+      settings.rate = "100M";
+      settings.schedule = "";
+      WebinCliServer.setBandwidth(settings);
+      assertThat(WebinCliServer.getBandwidth())
+          .containsEntry("rate", 100_000_000L)
+          .containsEntry("currentRate", 100_000_000L)
+          .containsEntry("connectionRate", 0L);
+
+      // Invalid settings do not change any limit.
+      settings = new WebinCliServer.BandwidthSettings();
+      settings.connectionRate = "10M";
+      settings.schedule = "invalid";
+      WebinCliServer.BandwidthSettings invalidSettings = settings;
+      assertThatThrownBy(() -> WebinCliServer.setBandwidth(invalidSettings)).isInstanceOf(WebinCliException.class);
+      assertThat(WebinCliServer.getBandwidth()).containsEntry("connectionRate", 0L);
+    } finally {
+      BandwidthLimiter.configure(null, null, null);
+    }
+  }
+}
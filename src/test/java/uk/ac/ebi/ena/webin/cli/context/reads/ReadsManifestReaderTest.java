@@ -13,9 +13,11 @@ package uk.ac.ebi.ena.webin.cli.context.reads;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.util.StreamUtils;
 import uk.ac.ebi.ena.webin.cli.ManifestBuilder;
 import uk.ac.ebi.ena.webin.cli.ReportTester;
 import uk.ac.ebi.ena.webin.cli.TempFileBuilder;
+import uk.ac.ebi.ena.webin.cli.WebinCliConfig;
 import uk.ac.ebi.ena.webin.cli.WebinCliException;
 import uk.ac.ebi.ena.webin.cli.WebinCliExecutor;
 import uk.ac.ebi.ena.webin.cli.WebinCliExecutorBuilder;
@@ -28,8 +30,15 @@ import uk.ac.ebi.ena.webin.cli.validator.manifest.ReadsManifest;
 import uk.ac.ebi.ena.webin.cli.validator.response.ReadsValidationResponse;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.Locale;
+import java.util.zip.GZIPInputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -345,4 +354,62 @@ ReadsManifestReaderTest {
         Assert.assertTrue(manifest.files().get().get(1).getAttributes().stream().anyMatch(att -> att.getValue().equals("paired")));
         Assert.assertTrue(manifest.files().get().get(2).getAttributes().stream().anyMatch(att -> att.getValue().equals("cell_barcode")));
     }
+
+    @Test
+    public void testCompressFastq() {
+        Path inputDir = WebinCliTestUtils.createTempDir().toPath();
+        WebinCliParameters parameters = WebinCliTestUtils.getTestWebinCliParameters();
+        parameters.setOutputDir(WebinCliTestUtils.createTempDir());
+        parameters.setCompressFastq(true);
+        ReadsManifestReader manifestReader = new ReadsManifestReader(parameters, new MetadataProcessorFactory(parameters));
+        manifestReader.readManifest(inputDir,
+                new ManifestBuilder().jsonFormat()
+                        .field(Field.PLATFORM, "illumina")
+                        .field(Field.NAME, "SOME-FANCY-NAME")
+                        .file("FASTQ", TempFileBuilder.file(inputDir, ".fastq", "@read\nACGT\n+\nIIII\n"))
+                        .file("FASTQ", TempFileBuilder.gzip(inputDir, ".fastq.gz", "@read\nACGT\n+\nIIII\n"))
+                        .build());
+
+        ReadsManifest manifest = manifestReader.getManifest();
+        assertThat(manifest.files().files()).hasSize(2);
+        File compressedFile = manifest.files().files().get(0);
+        assertThat(compressedFile.getName()).endsWith(".fastq.gz");
+        assertThat(compressedFile.getParentFile().getName()).isEqualTo(WebinCliConfig.COMPRESS_DIR);
+        assertThat(compressedFile).isFile();
+        assertThat(manifest.files().files().get(1).getParentFile()).isNotEqualTo(compressedFile.getParentFile());
+    }
+
+    @Test
+    public void testCompressFastqWithSameName() throws IOException {
+        Path inputDir = WebinCliTestUtils.createTempDir().toPath();
+        Files.createDirectories(inputDir.resolve("lane1"));
+        Files.createDirectories(inputDir.resolve("lane2"));
+        Files.write(inputDir.resolve("lane1/R1.fastq"), "@read1\nACGT\n+\nIIII\n".getBytes());
+        Files.write(inputDir.resolve("lane2/R1.fastq"), "@read2\nTTTT\n+\nIIII\n".getBytes());
+
+        WebinCliParameters parameters = WebinCliTestUtils.getTestWebinCliParameters();
+        parameters.setOutputDir(WebinCliTestUtils.createTempDir());
+        parameters.setCompressFastq(true);
+        ReadsManifestReader manifestReader = new ReadsManifestReader(parameters, new MetadataProcessorFactory(parameters));
+        manifestReader.readManifest(inputDir,
+                new ManifestBuilder().jsonFormat()
+                        .field(Field.PLATFORM, "illumina")
+                        .field(Field.NAME, "SOME-FANCY-NAME")
+                        .file("FASTQ", "lane1/R1.fastq")
+                        .file("FASTQ", "lane2/R1.fastq")
+                        .build());
+
+        List<File> files = manifestReader.getManifest().files().files();
+        assertThat(files).hasSize(2);
+        assertThat(files.get(0).getName()).isEqualTo("lane1_R1.fastq.gz");
+        assertThat(files.get(1).getName()).isEqualTo("lane2_R1.fastq.gz");
+        assertThat(decompress(files.get(0))).isEqualTo("@read1\nACGT\n+\nIIII\n");
+        assertThat(decompress(files.get(1))).isEqualTo("@read2\nTTTT\n+\nIIII\n");
+    }
+
+    private static String decompress(File file) throws IOException {
+        try (InputStream is = new GZIPInputStream(Files.newInputStream(file.toPath()))) {
+            return StreamUtils.copyToString(is, StandardCharsets.UTF_8);
+        }
+    }
 }
@@ -17,8 +17,11 @@ import uk.ac.ebi.ena.webin.cli.WebinCliMessage;
 import uk.ac.ebi.ena.webin.cli.WebinCliTestUtils;
 import uk.ac.ebi.ena.webin.cli.manifest.processor.CVFieldProcessor;
 import uk.ac.ebi.ena.webin.cli.manifest.processor.FileSuffixProcessor;
+import uk.ac.ebi.ena.webin.cli.validator.message.ValidationMessage;
 import uk.ac.ebi.ena.webin.cli.validator.message.ValidationMessage.Severity;
+import uk.ac.ebi.ena.webin.cli.validator.message.ValidationResult;
 import uk.ac.ebi.ena.webin.cli.validator.message.listener.MessageCounter;
+import uk.ac.ebi.ena.webin.cli.validator.message.listener.MessageListener;
 
 import java.io.File;
 import java.io.IOException;
@@ -28,6 +31,9 @@ import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class ManifestReaderTest {
 
@@ -435,6 +441,57 @@ public class ManifestReaderTest {
             .findFirst().isPresent());
     }
 
+    static class RemoteFieldProcessor implements ManifestFieldProcessor {
+        private final CountDownLatch latch;
+        private final ValidationMessage message;
+        private final long delayMillis;
+        private volatile boolean concurrent;
+
+        RemoteFieldProcessor(CountDownLatch latch, ValidationMessage message, long delayMillis) {
+            this.latch = latch;
+            this.message = message;
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public boolean isRemote() {
+            return true;
+        }
+
+        @Override
+        public void process(ValidationResult result, ManifestFieldValue fieldValue) {
+            latch.countDown();
+            try {
+                concurrent = latch.await(10, TimeUnit.SECONDS);
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            result.add(message);
+        }
+    }
+
+    @Test public void RemoteFieldsAreValidatedConcurrentlyInFieldOrder() {
+        CountDownLatch latch = new CountDownLatch(2);
+        ValidationMessage message1 = ValidationMessage.error(WebinCliMessage.MANIFEST_READER_UNKNOWN_FIELD_ERROR, "REMOTE_FIELD_1");
+        ValidationMessage message2 = ValidationMessage.error(WebinCliMessage.MANIFEST_READER_UNKNOWN_FIELD_ERROR, "REMOTE_FIELD_2");
+        RemoteFieldProcessor processor1 = new RemoteFieldProcessor(latch, message1, 200);
+        RemoteFieldProcessor processor2 = new RemoteFieldProcessor(latch, message2, 0);
+
+        ManifestReader reader = new TestManifestReader(new ManifestFieldDefinition.Builder()
+            .meta().optional().name("REMOTE_FIELD_1").desc("DESCRIPTION_1").processor(processor1).and()
+            .meta().optional().name("REMOTE_FIELD_2").desc("DESCRIPTION_2").processor(processor2).build());
+        List<ValidationMessage> messages = new CopyOnWriteArrayList<>();
+        reader.addListener((MessageListener) messages::add);
+
+        reader.readManifest(inputDir, createManifest("REMOTE_FIELD_1 VALUE1\nREMOTE_FIELD_2 VALUE2\n"));
+
+        Assert.assertTrue(processor1.concurrent);
+        Assert.assertTrue(processor2.concurrent);
+        Assert.assertEquals(Arrays.asList(message1, message2), messages);
+        Assert.assertFalse(reader.getManifestReaderResult().getFields().get(0).isValidFieldValueOrFileSuffix());
+    }
+
     private static File createManifest(String contents) {
         try {
             return Files.write(Files.createTempFile("TEMP", "MANIFEST"),
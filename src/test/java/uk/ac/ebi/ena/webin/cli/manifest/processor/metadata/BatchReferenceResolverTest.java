@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.manifest.processor.metadata;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import uk.ac.ebi.ena.webin.cli.WebinCliException;
+
+public class BatchReferenceResolverTest {
+
+  @Test
+  public void testParseIds() {
+    assertThat(BatchReferenceResolver.parseIds("ERR1, ERR2,ERR3 ,, ERR2"))
+        .containsExactly("ERR1", "ERR2", "ERR3");
+    assertThat(BatchReferenceResolver.parseIds(" ")).isEmpty();
+  }
+
+  @Test
+  public void testResolveInOrder() {
+    List<String> ids = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      ids.add("ERR" + i);
+    }
+
+    BatchReferenceResolver.Result<String> result =
+        BatchReferenceResolver.resolve(
+            ids,
+            id -> {
+              try {
+                Thread.sleep(id.length() % 2 == 0 ? 10 : 0);
+              } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+              }
+              return id.toLowerCase();
+            });
+
+    assertThat(result.getErrors()).isEmpty();
+    assertThat(result.getReferences())
+        .isEqualTo(ids.stream().map(String::toLowerCase).collect(Collectors.toList()));
+  }
+
+  @Test
+  public void testBoundedParallelism() {
+    List<String> ids = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      ids.add("ERR" + i);
+    }
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+
+    BatchReferenceResolver.resolve(
+        ids,
+        id -> {
+          maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+          try {
+            Thread.sleep(5);
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          } finally {
+            running.decrementAndGet();
+          }
+          return id;
+        });
+
+    assertThat(maxRunning.get()).isBetween(2, BatchReferenceResolver.MAX_PARALLELISM);
+  }
+
+  @Test
+  public void testCollectErrors() {
+    BatchReferenceResolver.Result<String> result =
+        BatchReferenceResolver.resolve(
+            BatchReferenceResolver.parseIds("INVALID1, ERR1, INVALID2"),
+            id -> {
+              if (id.startsWith("INVALID")) {
+                throw WebinCliException.userError(id);
+              }
+              return id;
+            });
+
+    assertThat(result.getReferences()).containsExactly("ERR1");
+    assertThat(result.getErrors()).extracting(Throwable::getMessage).containsExactly("INVALID1", "INVALID2");
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import uk.ac.ebi.ena.webin.cli.submit.SubmissionBundle;
+
+public class
+SubmitServiceTest {
+
+    private static SubmissionBundle createBundle(String name) {
+        return createBundle(name,
+            "<SUBMISSION_SET><SUBMISSION><ACTIONS><ACTION><ADD/></ACTION></ACTIONS><SUBMISSION_ATTRIBUTES>" +
+            "<SUBMISSION_ATTRIBUTE><TAG>ENA-SUBMISSION-TOOL</TAG><VALUE>WebinCli</VALUE></SUBMISSION_ATTRIBUTE>" +
+            "<SUBMISSION_ATTRIBUTE><TAG>ENA-MANIFEST-FILE</TAG><VALUE>NAME " + name + "</VALUE></SUBMISSION_ATTRIBUTE>" +
+            "<SUBMISSION_ATTRIBUTE><TAG>ENA-MANIFEST-FILE-MD5</TAG><VALUE>" + name + "-md5</VALUE></SUBMISSION_ATTRIBUTE>" +
+            "</SUBMISSION_ATTRIBUTES></SUBMISSION></SUBMISSION_SET>");
+    }
+
+    private static SubmissionBundle createBundle(String name, String submissionXml) {
+        String runXml = "<RUN_SET><RUN alias=\"webin-reads-" + name + "\"/></RUN_SET>";
+        String experimentXml = "<EXPERIMENT_SET><EXPERIMENT alias=\"webin-reads-" + name + "\"/></EXPERIMENT_SET>";
+
+        File submitDir = new File(name);
+        return new SubmissionBundle(submitDir, name, Collections.emptyList(), Arrays.asList(
+            new SubmissionBundle.SubmissionXMLFile(
+                SubmissionBundle.SubmissionXMLFileType.SUBMISSION, new File(submitDir, "submission.xml"), submissionXml),
+            new SubmissionBundle.SubmissionXMLFile(
+                SubmissionBundle.SubmissionXMLFileType.RUN, new File(submitDir, "run.xml"), runXml),
+            new SubmissionBundle.SubmissionXMLFile(
+                SubmissionBundle.SubmissionXMLFileType.EXPERIMENT, new File(submitDir, "experiment.xml"), experimentXml)),
+            name + "-md5");
+    }
+
+    @Test
+    public void
+    testCreateCombinedSubmissionXml() {
+        String xml = new SubmitService.Builder()
+            .setUserName("test")
+            .setPassword("test")
+            .setTest(true)
+            .build()
+            .createCombinedSubmissionXml(Arrays.asList(createBundle("run1"), createBundle("run2")));
+
+        assertThat(xml).startsWith("<WEBIN>").endsWith("</WEBIN>");
+        assertThat(xml.split("<SUBMISSION_SET>", -1)).hasSize(2);
+        assertThat(xml.split("<RUN_SET>", -1)).hasSize(2);
+        assertThat(xml.split("<EXPERIMENT_SET>", -1)).hasSize(2);
+        assertThat(xml.split("ENA-SUBMISSION-TOOL", -1)).hasSize(2);
+        assertThat(xml).contains("NAME run1", "NAME run2", "run1-md5", "run2-md5");
+        assertThat(xml).contains("<RUN alias=\"webin-reads-run1\"", "<RUN alias=\"webin-reads-run2\"");
+        assertThat(xml).contains("<EXPERIMENT alias=\"webin-reads-run1\"", "<EXPERIMENT alias=\"webin-reads-run2\"");
+    }
+
+    @Test
+    public void
+    testCreateCombinedSubmissionXmlWithoutSubmissionAttributes() {
+        String noAttributesXml = "<SUBMISSION_SET><SUBMISSION><ACTIONS><ACTION><ADD/></ACTION></ACTIONS>" +
+            "</SUBMISSION></SUBMISSION_SET>";
+        String xml = new SubmitService.Builder()
+            .setUserName("test")
+            .setPassword("test")
+            .setTest(true)
+            .build()
+            .createCombinedSubmissionXml(Arrays.asList(
+                createBundle("run1", noAttributesXml), createBundle("run2"), createBundle("run3", noAttributesXml)));
+
+        assertThat(xml.split("<SUBMISSION_SET>", -1)).hasSize(2);
+        assertThat(xml).contains("NAME run2", "run2-md5");
+        assertThat(xml).doesNotContain("ENA-SUBMISSION-TOOL");
+    }
+}
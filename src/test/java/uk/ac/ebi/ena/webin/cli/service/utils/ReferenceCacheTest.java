@@ -0,0 +1,290 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import uk.ac.ebi.ena.webin.cli.WebinCliException;
+import uk.ac.ebi.ena.webin.cli.WebinCliTestUtils;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Analysis;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Attribute;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Run;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Sample;
+import uk.ac.ebi.ena.webin.cli.validator.reference.Study;
+
+public class ReferenceCacheTest {
+
+  public static class TestReference {
+    public String id;
+    public String accession;
+
+    public TestReference() {
+    }
+
+    TestReference(String id, String accession) {
+      this.id = id;
+      this.accession = accession;
+    }
+  }
+
+  /** A reference that can't be deserialised. */
+  public static class ImmutableReference {
+    private final String accession;
+
+    ImmutableReference(String accession) {
+      this.accession = accession;
+    }
+
+    public String getAccession() {
+      return accession;
+    }
+  }
+
+  private static final long TTL = TimeUnit.HOURS.toSeconds(1);
+
+  private static TestReference get(ReferenceCache cache, String account, String id, Supplier<TestReference> supplier) {
+    return cache.get(ReferenceCache.Type.STUDY, true, account, id, TestReference.class, supplier);
+  }
+
+  private static Supplier<TestReference> supplier(AtomicInteger count, String accession) {
+    return () -> {
+      count.incrementAndGet();
+      return new TestReference("id", accession);
+    };
+  }
+
+  @Test
+  public void testCache() {
+    ReferenceCache cache = new ReferenceCache(null, TTL);
+    AtomicInteger count = new AtomicInteger();
+
+    assertThat(get(cache, "Webin-1", "id", supplier(count, "PRJEB1")).accession).isEqualTo("PRJEB1");
+    assertThat(get(cache, "Webin-1", "id", supplier(count, "PRJEB2")).accession).isEqualTo("PRJEB1");
+    assertThat(count.get()).isEqualTo(1);
+
+    // The references are cached separately for each account, service and type.
+    assertThat(get(cache, "Webin-2", "id", supplier(count, "PRJEB2")).accession).isEqualTo("PRJEB2");
+    assertThat(cache.get(ReferenceCache.Type.STUDY, false, "Webin-1", "id", TestReference.class,
+        supplier(count, "PRJEB3")).accession).isEqualTo("PRJEB3");
+    assertThat(cache.get(ReferenceCache.Type.SAMPLE, true, "Webin-1", "id", TestReference.class,
+        supplier(count, "SAMEA4")).accession).isEqualTo("SAMEA4");
+    assertThat(count.get()).isEqualTo(4);
+  }
+
+  @Test
+  public void testErrorsAreNotCached() {
+    ReferenceCache cache = new ReferenceCache(null, TTL);
+    AtomicInteger count = new AtomicInteger();
+
+    assertThatThrownBy(() -> get(cache, "Webin-1", "id", () -> {
+      count.incrementAndGet();
+      throw WebinCliException.validationError("Unknown study");
+    })).isInstanceOf(WebinCliException.class);
+    assertThat(get(cache, "Webin-1", "id", () -> null)).isNull();
+
+    assertThat(get(cache, "Webin-1", "id", supplier(count, "PRJEB1")).accession).isEqualTo("PRJEB1");
+    assertThat(count.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testDisabled() {
+    ReferenceCache cache = new ReferenceCache(null, 0);
+    AtomicInteger count = new AtomicInteger();
+    get(cache, "Webin-1", "id", supplier(count, "PRJEB1"));
+    get(cache, "Webin-1", "id", supplier(count, "PRJEB1"));
+    assertThat(count.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testCoalesceConcurrentCalls() throws Exception {
+    ReferenceCache cache = new ReferenceCache(null, 0);
+    AtomicInteger count = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<TestReference> first = executor.submit(() -> get(cache, "Webin-1", "id", () -> {
+        count.incrementAndGet();
+        started.countDown();
+        try {
+          release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+        return new TestReference("id", "PRJEB1");
+      }));
+      assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+
+      Future<TestReference> second = executor.submit(() -> get(cache, "Webin-1", "id", supplier(count, "PRJEB2")));
+      // Wait until the second call is waiting for the first one.
+      long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+      while (cache.getWaitingCalls() == 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertThat(cache.getWaitingCalls()).isEqualTo(1);
+      release.countDown();
+
+      assertThat(first.get().accession).isEqualTo("PRJEB1");
+      assertThat(second.get().accession).isEqualTo("PRJEB1");
+      assertThat(second.get()).isNotSameAs(first.get());
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertThat(count.get()).isEqualTo(1);
+    assertThat(cache.getRemoteCalls()).isEqualTo(1);
+    assertThat(cache.getCoalescedCalls()).isEqualTo(1);
+    assertThat(cache.getCachedCalls()).isZero();
+  }
+
+  @Test
+  public void testReferenceTypes() {
+    ReferenceCache cache = new ReferenceCache(null, TTL);
+
+    Study study = new Study();
+    study.setStudyId("ERP000001");
+    study.setBioProjectId("PRJEB1");
+    study.setLocusTags(Arrays.asList("TAG1", "TAG2"));
+    Study cachedStudy = getTwice(cache, ReferenceCache.Type.STUDY, Study.class, study);
+    assertThat(cachedStudy.getStudyId()).isEqualTo("ERP000001");
+    assertThat(cachedStudy.getBioProjectId()).isEqualTo("PRJEB1");
+    assertThat(cachedStudy.getLocusTags()).containsExactly("TAG1", "TAG2");
+
+    Sample sample = new Sample();
+    sample.setBioSampleId("SAMEA1");
+    sample.setOrganism("Quercus robur");
+    sample.setAttributes(Arrays.asList(new Attribute("strain", "K-12"), new Attribute("isolate", "A")));
+    Sample cachedSample = getTwice(cache, ReferenceCache.Type.SAMPLE, Sample.class, sample);
+    assertThat(cachedSample.getBioSampleId()).isEqualTo("SAMEA1");
+    assertThat(cachedSample.getOrganism()).isEqualTo("Quercus robur");
+    assertThat(cachedSample.getAttributes()).hasSize(2);
+    assertThat(cachedSample.getAttributes().get(0).getName()).isEqualTo("strain");
+    assertThat(cachedSample.getAttributes().get(0).getValue()).isEqualTo("K-12");
+    assertThat(cachedSample.getAttributes().get(1).getName()).isEqualTo("isolate");
+    assertThat(cachedSample.getAttributes().get(1).getValue()).isEqualTo("A");
+
+    Run run = new Run();
+    run.setRunId("ERR1");
+    run.setName("run alias");
+    Run cachedRun = getTwice(cache, ReferenceCache.Type.RUN, Run.class, run);
+    assertThat(cachedRun.getRunId()).isEqualTo("ERR1");
+    assertThat(cachedRun.getName()).isEqualTo("run alias");
+
+    Analysis analysis = new Analysis();
+    analysis.setAnalysisId("ERZ1");
+    analysis.setName("analysis alias");
+    Analysis cachedAnalysis = getTwice(cache, ReferenceCache.Type.ANALYSIS, Analysis.class, analysis);
+    assertThat(cachedAnalysis.getAnalysisId()).isEqualTo("ERZ1");
+    assertThat(cachedAnalysis.getName()).isEqualTo("analysis alias");
+  }
+
+  /**
+   * Retrieves the reference and then the copy of the reference. The first caller receives the retrieved reference.
+   */
+  private static <T> T getTwice(ReferenceCache cache, ReferenceCache.Type type, Class<T> valueClass, T value) {
+    assertThat(cache.get(type, true, "Webin-1", "id", valueClass, () -> value)).isSameAs(value);
+    T copy = cache.get(type, true, "Webin-1", "id", valueClass, () -> value);
+    assertThat(copy).isNotNull();
+    return copy;
+  }
+
+  @Test
+  public void testReferenceThatCannotBeCopied() {
+    ReferenceCache cache = new ReferenceCache(null, TTL);
+    AtomicInteger count = new AtomicInteger();
+    Supplier<ImmutableReference> supplier = () -> {
+      count.incrementAndGet();
+      return new ImmutableReference("PRJEB1");
+    };
+
+    // The reference is not cached and is retrieved again.
+    for (int i = 0; i < 2; ++i) {
+      assertThat(cache.get(ReferenceCache.Type.STUDY, true, "Webin-1", "id", ImmutableReference.class, supplier)
+          .getAccession()).isEqualTo("PRJEB1");
+    }
+    assertThat(count.get()).isEqualTo(2);
+    assertThat(cache.getCachedCalls()).isZero();
+  }
+
+  @Test
+  public void testCounters() {
+    ReferenceCache cache = new ReferenceCache(null, TTL);
+    AtomicInteger count = new AtomicInteger();
+    get(cache, "Webin-1", "id", supplier(count, "PRJEB1"));
+    get(cache, "Webin-1", "id", supplier(count, "PRJEB1"));
+    get(cache, "Webin-1", "id", supplier(count, "PRJEB1"));
+    assertThat(cache.getRemoteCalls()).isEqualTo(1);
+    assertThat(cache.getCachedCalls()).isEqualTo(2);
+    assertThat(cache.getCoalescedCalls()).isZero();
+  }
+
+  @Test
+  public void testCacheFile() throws IOException {
+    File cacheFile = new File(WebinCliTestUtils.createTempDir(), "references");
+    AtomicInteger count = new AtomicInteger();
+
+    get(new ReferenceCache(cacheFile, TTL), "Webin-1", "id", supplier(count, "PRJEB1"));
+    assertThat(get(new ReferenceCache(cacheFile, TTL), "Webin-1", "id", supplier(count, "PRJEB2")).accession)
+        .isEqualTo("PRJEB1");
+    assertThat(count.get()).isEqualTo(1);
+
+    // Expired references are not used.
+    String expired = String.join("\t", "STUDY", "true", "Webin-1", "old", "0", "{\"accession\":\"PRJEB0\"}");
+    Files.write(cacheFile.toPath(), Collections.singletonList(expired), StandardCharsets.UTF_8,
+        StandardOpenOption.APPEND);
+    assertThat(get(new ReferenceCache(cacheFile, TTL), "Webin-1", "old", supplier(count, "PRJEB3")).accession)
+        .isEqualTo("PRJEB3");
+
+    ReferenceCache.configure(cacheFile, TTL, true);
+    try {
+      assertThat(cacheFile).doesNotExist();
+    } finally {
+      ReferenceCache.configure(null, ReferenceCache.DEFAULT_TTL_SECONDS, false);
+    }
+  }
+
+  @Test
+  public void testCompactKeepsAppendedReferences() {
+    File cacheFile = new File(WebinCliTestUtils.createTempDir(), "references");
+    AtomicInteger count = new AtomicInteger();
+
+    ReferenceCache cache = new ReferenceCache(cacheFile, TTL);
+    get(cache, "Webin-1", "id1", supplier(count, "PRJEB1"));
+
+    // Another run appends to the cache file after this run has read it.
+    get(new ReferenceCache(cacheFile, TTL), "Webin-1", "id2", supplier(count, "PRJEB2"));
+    cache.compact();
+
+    ReferenceCache compactedCache = new ReferenceCache(cacheFile, TTL);
+    assertThat(get(compactedCache, "Webin-1", "id1", supplier(count, "PRJEB3")).accession).isEqualTo("PRJEB1");
+    assertThat(get(compactedCache, "Webin-1", "id2", supplier(count, "PRJEB4")).accession).isEqualTo("PRJEB2");
+    assertThat(count.get()).isEqualTo(2);
+  }
+}
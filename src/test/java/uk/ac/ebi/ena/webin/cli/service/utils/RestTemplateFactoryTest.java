@@ -0,0 +1,51 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+public class RestTemplateFactoryTest {
+
+  @After
+  public void tearDown() {
+    RestTemplateFactory.configure(0, 0, 0);
+  }
+
+  @Test
+  public void testSharedRestTemplate() {
+    RestTemplate restTemplate = RestTemplateFactory.getRestTemplate();
+    assertThat(restTemplate).isSameAs(RestTemplateFactory.getRestTemplate());
+    assertThat(restTemplate.getRequestFactory()).isInstanceOf(HttpComponentsClientHttpRequestFactory.class);
+  }
+
+  @Test
+  public void testConfigure() {
+    RestTemplate restTemplate = RestTemplateFactory.getRestTemplate();
+    RestTemplateFactory.configure(5, 10, 20);
+    assertThat(RestTemplateFactory.getRestTemplate()).isNotSameAs(restTemplate);
+    assertThat(RestTemplateFactory.getInstance().getMaxConnectionsPerRoute()).isEqualTo(5);
+    assertThat(RestTemplateFactory.getInstance().getConnectTimeoutSeconds()).isEqualTo(10);
+    assertThat(RestTemplateFactory.getInstance().getReadTimeoutSeconds()).isEqualTo(20);
+
+    RestTemplateFactory.configure(0, -1, 0);
+    assertThat(RestTemplateFactory.getInstance().getMaxConnectionsPerRoute())
+        .isEqualTo(RestTemplateFactory.DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+    assertThat(RestTemplateFactory.getInstance().getConnectTimeoutSeconds())
+        .isEqualTo(RestTemplateFactory.DEFAULT_CONNECT_TIMEOUT_SECONDS);
+    assertThat(RestTemplateFactory.getInstance().getReadTimeoutSeconds())
+        .isEqualTo(RestTemplateFactory.DEFAULT_READ_TIMEOUT_SECONDS);
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.service.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import uk.ac.ebi.ena.webin.cli.WebinCliException;
+
+public class SingleFlightTest {
+
+  @Test
+  public void testSequentialCallsAreNotCoalesced() {
+    SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+    AtomicInteger count = new AtomicInteger();
+
+    SingleFlight.Call<Integer> first = singleFlight.execute("key", count::incrementAndGet);
+    SingleFlight.Call<Integer> second = singleFlight.execute("key", count::incrementAndGet);
+
+    assertThat(first.getValue()).isEqualTo(1);
+    assertThat(first.isCoalesced()).isFalse();
+    assertThat(second.getValue()).isEqualTo(2);
+    assertThat(second.isCoalesced()).isFalse();
+  }
+
+  @Test
+  public void testConcurrentCallsShareError() throws Exception {
+    SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+    AtomicInteger count = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<SingleFlight.Call<Integer>> first = executor.submit(() -> singleFlight.execute("key", () -> {
+        count.incrementAndGet();
+        started.countDown();
+        try {
+          release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+        throw WebinCliException.userError("Unknown study");
+      }));
+      assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+
+      Future<SingleFlight.Call<Integer>> second = executor.submit(() -> singleFlight.execute("key", count::incrementAndGet));
+      // Wait until the second call is waiting for the first one.
+      long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+      while (singleFlight.getWaitingCalls() == 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertThat(singleFlight.getWaitingCalls()).isEqualTo(1);
+      release.countDown();
+
+      assertThatThrownBy(first::get).isInstanceOf(ExecutionException.class)
+          .hasCauseInstanceOf(WebinCliException.class);
+      assertThatThrownBy(second::get).isInstanceOf(ExecutionException.class)
+          .hasCauseInstanceOf(WebinCliException.class);
+    } finally {
+      executor.shutdownNow();
+    }
+    assertThat(count.get()).isEqualTo(1);
+  }
+}
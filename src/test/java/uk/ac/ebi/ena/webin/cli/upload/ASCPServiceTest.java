@@ -0,0 +1,68 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.upload;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import uk.ac.ebi.ena.webin.cli.WebinCliException;
+import uk.ac.ebi.ena.webin.cli.WebinCliTestUtils;
+
+public class ASCPServiceTest {
+
+  @Test
+  public void testSessionRate() {
+    assertThat(new ASCPService().getSessionRate(0)).isEqualTo("300000K");
+    assertThat(new ASCPService.Builder().setSessions(4).setRate("1G").build().getSessionRate(0)).isEqualTo("250000K");
+    assertThat(new ASCPService.Builder().setSessions(2).setRate("500k").build().getSessionRate(0)).isEqualTo("250K");
+    assertThat(new ASCPService.Builder().setRate("auto").build().getSessionRate(0)).isNull();
+    assertThatThrownBy(() -> new ASCPService.Builder().setRate("fast").build())
+        .isInstanceOf(WebinCliException.class);
+  }
+
+  @Test
+  public void testSessionRateWithTotalShare() {
+    assertThat(new ASCPService.Builder().setRate("auto").build().getSessionRate(100_000_000L)).isEqualTo("100000K");
+    assertThat(new ASCPService.Builder().setSessions(2).setRate("1G").build().getSessionRate(100_000_000L))
+        .isEqualTo("100000K");
+    assertThat(new ASCPService.Builder().setSessions(4).setRate("200M").build().getSessionRate(100_000_000L))
+        .isEqualTo("50000K");
+  }
+
+  @Test
+  public void testDivideFiles() throws IOException {
+    File dir = WebinCliTestUtils.createTempDir();
+    File[] files = new File[5];
+    int[] sizes = {100, 400, 200, 300, 50};
+    for (int i = 0; i < files.length; ++i) {
+      files[i] = new File(dir, "file" + i);
+      Files.write(files[i].toPath(), new byte[sizes[i]]);
+    }
+
+    List<List<File>> sessionFiles =
+        new ASCPService.Builder().setSessions(2).build().divideFiles(Arrays.asList(files));
+
+    assertThat(sessionFiles).hasSize(2);
+    assertThat(sessionFiles.get(0)).containsExactly(files[1], files[0], files[4]);
+    assertThat(sessionFiles.get(1)).containsExactly(files[3], files[2]);
+
+    assertThat(new ASCPService.Builder().setSessions(8).build().divideFiles(Arrays.asList(files[0], files[1])))
+        .hasSize(2);
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.upload;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import uk.ac.ebi.ena.webin.cli.WebinCliException;
+
+public class BandwidthLimiterTest {
+
+  @Test
+  public void testParseRate() {
+    assertThat(BandwidthLimiter.parseRate(null)).isEqualTo(0);
+    assertThat(BandwidthLimiter.parseRate("")).isEqualTo(0);
+    assertThat(BandwidthLimiter.parseRate("800")).isEqualTo(800);
+    assertThat(BandwidthLimiter.parseRate("10k")).isEqualTo(10_000);
+    assertThat(BandwidthLimiter.parseRate("100M")).isEqualTo(100_000_000);
+    assertThat(BandwidthLimiter.parseRate("2G")).isEqualTo(2_000_000_000);
+    assertThatThrownBy(() -> BandwidthLimiter.parseRate("fast")).isInstanceOf(WebinCliException.class);
+  }
+
+  @Test
+  public void testParseSchedule() {
+    List<BandwidthLimiter.ScheduleEntry> schedule = BandwidthLimiter.parseSchedule("19:00=0, 07:00=100M");
+    assertThat(schedule).hasSize(2);
+    assertThat(schedule.get(0).getStartTime()).isEqualTo(LocalTime.of(7, 0));
+    assertThat(schedule.get(0).getRate()).isEqualTo(100_000_000);
+    assertThat(schedule.get(1).getStartTime()).isEqualTo(LocalTime.of(19, 0));
+    assertThat(schedule.get(1).getRate()).isEqualTo(0);
+
+    assertThat(BandwidthLimiter.parseSchedule(null)).isEmpty();
+    assertThatThrownBy(() -> BandwidthLimiter.parseSchedule("07:00")).isInstanceOf(WebinCliException.class);
+    assertThatThrownBy(() -> BandwidthLimiter.parseSchedule("7am=10M")).isInstanceOf(WebinCliException.class);
+  }
+
+  @Test
+  public void testScheduledRate() {
+    BandwidthLimiter limiter = new BandwidthLimiter();
+    limiter.setRate(1000);
+    assertThat(limiter.getRate(LocalTime.NOON)).isEqualTo(1000);
+
+    limiter.setSchedule(BandwidthLimiter.parseSchedule("07:00=100M,19:00=0"));
+    assertThat(limiter.getRate(LocalTime.of(6, 59))).isEqualTo(0);
+    assertThat(limiter.getRate(LocalTime.of(7, 0))).isEqualTo(100_000_000);
+    assertThat(limiter.getRate(LocalTime.NOON)).isEqualTo(100_000_000);
+    assertThat(limiter.getRate(LocalTime.of(23, 0))).isEqualTo(0);
+  }
+
+  @Test
+  public void testSessionRate() throws Exception {
+    ExecutorService executorService = Executors.newSingleThreadExecutor();
+    BandwidthLimiter.configure("100M", null, null);
+    try {
+      // The sessions of two submissions share the total rate.
+      BandwidthLimiter.addSessions(2);
+      long rate1 = BandwidthLimiter.acquireSessionRate();
+      assertThat(rate1).isEqualTo(50_000_000L);
+      BandwidthLimiter.addSessions(2);
+      long rate2 = BandwidthLimiter.acquireSessionRate();
+      long rate3 = BandwidthLimiter.acquireSessionRate();
+      assertThat(rate2).isEqualTo(25_000_000L);
+      assertThat(rate3).isEqualTo(25_000_000L);
+
+      // The last session waits until the total rate is not exceeded.
+      Future<Long> rate4 = executorService.submit(BandwidthLimiter::acquireSessionRate);
+      assertThatThrownBy(() -> rate4.get(200, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+      BandwidthLimiter.releaseSessionRate(rate1);
+      assertThat(rate4.get(5, TimeUnit.SECONDS)).isEqualTo(25_000_000L);
+
+      BandwidthLimiter.releaseSessionRate(rate2);
+      BandwidthLimiter.releaseSessionRate(rate3);
+      BandwidthLimiter.releaseSessionRate(rate4.get());
+    } finally {
+      BandwidthLimiter.removeSessions(4);
+      BandwidthLimiter.configure(null, null, null);
+      executorService.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testUnlimitedSessionRate() throws InterruptedException {
+    BandwidthLimiter.addSessions(1);
+    try {
+      assertThat(BandwidthLimiter.acquireSessionRate()).isEqualTo(0);
+    } finally {
+      BandwidthLimiter.removeSessions(1);
+    }
+  }
+
+  @Test
+  public void testTokenBucket() {
+    BandwidthLimiter.TokenBucket bucket = new BandwidthLimiter.TokenBucket();
+    long now = 0;
+    assertThat(bucket.take(1000, 0, now)).isEqualTo(0);
+
+    // The bucket starts empty and is refilled at the given rate.
+    assertThat(bucket.take(500, 1000, now)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(500));
+    now += TimeUnit.SECONDS.toNanos(1);
+    assertThat(bucket.take(500, 1000, now)).isEqualTo(0);
+
+    // The bucket holds at most one second of tokens.
+    now += TimeUnit.SECONDS.toNanos(10);
+    assertThat(bucket.take(1000, 1000, now)).isEqualTo(0);
+    assertThat(bucket.take(1000, 1000, now)).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+  }
+
+  @Test
+  public void testThrottle() throws IOException {
+    BandwidthLimiter limiter = new BandwidthLimiter();
+    limiter.setConnectionRate(80_000);
+
+    long start = System.nanoTime();
+    try (InputStream inputStream = limiter.throttle(new ByteArrayInputStream(new byte[2000]))) {
+      byte[] buffer = new byte[1000];
+      while (inputStream.read(buffer) >= 0) {
+      }
+    }
+    // 2000 bytes at 10000 bytes per second.
+    assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(150));
+  }
+}
@@ -10,8 +10,12 @@
  */
 package uk.ac.ebi.ena.webin.cli.upload;
 
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
 import org.junit.Test;
 
+import uk.ac.ebi.ena.webin.cli.WebinCliException;
+import uk.ac.ebi.ena.webin.cli.WebinCliMessage;
 import uk.ac.ebi.ena.webin.cli.WebinCliTestUtils;
 
 public class FtpServiceTest {
@@ -22,4 +26,14 @@ public class FtpServiceTest {
         WebinCliTestUtils.getTestWebinUsername(), WebinCliTestUtils.getTestWebinPassword());
     ftpService.disconnect();
   }
+
+  @Test
+  public void testConnectAfterDisconnect() {
+    // A cancelled upload does not open new connections.
+    FtpService ftpService = new FtpService();
+    ftpService.disconnect();
+    assertThatThrownBy(() -> ftpService.connect("Webin-0", "password"))
+        .isInstanceOf(WebinCliException.class)
+        .hasMessageContaining(WebinCliMessage.FTP_UPLOAD_CANCELLED_ERROR.text());
+  }
 }
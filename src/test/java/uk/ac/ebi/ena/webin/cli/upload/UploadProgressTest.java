@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.upload;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import uk.ac.ebi.ena.webin.cli.WebinCliTestUtils;
+
+public class UploadProgressTest {
+
+  @Test
+  public void testProgress() throws IOException {
+    File dir = WebinCliTestUtils.createTempDir();
+    File file1 = new File(dir, "reads1.fastq.gz");
+    File file2 = new File(dir, "reads2.fastq.gz");
+    Files.write(file1.toPath(), new byte[1000]);
+    Files.write(file2.toPath(), new byte[3000]);
+    File progressFile = new File(dir, "upload-progress.json");
+
+    try (UploadProgress uploadProgress = new UploadProgress(Arrays.asList(file1, file2), progressFile)) {
+      uploadProgress.update(file1, 500);
+      uploadProgress.update("reads2.fastq.gz", 1500);
+
+      UploadProgress.Progress progress = uploadProgress.report();
+      assertThat(progress.bytes).isEqualTo(2000);
+      assertThat(progress.size).isEqualTo(4000);
+      assertThat(progress.completed).isFalse();
+      assertThat(progress.files).hasSize(2);
+      assertThat(progress.files.get(0).bytes).isEqualTo(500);
+      assertThat(progress.files.get(1).bytes).isEqualTo(1500);
+      assertThat(uploadProgress.getSize("reads2.fastq.gz")).isEqualTo(3000);
+      assertThat(uploadProgress.getSize("unknown.fastq.gz")).isEqualTo(-1);
+
+      uploadProgress.completed(file1);
+      uploadProgress.completed(file2);
+    }
+
+    UploadProgress.Progress progress = new ObjectMapper().readValue(progressFile, UploadProgress.Progress.class);
+    assertThat(progress.bytes).isEqualTo(4000);
+    assertThat(progress.completed).isTrue();
+    assertThat(progress.eta).isEqualTo(0);
+  }
+
+  @Test
+  public void testAscpProgress() throws IOException {
+    File dir = WebinCliTestUtils.createTempDir();
+    File file = new File(dir, "reads.fastq.gz");
+    Files.write(file.toPath(), new byte[2000]);
+
+    ASCPService ascpService = new ASCPService();
+    try (UploadProgress uploadProgress = new UploadProgress(Arrays.asList(file), null)) {
+      ascpService.setUploadProgress(uploadProgress);
+      ascpService.processOutput("reads.fastq.gz                                 45%  900B  120Mb/s    00:10 ETA");
+      assertThat(uploadProgress.report().bytes).isEqualTo(900);
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import uk.ac.ebi.ena.webin.cli.WebinCliTestUtils;
+
+public class ChecksumCacheTest {
+
+  private static final String MD5 = "MD5";
+
+  @Test
+  public void testPersistentCache() throws IOException {
+    File dir = WebinCliTestUtils.createTempDir();
+    File cacheFile = new File(dir, "checksums");
+    File file = new File(dir, "reads.fastq");
+    Files.write(file.toPath(), "@read\nACGT\n+\n!!!!\n".getBytes());
+
+    String digest = new ChecksumCache(cacheFile, false).getDigest(MD5, file);
+    assertThat(digest).isEqualTo(FileUtils.calculateDigest(MD5, file));
+
+    ChecksumCache cache = new ChecksumCache(cacheFile, false);
+    assertThat(cache.getCachedDigest(MD5, file)).isEqualTo(digest);
+
+    // A changed size or last modified time invalidates the cached checksum.
+    Files.write(file.toPath(), "@read\nACGTA\n+\n!!!!!\n".getBytes());
+    assertThat(cache.getCachedDigest(MD5, file)).isNull();
+    assertThat(cache.getDigest(MD5, file)).isEqualTo(FileUtils.calculateDigest(MD5, file));
+  }
+
+  @Test
+  public void testCachedDigestIsUsed() throws IOException {
+    File dir = WebinCliTestUtils.createTempDir();
+    File file = new File(dir, "reads.fastq");
+    Files.write(file.toPath(), "@read\nACGT\n+\n!!!!\n".getBytes());
+
+    ChecksumCache cache = new ChecksumCache(null, false);
+    cache.putDigest(MD5, file, "cached");
+
+    assertThat(cache.getDigest(MD5, file)).isEqualTo("cached");
+  }
+
+  @Test
+  public void testForceRecompute() throws IOException {
+    File dir = WebinCliTestUtils.createTempDir();
+    File cacheFile = new File(dir, "checksums");
+    File file = new File(dir, "reads.fastq");
+    Files.write(file.toPath(), "@read\nACGT\n+\n!!!!\n".getBytes());
+
+    new ChecksumCache(cacheFile, false).putDigest(MD5, file, "cached");
+
+    ChecksumCache cache = new ChecksumCache(cacheFile, true);
+    assertThat(cache.getCachedDigest(MD5, file)).isNull();
+    assertThat(cache.getDigest(MD5, file)).isEqualTo(FileUtils.calculateDigest(MD5, file));
+  }
+
+  @Test
+  public void testCompactKeepsAppendedDigests() throws IOException {
+    File dir = WebinCliTestUtils.createTempDir();
+    File cacheFile = new File(dir, "checksums");
+    File file1 = new File(dir, "reads1.fastq");
+    File file2 = new File(dir, "reads2.fastq");
+    Files.write(file1.toPath(), "@read\nACGT\n+\n!!!!\n".getBytes());
+    Files.write(file2.toPath(), "@read\nACGTA\n+\n!!!!!\n".getBytes());
+
+    ChecksumCache cache = new ChecksumCache(cacheFile, false);
+    cache.putDigest(MD5, file1, "cached1");
+
+    // Another run appends to the cache file after this run has read it.
+    new ChecksumCache(cacheFile, false).putDigest(MD5, file2, "cached2");
+    cache.compact();
+
+    ChecksumCache compactedCache = new ChecksumCache(cacheFile, false);
+    assertThat(compactedCache.getCachedDigest(MD5, file1)).isEqualTo("cached1");
+    assertThat(compactedCache.getCachedDigest(MD5, file2)).isEqualTo("cached2");
+  }
+}
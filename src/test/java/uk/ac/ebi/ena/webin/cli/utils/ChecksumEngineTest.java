@@ -0,0 +1,66 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import uk.ac.ebi.ena.webin.cli.WebinCliTestUtils;
+
+public class ChecksumEngineTest {
+
+  @Test
+  public void testKnownDigests() throws IOException {
+    File dir = WebinCliTestUtils.createTempDir();
+    File emptyFile = new File(dir, "empty.txt");
+    Files.write(emptyFile.toPath(), new byte[0]);
+    File textFile = new File(dir, "text.txt");
+    Files.write(textFile.toPath(), "The quick brown fox jumps over the lazy dog".getBytes());
+
+    Map<File, String> digests = new ChecksumEngine(2).calculateDigests("MD5", Arrays.asList(emptyFile, textFile));
+
+    assertThat(digests).containsEntry(emptyFile, "d41d8cd98f00b204e9800998ecf8427e");
+    assertThat(digests).containsEntry(textFile, "9e107d9d372bb6826bd81d3542a419d6");
+  }
+
+  @Test
+  public void testLargeFiles() throws IOException {
+    File dir = WebinCliTestUtils.createTempDir();
+    Random random = new Random(1);
+    File[] files = new File[5];
+    byte[][] contents = new byte[files.length][];
+    for (int i = 0; i < files.length; ++i) {
+      // Larger than the read buffer.
+      contents[i] = new byte[3 * 1024 * 1024 + i];
+      random.nextBytes(contents[i]);
+      files[i] = new File(dir, "file" + i + ".bin");
+      Files.write(files[i].toPath(), contents[i]);
+    }
+
+    Map<File, String> digests = new ChecksumEngine(3).calculateDigests("MD5", Arrays.asList(files));
+
+    assertThat(digests.keySet()).containsExactly(files);
+    for (int i = 0; i < files.length; ++i) {
+      assertThat(digests.get(files[i]))
+          .isEqualTo(FileUtils.calculateDigest("MD5", new ByteArrayInputStream(contents[i])))
+          .isEqualTo(FileUtils.calculateDigest("MD5", contents[i]));
+    }
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ChecksumInputStreamTest {
+
+  @Test
+  public void testDigestAndCount() throws IOException {
+    byte[] content = new byte[100000];
+    new Random(1).nextBytes(content);
+
+    try (ChecksumInputStream is = new ChecksumInputStream(new ByteArrayInputStream(content), "MD5")) {
+      assertThat(is.read()).isEqualTo(content[0] & 0xFF);
+      byte[] buffer = new byte[4096];
+      while (is.read(buffer, 0, buffer.length) >= 0) {
+        // Read the remaining bytes.
+      }
+      assertThat(is.getCount()).isEqualTo(content.length);
+      assertThat(is.getDigest()).isEqualTo(FileUtils.calculateDigest("MD5", content));
+    }
+  }
+
+  @Test
+  public void testSkipIsNotSupported() throws IOException {
+    try (ChecksumInputStream is = new ChecksumInputStream(new ByteArrayInputStream(new byte[10]), "MD5")) {
+      assertThat(is.skip(5)).isEqualTo(0);
+      assertThat(is.markSupported()).isFalse();
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+import uk.ac.ebi.ena.webin.cli.WebinCliTestUtils;
+
+public class ParallelGzipCompressorTest {
+
+  private static byte[] createFastq(int reads) {
+    StringBuilder fastq = new StringBuilder();
+    for (int i = 0; i < reads; ++i) {
+      fastq.append("@read").append(i).append("\nACGTACGTTTGACCA").append(i % 7)
+          .append("\n+\nIIIIIIIIIIIIIII\n");
+    }
+    return fastq.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] decompress(byte[] compressed) throws IOException {
+    try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = inputStream.read(buffer)) >= 0) {
+        outputStream.write(buffer, 0, read);
+      }
+      return outputStream.toByteArray();
+    }
+  }
+
+  private static byte[] compress(ParallelGzipCompressor compressor, byte[] data) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    compressor.compress(new ByteArrayInputStream(data), outputStream);
+    return outputStream.toByteArray();
+  }
+
+  @Test
+  public void testCompressManyBlocks() throws IOException {
+    byte[] data = createFastq(10000);
+    ParallelGzipCompressor compressor = new ParallelGzipCompressor(4, 4096, Deflater.DEFAULT_COMPRESSION);
+    byte[] compressed = compress(compressor, data);
+    assertThat(compressed.length).isLessThan(data.length);
+    assertThat(decompress(compressed)).isEqualTo(data);
+
+    // The output only depends on the input.
+    assertThat(compress(new ParallelGzipCompressor(1, 4096, Deflater.DEFAULT_COMPRESSION), data))
+        .isEqualTo(compressed);
+  }
+
+  @Test
+  public void testCompressEmpty() throws IOException {
+    byte[] compressed = compress(new ParallelGzipCompressor(2), new byte[0]);
+    assertThat(decompress(compressed)).isEmpty();
+  }
+
+  @Test
+  public void testCompressFile() throws IOException {
+    File dir = WebinCliTestUtils.createTempDir();
+    File input = new File(dir, "reads.fastq");
+    File output = new File(dir, "reads.fastq.gz");
+    byte[] data = createFastq(1000);
+    Files.write(input.toPath(), data);
+
+    String md5 = new ParallelGzipCompressor(2, 1024, Deflater.DEFAULT_COMPRESSION).compress(input, output);
+
+    assertThat(decompress(Files.readAllBytes(output.toPath()))).isEqualTo(data);
+    assertThat(md5).isEqualTo(FileUtils.calculateDigest("MD5", output));
+    assertThat(dir.list()).containsExactlyInAnyOrder("reads.fastq", "reads.fastq.gz");
+  }
+
+  @Test
+  public void testCompressIfChanged() throws IOException {
+    File dir = WebinCliTestUtils.createTempDir();
+    File input = new File(dir, "reads.fastq");
+    File output = new File(dir, "reads.fastq.gz");
+    Files.write(input.toPath(), createFastq(100));
+    ParallelGzipCompressor compressor = new ParallelGzipCompressor(2);
+
+    assertThat(compressor.compressIfChanged(input, output)).isTrue();
+    assertThat(compressor.compressIfChanged(input, output)).isFalse();
+
+    // A replaced input file is compressed again even if it is older than the output file.
+    byte[] data = createFastq(200);
+    Files.write(input.toPath(), data);
+    input.setLastModified(output.lastModified() - 60_000);
+    assertThat(compressor.compressIfChanged(input, output)).isTrue();
+    assertThat(decompress(Files.readAllBytes(output.toPath()))).isEqualTo(data);
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+public class ProcessRunnerTest {
+
+  private static void assumeUnix() {
+    Assume.assumeFalse(System.getProperty("os.name").toLowerCase().contains("win"));
+  }
+
+  @Test
+  public void testConsumeLines() {
+    List<String> lines = new ArrayList<>();
+    ProcessRunner.consume(new ByteArrayInputStream(
+        "first\nfile 10%\rfile 50%\rfile 100%\r\n\nlast".getBytes(StandardCharsets.UTF_8)), lines::add);
+    assertThat(lines).containsExactly("first", "file 10%", "file 50%", "file 100%", "last");
+  }
+
+  @Test
+  public void testConsumeLongLine() {
+    List<String> lines = new ArrayList<>();
+    char[] line = new char[ProcessRunner.MAX_LINE_LENGTH * 2];
+    Arrays.fill(line, 'a');
+    ProcessRunner.consume(new ByteArrayInputStream(new String(line).getBytes(StandardCharsets.UTF_8)), lines::add);
+    assertThat(lines).hasSize(1);
+    assertThat(lines.get(0)).hasSize(ProcessRunner.MAX_LINE_LENGTH);
+  }
+
+  @Test
+  public void testRun() throws IOException, InterruptedException {
+    assumeUnix();
+    List<String> lines = new ArrayList<>();
+    int exitCode = new ProcessRunner.Builder()
+        .setCommand(Arrays.asList("sh", "-c", "echo \"$TEST_VALUE\"; exit 3"))
+        .setEnvironment(Collections.singletonMap("TEST_VALUE", "a b  c"))
+        .setOutputConsumer(lines::add)
+        .build()
+        .run();
+    assertThat(exitCode).isEqualTo(3);
+    assertThat(lines).containsExactly("a b  c");
+  }
+
+  @Test
+  public void testTimeout() {
+    assumeUnix();
+    assertThatThrownBy(() -> new ProcessRunner.Builder()
+        .setCommand(Arrays.asList("sleep", "10"))
+        .setTimeout(100, TimeUnit.MILLISECONDS)
+        .build()
+        .run())
+        .isInstanceOf(ProcessRunner.ProcessTimeoutException.class);
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018-2021 EMBL - European Bioinformatics Institute
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.ac.ebi.ena.webin.cli.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import uk.ac.ebi.ena.webin.cli.WebinCliException;
+import uk.ac.ebi.ena.webin.cli.WebinCliTestUtils;
+
+public class SidecarChecksumsTest {
+
+  private static final String CONTENT = "The quick brown fox jumps over the lazy dog";
+  private static final String CONTENT_MD5 = "9e107d9d372bb6826bd81d3542a419d6";
+  private static final String OTHER_MD5 = "d41d8cd98f00b204e9800998ecf8427e";
+
+  private static File createFile(File dir, String name) throws IOException {
+    File file = new File(dir, name);
+    Files.write(file.toPath(), CONTENT.getBytes());
+    return file;
+  }
+
+  @Test
+  public void testSidecarFile() throws IOException {
+    File dir = WebinCliTestUtils.createTempDir();
+    File file = createFile(dir, "reads.fastq.gz");
+    Files.write(new File(dir, "reads.fastq.gz.md5").toPath(), (OTHER_MD5 + "\n").getBytes());
+
+    assertThat(new SidecarChecksums(SidecarChecksums.Mode.TRUST, Collections.emptyList()).getDigest(file))
+        .isEqualTo(OTHER_MD5);
+    assertThat(new SidecarChecksums(null, Collections.emptyList()).getDigest(file)).isNull();
+  }
+
+  @Test
+  public void testDirectoryFile() throws IOException {
+    File dir = WebinCliTestUtils.createTempDir();
+    File file1 = createFile(dir, "reads1.fastq.gz");
+    File file2 = createFile(dir, "reads2.fastq.gz");
+    File file3 = createFile(dir, "reads3.fastq.gz");
+    Files.write(new File(dir, "md5sum.txt").toPath(),
+        (CONTENT_MD5.toUpperCase() + "  reads1.fastq.gz\n" + OTHER_MD5 + " *reads2.fastq.gz\n").getBytes());
+
+    SidecarChecksums sidecarChecksums = new SidecarChecksums(SidecarChecksums.Mode.TRUST, Collections.emptyList());
+    assertThat(sidecarChecksums.getDigest(file1)).isEqualTo(CONTENT_MD5);
+    assertThat(sidecarChecksums.getDigest(file2)).isEqualTo(OTHER_MD5);
+    assertThat(sidecarChecksums.getDigest(file3)).isNull();
+  }
+
+  @Test
+  public void testMd5File() throws IOException {
+    File dir = WebinCliTestUtils.createTempDir();
+    File file = createFile(dir, "reads.fastq.gz");
+    File md5File = new File(WebinCliTestUtils.createTempDir(), "checksums.txt");
+    Files.write(md5File.toPath(), (CONTENT_MD5 + "  " + file.getAbsolutePath() + "\n").getBytes());
+
+    assertThat(new SidecarChecksums(SidecarChecksums.Mode.TRUST, Collections.singletonList(md5File)).getDigest(file))
+        .isEqualTo(CONTENT_MD5);
+  }
+
+  @Test
+  public void testVerify() throws IOException {
+    File dir = WebinCliTestUtils.createTempDir();
+    File file = createFile(dir, "reads.fastq.gz");
+    Files.write(new File(dir, "reads.fastq.gz.md5").toPath(), (CONTENT_MD5 + "  reads.fastq.gz\n").getBytes());
+
+    SidecarChecksums sidecarChecksums = new SidecarChecksums(SidecarChecksums.Mode.VERIFY, Collections.emptyList());
+    assertThat(sidecarChecksums.getDigest(file)).isEqualTo(CONTENT_MD5);
+    sidecarChecksums.verify(Collections.singletonList(file));
+  }
+
+  @Test
+  public void testVerifyMismatch() throws IOException {
+    File dir = WebinCliTestUtils.createTempDir();
+    File file = createFile(dir, "reads.fastq.gz");
+    Files.write(new File(dir, "reads.fastq.gz.md5").toPath(), OTHER_MD5.getBytes());
+
+    SidecarChecksums sidecarChecksums = new SidecarChecksums(SidecarChecksums.Mode.VERIFY, Collections.emptyList());
+    assertThat(sidecarChecksums.getDigest(file)).isEqualTo(OTHER_MD5);
+    assertThatThrownBy(() -> sidecarChecksums.verify(Collections.singletonList(file)))
+        .isInstanceOf(WebinCliException.class)
+        .hasMessageContaining(CONTENT_MD5);
+  }
+
+  @Test
+  public void testVerifyWithoutDigest() throws IOException {
+    File dir = WebinCliTestUtils.createTempDir();
+    File file = createFile(dir, "reads.fastq.gz");
+    Files.write(new File(dir, "reads.fastq.gz.md5").toPath(), OTHER_MD5.getBytes());
+
+    // The checksum was read by an earlier run.
+    SidecarChecksums sidecarChecksums = new SidecarChecksums(SidecarChecksums.Mode.VERIFY, Collections.emptyList());
+    assertThatThrownBy(() -> sidecarChecksums.verify(Collections.singletonList(file)))
+        .isInstanceOf(WebinCliException.class)
+        .hasMessageContaining(CONTENT_MD5);
+
+    new SidecarChecksums(SidecarChecksums.Mode.TRUST, Collections.emptyList())
+        .verify(Collections.singletonList(file));
+  }
+}